@@ -48,8 +48,8 @@ public class Test {
         router2.getPort(0).setIp(192168);
 
         TrafficDTO trafficDTO = new TrafficDTO();
-        trafficDTO.setRouterId1(router1.getId());
-        trafficDTO.setRouterId2(router2.getId());
+        trafficDTO.setRouterId1(router1.getIdNE());
+        trafficDTO.setRouterId2(router2.getIdNE());
         log.info("Router2 port0 ip is {}", router2.getPort(0).getIp());
         trafficDTO.setDestIp1(IpService.stringFromInt(router1.getPort(0).getIp()));
         trafficDTO.setDestIp2(IpService.stringFromInt(router2.getPort(0).getIp()));
@@ -0,0 +1,23 @@
+package com.edunetcracker.simulator.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class CaptureSummaryDTO {
+    @JsonProperty
+    long portId;
+    @JsonProperty
+    String file;
+    //Packets captured, the overwritten ones included
+    @JsonProperty
+    long packets;
+    //Packets left in the file
+    @JsonProperty
+    long records;
+    //DataUnits that weren't IP packets
+    @JsonProperty
+    long skipped;
+}
@@ -0,0 +1,30 @@
+package com.edunetcracker.simulator.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class CheckpointSummaryDTO {
+    @JsonProperty
+    String name;
+    //Simulated time the checkpoint was taken at
+    @JsonProperty
+    long simulatedTime;
+    @JsonProperty
+    int links;
+    @JsonProperty
+    long dataUnits;
+    @JsonProperty
+    int routers;
+    @JsonProperty
+    long contexts;
+    @JsonProperty
+    long routes;
+    @JsonProperty
+    long bytes;
+    //Wall clock time (ms) writing or reading took
+    @JsonProperty
+    long wallMillis;
+}
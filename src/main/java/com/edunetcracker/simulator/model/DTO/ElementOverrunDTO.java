@@ -0,0 +1,21 @@
+package com.edunetcracker.simulator.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class ElementOverrunDTO {
+    @JsonProperty
+    long id;
+    @JsonProperty
+    long phaseOverruns;
+    //Wall ms spent beyond the phase budgets
+    @JsonProperty
+    long overrunMillis;
+    @JsonProperty
+    long shedDataUnits;
+    @JsonProperty
+    long failures;
+}
@@ -0,0 +1,27 @@
+package com.edunetcracker.simulator.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class FlowCacheStatisticsDTO {
+    @JsonProperty
+    long routerId;
+    @JsonProperty
+    int capacity;
+    @JsonProperty
+    int size;
+    @JsonProperty
+    long hits;
+    @JsonProperty
+    long misses;
+    //Misses of destinations cached before the routes changed
+    @JsonProperty
+    long staleMisses;
+    @JsonProperty
+    long evictions;
+    @JsonProperty
+    double hitRatio;
+}
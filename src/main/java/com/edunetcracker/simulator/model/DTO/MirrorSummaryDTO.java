@@ -0,0 +1,34 @@
+package com.edunetcracker.simulator.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Map;
+
+@Getter
+@Setter
+public class MirrorSummaryDTO {
+    @JsonProperty
+    long portId;
+    //Null if the traffic only goes to the analysis sink
+    @JsonProperty
+    Long destinationPortId;
+    @JsonProperty
+    String mode;
+    @JsonProperty
+    long mirrored;
+    //Copies the destination port's output queue had no room for
+    @JsonProperty
+    long dropped;
+    @JsonProperty
+    long ingressPackets;
+    @JsonProperty
+    long ingressBytes;
+    @JsonProperty
+    long egressPackets;
+    @JsonProperty
+    long egressBytes;
+    @JsonProperty
+    Map<String, Long> packetsByType;
+}
@@ -0,0 +1,28 @@
+package com.edunetcracker.simulator.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class OverrunReportDTO {
+    @JsonProperty
+    String overloadPolicy;
+    //Wall ms the real-time driver is (and at most was) behind the simulated time
+    @JsonProperty
+    long lag;
+    @JsonProperty
+    long maxLag;
+    @JsonProperty
+    long lateBatches;
+    //Wall ms given up by stretching ticks, plus the current lag
+    @JsonProperty
+    long stretchedMillis;
+    @JsonProperty
+    long cumulativeSlip;
+    @JsonProperty
+    List<ElementOverrunDTO> worstElements;
+}
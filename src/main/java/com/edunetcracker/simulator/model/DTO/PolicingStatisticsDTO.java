@@ -0,0 +1,45 @@
+package com.edunetcracker.simulator.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class PolicingStatisticsDTO {
+    @JsonProperty
+    long portId;
+    @JsonProperty
+    int portOrder;
+    //POLICER, FLOW_POLICER or SHAPER
+    @JsonProperty
+    String kind;
+    //Classifier of a flow policer
+    @JsonProperty
+    String match;
+    //Bits per simulated second
+    @JsonProperty
+    long rate;
+    @JsonProperty
+    long burst;
+    @JsonProperty
+    long excessBurst;
+    //Token buckets the counters are summed over, one per flow policed now for a per-flow policer
+    @JsonProperty
+    int buckets;
+    //Flows a per-flow policer has forgotten to make room for new ones, their counters are still summed
+    @JsonProperty
+    long evictedFlows;
+    @JsonProperty
+    long conformPackets;
+    @JsonProperty
+    long conformBytes;
+    @JsonProperty
+    long exceedPackets;
+    @JsonProperty
+    long exceedBytes;
+    @JsonProperty
+    long violatePackets;
+    @JsonProperty
+    long violateBytes;
+}
@@ -0,0 +1,35 @@
+package com.edunetcracker.simulator.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class QueueStatisticsDTO {
+    @JsonProperty
+    long portId;
+    @JsonProperty
+    int portOrder;
+    @JsonProperty
+    String discipline;
+    @JsonProperty
+    int capacity;
+    @JsonProperty
+    int length;
+    //Dropped because the queue was full
+    @JsonProperty
+    long tailDrops;
+    //Dropped by the discipline on arrival (RED) or on dequeue (CoDel)
+    @JsonProperty
+    long earlyDrops;
+    @JsonProperty
+    long dequeueDrops;
+    @JsonProperty
+    long dequeued;
+    //Simulated ms dataUnits spent in the queue
+    @JsonProperty
+    double averageSojourn;
+    @JsonProperty
+    long maxSojourn;
+}
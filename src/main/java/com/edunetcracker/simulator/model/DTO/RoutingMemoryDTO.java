@@ -0,0 +1,26 @@
+package com.edunetcracker.simulator.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class RoutingMemoryDTO {
+    @JsonProperty
+    long routerId;
+    @JsonProperty
+    int runningRoutes;
+    @JsonProperty
+    int trieNodes;
+    //Estimated
+    @JsonProperty
+    long trieBytes;
+    @JsonProperty
+    boolean compiledFib;
+    @JsonProperty
+    long fibBytes;
+    //Chunks of the /24s that have longer prefixes
+    @JsonProperty
+    int fibChunks;
+}
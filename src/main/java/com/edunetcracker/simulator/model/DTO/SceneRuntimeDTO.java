@@ -0,0 +1,27 @@
+package com.edunetcracker.simulator.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class SceneRuntimeDTO {
+    @JsonProperty
+    long sceneId;
+    @JsonProperty
+    boolean running;
+    @JsonProperty
+    int cpuCores;
+    @JsonProperty
+    int elements;
+    @JsonProperty
+    long simulatedTime;
+    @JsonProperty
+    long tickLength;
+    @JsonProperty
+    int pendingEvents;
+    //Wall ms the scene is behind the wall clock
+    @JsonProperty
+    long lag;
+}
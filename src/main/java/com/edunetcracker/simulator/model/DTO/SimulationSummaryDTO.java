@@ -0,0 +1,26 @@
+package com.edunetcracker.simulator.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class SimulationSummaryDTO {
+    //Simulated time (ms) the run started and ended at
+    @JsonProperty
+    long simulatedFrom;
+    @JsonProperty
+    long simulatedTo;
+    //Wall clock time (ms) the run took
+    @JsonProperty
+    long wallMillis;
+    @JsonProperty
+    long events;
+    @JsonProperty
+    long elementTicks;
+    @JsonProperty
+    long wakeUps;
+    @JsonProperty
+    long processedDataUnits;
+}
@@ -0,0 +1,33 @@
+package com.edunetcracker.simulator.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class TrafficClassStatisticsDTO {
+    @JsonProperty
+    long portId;
+    @JsonProperty
+    int portOrder;
+    @JsonProperty
+    String scheduling;
+    @JsonProperty
+    String trafficClass;
+    //DataUnits waiting in the class queue
+    @JsonProperty
+    int length;
+    @JsonProperty
+    long sentPackets;
+    @JsonProperty
+    long sentBytes;
+    //Dropped because the class queue was full, or by the queue discipline of the wire
+    @JsonProperty
+    long dropped;
+    //Simulated ms dataUnits waited in the class queue before going to the wire
+    @JsonProperty
+    double averageDelay;
+    @JsonProperty
+    long maxDelay;
+}
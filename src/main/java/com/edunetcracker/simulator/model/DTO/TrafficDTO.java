@@ -15,4 +15,7 @@ public class TrafficDTO {
     String destIp1;
     @JsonProperty
     String destIp2;
+    //OPEN_LOOP (the default), PAUSE or CLOSED_LOOP
+    @JsonProperty
+    String flowMode;
 }
@@ -2,7 +2,9 @@ package com.edunetcracker.simulator.model;
 
 import com.edunetcracker.simulator.model.dataUnit.DataUnit;
 import com.edunetcracker.simulator.model.dataUnit.IDataUnit;
+import com.edunetcracker.simulator.model.element.NetworkElement;
 import com.edunetcracker.simulator.model.port.Port;
+import com.edunetcracker.simulator.model.queue.DoubleBufferedQueue;
 import com.edunetcracker.simulator.service.LinkService;
 import com.edunetcracker.simulator.service.status.SequenceStatus;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -13,7 +15,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.persistence.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 @Getter
 @Setter
@@ -26,6 +27,10 @@ public class Link implements DBObject<Link> {
     @Transient
     private LinkService linkService;
 
+    //Fill of an output queue (% of its capacity) a connection gets congested at, and gets relieved at
+    public static final int HIGH_WATERMARK = 75;
+    public static final int LOW_WATERMARK = 25;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @JsonProperty
@@ -39,6 +44,16 @@ public class Link implements DBObject<Link> {
     @JsonProperty
     private long portZid;
 
+    //Bits per simulated second in each direction, 0 means unlimited
+    @Column(name = "bandwidth")
+    @JsonProperty
+    private long bandwidth;
+
+    //Propagation delay, simulated ms
+    @Column(name = "delay")
+    @JsonProperty
+    private long delay;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "scene", referencedColumnName = "id")
     private Scene scene;
@@ -70,15 +85,36 @@ public class Link implements DBObject<Link> {
         connA.setLink(this);
         connZ.setLink(this);
 
-        connA.setIn(new ConcurrentLinkedQueue());
-        connA.setOut(new ConcurrentLinkedQueue());
+        //A direction's queue is the output buffer of the port that sends to it
+        connA.setIn(new DoubleBufferedQueue<>(bufferSizeOf(portZ)));
+        connA.setOut(new DoubleBufferedQueue<>(bufferSizeOf(portA)));
+        portZ.applyQueueDiscipline(connA.getIn());
+        portA.applyQueueDiscipline(connA.getOut());
 
         connZ.setIn(connA.getOut());
         connZ.setOut(connA.getIn());
+        connA.getIn().setDiscardHandler(DataUnit::release);
+        connA.getOut().setDiscardHandler(DataUnit::release);
+        applyTransmission();
 
         start();
     }
 
+    /**
+     * Applies bandwidth and delay to both directions. DataUnits already on the way keep their arrival.
+     */
+    public void applyTransmission() {
+        if (null == connA) {
+            return;
+        }
+        connA.getIn().setTransmission(bandwidth, delay);
+        connA.getOut().setTransmission(bandwidth, delay);
+    }
+
+    private static int bufferSizeOf(Port port) {
+        return (port.getBufferSize() > 0) ? port.getBufferSize() : DoubleBufferedQueue.DEFAULT_CAPACITY;
+    }
+
     /**
      * Starts link
      */
@@ -87,10 +123,15 @@ public class Link implements DBObject<Link> {
     }
 
     /**
-     * Stops link
+     * Stops link. The dataUnits on the way in both directions are lost.
+     * Must not run while the elements at its ends tick.
      */
     public void stop(){
         isUp = false;
+        if (null != connA) {
+            connA.getIn().clear();
+            connA.getOut().clear();
+        }
     }
 
 
@@ -116,13 +157,77 @@ public class Link implements DBObject<Link> {
         Connection oppositeConn;
 
         //tasks from other Network entities
-        ConcurrentLinkedQueue<DataUnit> in;
-        ConcurrentLinkedQueue<DataUnit> out;
+        DoubleBufferedQueue<DataUnit> in;
+        DoubleBufferedQueue<DataUnit> out;
+
+        //Whether the output queue has reached the high watermark and hasn't drained to the low one yet.
+        //Is used by the sender only
+        boolean congested;
+
+        //DataUnits sent while the link was down. Written by the sender only
+        volatile long lostDataUnits;
 
         public boolean isUp() {
             return isUp;
         }
 
+        public boolean send(DataUnit dataUnit) {
+            return send(dataUnit, DoubleBufferedQueue.NO_TIME);
+        }
+
+        /**
+         * Puts the dataUnit to the output queue and signals the element on the other
+         * side of the link, so that it wakes up when the dataUnit arrives.
+         * A down link loses the dataUnit: it is counted and released, and isn't rejected.
+         * @param now Simulated time the dataUnit is sent at, for the queue discipline and the wire.
+         * @return False, if the queue rejected the dataUnit.
+         */
+        public boolean send(DataUnit dataUnit, long now) {
+            if (!isUp) {
+                ++lostDataUnits;
+                dataUnit.release();
+                return true;
+            }
+            if (!out.offer(dataUnit, now, dataUnit.getSize())) {
+                return false;
+            }
+            //Receivers of deferred queues are woken at the synchronization barrier
+            if (!out.isDeferred() && null != oppositeConn && null != oppositeConn.port) {
+                NetworkElement receiver = oppositeConn.port.checkForOwner();
+                if (null != receiver) {
+                    receiver.wakeAt(out.getLastArrival());
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Backpressure of the output queue, with hysteresis: the connection gets congested once the queue
+         * fills up to the high watermark, and stays so till it drains to the low one.
+         * Is called by the sender only. Items offered to a deferred queue count once they are published.
+         */
+        public boolean isCongested() {
+            int size = out.size();
+            int capacity = out.capacity();
+            if (congested) {
+                congested = size > capacity * LOW_WATERMARK / 100;
+            } else {
+                congested = size >= capacity * HIGH_WATERMARK / 100;
+            }
+            return congested;
+        }
+
+        /**
+         * @return Number of dataUnits the output queue takes before it reaches the high watermark,
+         *         0 while the connection is congested.
+         */
+        public int sendWindow() {
+            if (isCongested()) {
+                return 0;
+            }
+            return Math.max(0, out.capacity() * HIGH_WATERMARK / 100 - out.size());
+        }
+
         public void nullifyFields() {
             port = null;
             oppositeConn = null;
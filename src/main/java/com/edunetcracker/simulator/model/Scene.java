@@ -3,6 +3,8 @@ package com.edunetcracker.simulator.model;
 import com.edunetcracker.simulator.model.element.NetworkElement;
 import com.edunetcracker.simulator.model.element.Router;
 import com.edunetcracker.simulator.model.element.Switch;
+import com.edunetcracker.simulator.service.simulation.OverloadPolicy;
+import com.edunetcracker.simulator.service.simulation.SimulationEngine;
 import com.edunetcracker.simulator.service.status.SequenceStatus;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
@@ -33,6 +35,22 @@ public class Scene implements DBObject<Scene> {
     @JsonProperty
     private String name;
 
+    //Simulated milliseconds in one tick of the scene's elements
+    @Column(name = "tick_length")
+    @JsonProperty
+    private long tickLength = SimulationEngine.DEFAULT_TICK_LENGTH;
+
+    //What the scene's elements do when they can't keep up with the simulated time
+    @Column(name = "overload_policy")
+    @Enumerated(EnumType.STRING)
+    @JsonProperty
+    private OverloadPolicy overloadPolicy = OverloadPolicy.NONE;
+
+    //Number of CPU cores the scene's elements may be ticked on, 0 for all of them
+    @Column(name = "cpu_cores")
+    @JsonProperty
+    private int cpuCores = 0;
+
 //ToDo! ToDo! ToDo-ToDo-ToDo! ToDo-ToDooooooooooooo-ToDo-DoDoDo!
 //    @ManyToMany
 //    private List<User> users;
@@ -0,0 +1,16 @@
+package com.edunetcracker.simulator.model.context;
+
+/**
+ * Backpressure the element running a context gives it: how much traffic the path to a destination takes now.
+ */
+public interface FlowControl {
+
+    //The element doesn't limit the traffic, e.g. it consumes it itself
+    int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * @return Number of dataUnits to the destination the first hop takes before it gets congested,
+     *         0 while it's congested or the destination is unreachable.
+     */
+    int sendWindow(Integer destinationIp);
+}
@@ -14,4 +14,11 @@ public class GeneratedConfig {
     //time between packets are sent
     private long timeBetPack;
     private TrafficContext.TrafficType trafficType;
+    //what the generator does when the path is congested
+    private TrafficContext.FlowMode flowMode;
+
+    public GeneratedConfig(long id, boolean isAlive, Integer destinationIP, long timeBetPack,
+                           TrafficContext.TrafficType trafficType) {
+        this(id, isAlive, destinationIP, timeBetPack, trafficType, TrafficContext.FlowMode.OPEN_LOOP);
+    }
 }
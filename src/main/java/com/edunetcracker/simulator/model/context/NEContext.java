@@ -19,6 +19,14 @@ public interface NEContext {
      */
     List<DataUnit> performAction();
 
+    /**
+     * Performs action, knowing how much traffic the element can send on.
+     * Contexts that generate traffic override it to slow down when the path is congested.
+     */
+    default List<DataUnit> performAction(FlowControl flowControl) {
+        return performAction();
+    }
+
     /**
      * Is called on the stage when the input is being processed
      * changes context's inner variables
@@ -1,6 +1,10 @@
 package com.edunetcracker.simulator.model.context;
 
 import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import com.edunetcracker.simulator.model.dataUnit.GenericDataUnit;
+import com.edunetcracker.simulator.model.dataUnit.packet.Ipv4Header;
+import com.edunetcracker.simulator.model.dataUnit.packet.Packet;
+import com.edunetcracker.simulator.model.dataUnit.packet.UdpHeader;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -14,9 +18,18 @@ public class TrafficContext implements NEContext {
     private GeneratedConfig trafficConfig;
     private long send;
 
+    //DataUnits not generated because the path was congested
+    private long withheld;
+
     //the interval between which we call the function once
     static final long TIME_TACT = 100; //todo: find a proper value
 
+    //Generated datagrams are MTU-sized
+    static final int PAYLOAD_LENGTH = DataUnit.DEFAULT_SIZE - Ipv4Header.LENGTH - UdpHeader.LENGTH;
+    //"discard" service
+    static final int DESTINATION_PORT = 9;
+    static final int FIRST_EPHEMERAL_PORT = 49152;
+
     //receive object, generator configuration
     //later: add different types of generator (like dataunit)
     public TrafficContext(GeneratedConfig trafficInit){
@@ -36,13 +49,26 @@ public class TrafficContext implements NEContext {
 
     @Override
     public List<DataUnit> performAction() {
+        return performAction(null);
+    }
+
+    @Override
+    public List<DataUnit> performAction(FlowControl flowControl) {
         List<DataUnit> contextList = new LinkedList<>();
 
         send += TIME_TACT;
 
         if (trafficConfig.getTrafficType() == TrafficType.SIMPLE) {
-            for(int i = 0; i < send / trafficConfig.getTimeBetPack(); i++) {
-                DataUnit dataUnit = contextBuilder(DataUnit.Type.UDP, null);
+            Integer destinationIp = trafficConfig.getDestinationIP();
+            int sourcePort = FIRST_EPHEMERAL_PORT + (int) (trafficConfig.getId() & 0x3FFF);
+            long due = send / trafficConfig.getTimeBetPack();
+            long count = Math.min(due, allowed(flowControl, destinationIp));
+            //What the path can't take now is skipped, not saved up for a burst later
+            withheld += due - count;
+            for(int i = 0; i < count; i++) {
+                //Source address is filled in by the router, by the port the packet leaves through
+                DataUnit dataUnit = Packet.udp(0, null == destinationIp ? 0 : destinationIp,
+                                               sourcePort, DESTINATION_PORT, PAYLOAD_LENGTH);
                 contextList.add(dataUnit);
             }
 
@@ -52,6 +78,18 @@ public class TrafficContext implements NEContext {
         return contextList;
     }
 
+    private long allowed (FlowControl flowControl, Integer destinationIp) {
+        FlowMode mode = trafficConfig.getFlowMode();
+        if (null == flowControl || null == mode || FlowMode.OPEN_LOOP == mode) {
+            return Long.MAX_VALUE;
+        }
+        int window = flowControl.sendWindow(destinationIp);
+        if (FlowMode.PAUSE == mode) {
+            return (0 == window) ? 0 : Long.MAX_VALUE;
+        }
+        return window;
+    }
+
     @Override
     public boolean performInput(DataUnit pack) {
         //is not needed for this function
@@ -67,19 +105,7 @@ public class TrafficContext implements NEContext {
     }
 
     public static DataUnit contextBuilder (DataUnit.Type type, String extraData) {
-        DataUnit newPacket = new DataUnit(){
-            @Override
-            public void setType(Type type) {
-                super.setType(type);
-            }
-
-            @Override
-            public void setExtraData(String extraData) {
-                super.setExtraData(extraData);
-            }
-        };
-
-        return newPacket;
+        return new GenericDataUnit(type, extraData);
     }
 
     public enum TrafficType {
@@ -89,4 +115,13 @@ public class TrafficContext implements NEContext {
 
     }
 
+    public enum FlowMode {
+        //Sends at the configured rate whatever happens downstream
+        OPEN_LOOP,
+        //Sends at the configured rate, pauses while the first hop is congested
+        PAUSE,
+        //Sends no faster than the first hop drains
+        CLOSED_LOOP
+    }
+
 }
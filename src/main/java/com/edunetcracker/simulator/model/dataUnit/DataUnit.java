@@ -6,6 +6,9 @@ import lombok.Setter;
 import java.util.Optional;
 
 public abstract class DataUnit implements IDataUnit {
+    //Bytes on the wire, if nothing says otherwise a full Ethernet MTU
+    public static final int DEFAULT_SIZE = 1500;
+
     @Setter
     @Getter
     private Type type;
@@ -14,12 +17,39 @@ public abstract class DataUnit implements IDataUnit {
     @Getter
     private String extraData;
 
+    @Setter
+    @Getter
+    private int size = DEFAULT_SIZE;
+
     private IDataUnit encapsulatedDataUnit;
 
     public DataUnit () {
         type = Type.None;
     }
 
+    /**
+     * Gives back what the dataUnit holds, once it's dropped or consumed. Does nothing for on-heap dataUnits.
+     */
+    public void release() {
+    }
+
+    /**
+     * Copy to send out of a mirroring port. Header fields are the copy's own, so that whoever gets the copy
+     * may change them, while the encapsulated dataUnit and the extra data are shared, not copied.
+     */
+    public abstract DataUnit mirrorCopy();
+
+    /**
+     * Gives the copy the fields every dataUnit has. The encapsulated dataUnit is shared.
+     */
+    protected <T extends DataUnit> T copyFieldsTo(T copy) {
+        copy.setType(type);
+        copy.setExtraData(extraData);
+        copy.setSize(size);
+        copy.encapsulate(encapsulatedDataUnit);
+        return copy;
+    }
+
     @Override
     public Optional<IDataUnit> getEncapsulated() {
         return Optional.ofNullable(encapsulatedDataUnit);
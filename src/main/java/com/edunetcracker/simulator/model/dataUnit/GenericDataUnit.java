@@ -0,0 +1,17 @@
+package com.edunetcracker.simulator.model.dataUnit;
+
+/**
+ * DataUnit of no particular protocol, is only described by its type and extra data.
+ */
+public final class GenericDataUnit extends DataUnit {
+
+    public GenericDataUnit (Type type, String extraData) {
+        setType(type);
+        setExtraData(extraData);
+    }
+
+    @Override
+    public GenericDataUnit mirrorCopy() {
+        return copyFieldsTo(new GenericDataUnit(getType(), getExtraData()));
+    }
+}
@@ -19,6 +19,15 @@ public class ICMP extends DataUnit {
         setType(Type.ICMP);
     }
 
+    @Override
+    public ICMP mirrorCopy() {
+        ICMP copy = copyFieldsTo(new ICMP());
+        copy.type = type;
+        //The IP header is changed on the way, so it's the copy's own too
+        copy.ipHeader = (null == ipHeader) ? null : ipHeader.mirrorCopy();
+        return copy;
+    }
+
     public enum TypeICMP{
         ECHO_REPLY,
         DEST_UNREACH,
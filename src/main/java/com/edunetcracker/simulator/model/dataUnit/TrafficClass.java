@@ -0,0 +1,70 @@
+package com.edunetcracker.simulator.model.dataUnit;
+
+import com.edunetcracker.simulator.model.dataUnit.ip.IP;
+
+/**
+ * Classes of service a port's egress scheduler keeps apart, from the highest priority to the lowest.
+ * IP packets are classified by their DSCP (RFC 4594 groups), anything else is best effort.
+ */
+public enum TrafficClass {
+    //CS6, CS7: routing protocols and the like
+    NETWORK_CONTROL(true, 1),
+    //EF, VOICE-ADMIT, CS5
+    VOICE(true, 2),
+    //CS3, CS4, AF3x, AF4x: video and interactive multimedia
+    VIDEO(false, 4),
+    BEST_EFFORT(false, 2),
+    //CS1, LE: scavenger traffic
+    BULK(false, 1);
+
+    public static final int DSCP_EF = 46;
+
+    private static final TrafficClass[] BY_DSCP = new TrafficClass[64];
+
+    static {
+        for (int dscp = 0; dscp < BY_DSCP.length; dscp++) {
+            TrafficClass trafficClass;
+            if (dscp >= 48) {
+                trafficClass = NETWORK_CONTROL;
+            } else if (dscp >= 40) {
+                trafficClass = VOICE;
+            } else if (dscp >= 24) {
+                trafficClass = VIDEO;
+            } else if (8 == dscp || 1 == dscp) {
+                trafficClass = BULK;
+            } else {
+                trafficClass = BEST_EFFORT;
+            }
+            BY_DSCP[dscp] = trafficClass;
+        }
+    }
+
+    //Served before the weighted classes under PRIORITY_DRR
+    private final boolean strict;
+    //Quanta a class gets per round of DRR
+    private final int weight;
+
+    TrafficClass(boolean strict, int weight) {
+        this.strict = strict;
+        this.weight = weight;
+    }
+
+    public boolean isStrict() {
+        return strict;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public static TrafficClass ofDscp(int dscp) {
+        return BY_DSCP[dscp & 0x3F];
+    }
+
+    public static TrafficClass of(DataUnit dataUnit) {
+        if (dataUnit instanceof IP) {
+            return ofDscp(((IP) dataUnit).getDscp());
+        }
+        return BEST_EFFORT;
+    }
+}
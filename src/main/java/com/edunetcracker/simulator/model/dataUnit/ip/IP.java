@@ -23,4 +23,19 @@ public class IP extends DataUnit {
     @Setter
     @Getter
     private EncapsulatedType encapsulatedType;
+
+    //Differentiated services code point (6 bits), selects the traffic class of the packet
+    @Setter
+    @Getter
+    private int dscp;
+
+    @Override
+    public IP mirrorCopy() {
+        IP copy = copyFieldsTo(new IP());
+        copy.sourceIp = sourceIp;
+        copy.destinationIp = destinationIp;
+        copy.encapsulatedType = encapsulatedType;
+        copy.dscp = dscp;
+        return copy;
+    }
 }
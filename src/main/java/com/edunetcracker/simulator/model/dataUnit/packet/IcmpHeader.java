@@ -0,0 +1,57 @@
+package com.edunetcracker.simulator.model.dataUnit.packet;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight accessors of an ICMP echo header (RFC 792) at the given offset of a buffer.
+ */
+public final class IcmpHeader {
+
+    public static final int LENGTH = 8;
+
+    public static final int ECHO_REPLY = 0;
+    public static final int DESTINATION_UNREACHABLE = 3;
+    public static final int ECHO_REQUEST = 8;
+    public static final int TIME_EXCEEDED = 11;
+
+    private static final int TYPE = 0;
+    private static final int CODE = 1;
+    private static final int CHECKSUM = 2;
+    private static final int IDENTIFIER = 4;
+    private static final int SEQUENCE = 6;
+
+    private IcmpHeader() {
+    }
+
+    public static void init(ByteBuffer buffer, int at, int type, int identifier, int sequence) {
+        buffer.put(at + TYPE, (byte) type);
+        buffer.put(at + CODE, (byte) 0);
+        buffer.putShort(at + IDENTIFIER, (short) identifier);
+        buffer.putShort(at + SEQUENCE, (short) sequence);
+        updateChecksum(buffer, at);
+    }
+
+    public static int type(ByteBuffer buffer, int at) {
+        return buffer.get(at + TYPE) & 0xFF;
+    }
+
+    public static int code(ByteBuffer buffer, int at) {
+        return buffer.get(at + CODE) & 0xFF;
+    }
+
+    public static int identifier(ByteBuffer buffer, int at) {
+        return buffer.getShort(at + IDENTIFIER) & 0xFFFF;
+    }
+
+    public static int sequence(ByteBuffer buffer, int at) {
+        return buffer.getShort(at + SEQUENCE) & 0xFFFF;
+    }
+
+    /**
+     * The payload isn't stored, so the checksum only covers the header.
+     */
+    public static void updateChecksum(ByteBuffer buffer, int at) {
+        buffer.putShort(at + CHECKSUM, (short) 0);
+        buffer.putShort(at + CHECKSUM, (short) Ipv4Header.internetChecksum(buffer, at, LENGTH));
+    }
+}
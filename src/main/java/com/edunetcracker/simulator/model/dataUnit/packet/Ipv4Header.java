@@ -0,0 +1,130 @@
+package com.edunetcracker.simulator.model.dataUnit.packet;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight accessors of an IPv4 header (RFC 791) at the given offset of a buffer.
+ * Multi-byte fields are in the network (big-endian) order, which is ByteBuffer's default.
+ * Options are not supported, the header is always 20 bytes long.
+ */
+public final class Ipv4Header {
+
+    public static final int LENGTH = 20;
+
+    public static final int PROTOCOL_ICMP = 1;
+    public static final int PROTOCOL_TCP = 6;
+    public static final int PROTOCOL_UDP = 17;
+
+    private static final int VERSION_IHL = 0;
+    private static final int TYPE_OF_SERVICE = 1;
+    private static final int TOTAL_LENGTH = 2;
+    private static final int IDENTIFICATION = 4;
+    private static final int FLAGS_FRAGMENT = 6;
+    private static final int TIME_TO_LIVE = 8;
+    private static final int PROTOCOL = 9;
+    private static final int CHECKSUM = 10;
+    private static final int SOURCE = 12;
+    private static final int DESTINATION = 16;
+
+    private static final int DEFAULT_TTL = 64;
+    //Don't fragment
+    private static final int DF = 0x4000;
+
+    private Ipv4Header() {
+    }
+
+    public static void init(ByteBuffer buffer, int at, int protocol, int source, int destination, int totalLength) {
+        buffer.put(at + VERSION_IHL, (byte) 0x45);
+        buffer.put(at + TYPE_OF_SERVICE, (byte) 0);
+        buffer.putShort(at + TOTAL_LENGTH, (short) totalLength);
+        buffer.putShort(at + IDENTIFICATION, (short) 0);
+        buffer.putShort(at + FLAGS_FRAGMENT, (short) DF);
+        buffer.put(at + TIME_TO_LIVE, (byte) DEFAULT_TTL);
+        buffer.put(at + PROTOCOL, (byte) protocol);
+        buffer.putInt(at + SOURCE, source);
+        buffer.putInt(at + DESTINATION, destination);
+        updateChecksum(buffer, at);
+    }
+
+    public static int headerLength(ByteBuffer buffer, int at) {
+        return (buffer.get(at + VERSION_IHL) & 0xF) * 4;
+    }
+
+    public static int typeOfService(ByteBuffer buffer, int at) {
+        return buffer.get(at + TYPE_OF_SERVICE) & 0xFF;
+    }
+
+    public static void setTypeOfService(ByteBuffer buffer, int at, int typeOfService) {
+        buffer.put(at + TYPE_OF_SERVICE, (byte) typeOfService);
+    }
+
+    public static int totalLength(ByteBuffer buffer, int at) {
+        return buffer.getShort(at + TOTAL_LENGTH) & 0xFFFF;
+    }
+
+    public static void setTotalLength(ByteBuffer buffer, int at, int totalLength) {
+        buffer.putShort(at + TOTAL_LENGTH, (short) totalLength);
+    }
+
+    public static int timeToLive(ByteBuffer buffer, int at) {
+        return buffer.get(at + TIME_TO_LIVE) & 0xFF;
+    }
+
+    public static void setTimeToLive(ByteBuffer buffer, int at, int timeToLive) {
+        buffer.put(at + TIME_TO_LIVE, (byte) timeToLive);
+    }
+
+    public static int protocol(ByteBuffer buffer, int at) {
+        return buffer.get(at + PROTOCOL) & 0xFF;
+    }
+
+    public static void setProtocol(ByteBuffer buffer, int at, int protocol) {
+        buffer.put(at + PROTOCOL, (byte) protocol);
+    }
+
+    public static int source(ByteBuffer buffer, int at) {
+        return buffer.getInt(at + SOURCE);
+    }
+
+    public static void setSource(ByteBuffer buffer, int at, int source) {
+        buffer.putInt(at + SOURCE, source);
+    }
+
+    public static int destination(ByteBuffer buffer, int at) {
+        return buffer.getInt(at + DESTINATION);
+    }
+
+    public static void setDestination(ByteBuffer buffer, int at, int destination) {
+        buffer.putInt(at + DESTINATION, destination);
+    }
+
+    public static int checksum(ByteBuffer buffer, int at) {
+        return buffer.getShort(at + CHECKSUM) & 0xFFFF;
+    }
+
+    /**
+     * Recomputes the header checksum, has to be called after the header is changed.
+     */
+    public static void updateChecksum(ByteBuffer buffer, int at) {
+        buffer.putShort(at + CHECKSUM, (short) 0);
+        buffer.putShort(at + CHECKSUM, (short) internetChecksum(buffer, at, headerLength(buffer, at)));
+    }
+
+    /**
+     * One's complement sum of 16-bit words (RFC 1071).
+     */
+    public static int internetChecksum(ByteBuffer buffer, int at, int length) {
+        int sum = 0;
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            sum += buffer.getShort(at + i) & 0xFFFF;
+        }
+        if (i < length) {
+            sum += (buffer.get(at + i) & 0xFF) << 8;
+        }
+        while ((sum >>> 16) != 0) {
+            sum = (sum & 0xFFFF) + (sum >>> 16);
+        }
+        return ~sum & 0xFFFF;
+    }
+}
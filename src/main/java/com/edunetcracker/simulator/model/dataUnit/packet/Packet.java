@@ -0,0 +1,229 @@
+package com.edunetcracker.simulator.model.dataUnit.packet;
+
+import com.edunetcracker.simulator.model.dataUnit.ip.IP;
+
+import java.nio.ByteBuffer;
+
+/**
+ * IP packet whose headers live in a cell of the off-heap {@link PacketPool}.
+ * The object itself is a flyweight: a cell handle and nothing on the heap per header field.
+ * IPv4 header is at the start of the cell, the encapsulated ICMP or UDP header follows it
+ * (see {@link #getPayloadOffset()}). The payload isn't stored, only its length counts.
+ *
+ * A packet has to be released once it's dropped or consumed, so that the cell is reused.
+ */
+public class Packet extends IP {
+
+    private static final PacketPool pool = PacketPool.shared();
+
+    //IPv4 and the longest supported encapsulated header
+    public static final int HEADERS_LENGTH = Ipv4Header.LENGTH + UdpHeader.LENGTH;
+
+    //-1 once released
+    private int cell;
+    private final ByteBuffer buffer;
+    private final int base;
+
+    private Packet() {
+        cell = pool.allocate();
+        buffer = pool.buffer(cell);
+        base = PacketPool.offset(cell);
+        setType(Type.IP);
+    }
+
+    public static Packet udp(int sourceIp, int destinationIp, int sourcePort, int destinationPort, int payloadLength) {
+        Packet packet = new Packet();
+        int datagramLength = UdpHeader.LENGTH + payloadLength;
+        Ipv4Header.init(packet.buffer, packet.base, Ipv4Header.PROTOCOL_UDP, sourceIp, destinationIp,
+                Ipv4Header.LENGTH + datagramLength);
+        UdpHeader.init(packet.buffer, packet.base + Ipv4Header.LENGTH, sourcePort, destinationPort, datagramLength);
+        return packet;
+    }
+
+    public static Packet echoRequest(int sourceIp, int destinationIp, int identifier, int sequence, int payloadLength) {
+        Packet packet = new Packet();
+        Ipv4Header.init(packet.buffer, packet.base, Ipv4Header.PROTOCOL_ICMP, sourceIp, destinationIp,
+                Ipv4Header.LENGTH + IcmpHeader.LENGTH + payloadLength);
+        IcmpHeader.init(packet.buffer, packet.base + Ipv4Header.LENGTH, IcmpHeader.ECHO_REQUEST, identifier, sequence);
+        return packet;
+    }
+
+    /**
+     * Creates a packet from headers copied out by {@link #copyHeaders(byte[])}, e.g. when a checkpoint is read.
+     */
+    public static Packet fromHeaders(byte[] headers) {
+        Packet packet = new Packet();
+        for (int i = 0; i < HEADERS_LENGTH; i++) {
+            packet.buffer.put(packet.base + i, headers[i]);
+        }
+        return packet;
+    }
+
+    public void copyHeaders(byte[] target) {
+        for (int i = 0; i < HEADERS_LENGTH; i++) {
+            target[i] = buffer.get(base + i);
+        }
+    }
+
+    /**
+     * @return Another packet with the same headers, in a cell of its own.
+     */
+    public Packet copy() {
+        Packet copy = new Packet();
+        for (int i = 0; i < HEADERS_LENGTH; i += 4) {
+            copy.buffer.putInt(copy.base + i, buffer.getInt(base + i));
+        }
+        return copy;
+    }
+
+    /**
+     * The headers are all a packet stores, so the copy is a cell of its own with the same headers.
+     */
+    @Override
+    public Packet mirrorCopy() {
+        return copy();
+    }
+
+    @Override
+    public void release() {
+        if (cell < 0) {
+            return;
+        }
+        pool.free(cell);
+        cell = -1;
+    }
+
+    public boolean isReleased() {
+        return cell < 0;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return Offset of the IPv4 header in the buffer.
+     */
+    public int getOffset() {
+        return base;
+    }
+
+    /**
+     * @return Offset of the encapsulated header in the buffer.
+     */
+    public int getPayloadOffset() {
+        return base + Ipv4Header.headerLength(buffer, base);
+    }
+
+    public int getSourceAddress() {
+        return Ipv4Header.source(buffer, base);
+    }
+
+    public int getDestinationAddress() {
+        return Ipv4Header.destination(buffer, base);
+    }
+
+    public int getProtocol() {
+        return Ipv4Header.protocol(buffer, base);
+    }
+
+    public int getTimeToLive() {
+        return Ipv4Header.timeToLive(buffer, base);
+    }
+
+    /**
+     * Decrements the TTL, as a router does before forwarding.
+     * @return TTL left.
+     */
+    public int decrementTimeToLive() {
+        int timeToLive = Math.max(0, Ipv4Header.timeToLive(buffer, base) - 1);
+        Ipv4Header.setTimeToLive(buffer, base, timeToLive);
+        Ipv4Header.updateChecksum(buffer, base);
+        return timeToLive;
+    }
+
+    //0.0.0.0 stands for "not set yet", as null does for the on-heap IP
+
+    @Override
+    public Integer getSourceIp() {
+        int address = Ipv4Header.source(buffer, base);
+        return (0 == address) ? null : address;
+    }
+
+    @Override
+    public void setSourceIp(Integer sourceIp) {
+        Ipv4Header.setSource(buffer, base, (null == sourceIp) ? 0 : sourceIp);
+        Ipv4Header.updateChecksum(buffer, base);
+    }
+
+    @Override
+    public Integer getDestinationIp() {
+        int address = Ipv4Header.destination(buffer, base);
+        return (0 == address) ? null : address;
+    }
+
+    @Override
+    public void setDestinationIp(Integer destinationIp) {
+        Ipv4Header.setDestination(buffer, base, (null == destinationIp) ? 0 : destinationIp);
+        Ipv4Header.updateChecksum(buffer, base);
+    }
+
+    @Override
+    public EncapsulatedType getEncapsulatedType() {
+        switch (Ipv4Header.protocol(buffer, base)) {
+            case Ipv4Header.PROTOCOL_ICMP:
+                int type = IcmpHeader.type(buffer, getPayloadOffset());
+                return (IcmpHeader.ECHO_REQUEST == type || IcmpHeader.ECHO_REPLY == type)
+                        ? EncapsulatedType.PING : EncapsulatedType.ICMP;
+            case Ipv4Header.PROTOCOL_TCP:
+                return EncapsulatedType.TCP;
+            case Ipv4Header.PROTOCOL_UDP:
+                return EncapsulatedType.UDP;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public void setEncapsulatedType(EncapsulatedType encapsulatedType) {
+        if (null == encapsulatedType) {
+            return;
+        }
+        switch (encapsulatedType) {
+            case TCP:
+                Ipv4Header.setProtocol(buffer, base, Ipv4Header.PROTOCOL_TCP);
+                break;
+            case UDP:
+                Ipv4Header.setProtocol(buffer, base, Ipv4Header.PROTOCOL_UDP);
+                break;
+            default:
+                Ipv4Header.setProtocol(buffer, base, Ipv4Header.PROTOCOL_ICMP);
+        }
+        Ipv4Header.updateChecksum(buffer, base);
+    }
+
+    //DSCP is the upper 6 bits of the type of service, the lower 2 are ECN
+
+    @Override
+    public int getDscp() {
+        return Ipv4Header.typeOfService(buffer, base) >>> 2;
+    }
+
+    @Override
+    public void setDscp(int dscp) {
+        int ecn = Ipv4Header.typeOfService(buffer, base) & 0x3;
+        Ipv4Header.setTypeOfService(buffer, base, ((dscp & 0x3F) << 2) | ecn);
+        Ipv4Header.updateChecksum(buffer, base);
+    }
+
+    @Override
+    public int getSize() {
+        return Ipv4Header.totalLength(buffer, base);
+    }
+
+    @Override
+    public void setSize(int size) {
+        Ipv4Header.setTotalLength(buffer, base, Math.min(size, 0xFFFF));
+        Ipv4Header.updateChecksum(buffer, base);
+    }
+}
@@ -0,0 +1,120 @@
+package com.edunetcracker.simulator.model.dataUnit.packet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Fixed-size cells for packet headers in direct (off-heap) ByteBuffer slabs.
+ * A cell is addressed by an int handle: the slab number in the high bits, the cell number in the low ones.
+ * Slabs are allocated as the pool grows and are never given back.
+ *
+ * Every thread keeps a small magazine of free cells, so that taking and returning a cell
+ * doesn't take the pool's lock but once per MAGAZINE_SIZE / 2 cells.
+ */
+public class PacketPool {
+    private static Logger logger = LoggerFactory.getLogger(PacketPool.class);
+
+    //IPv4 header without options and an ICMP or UDP header fit
+    public static final int CELL_SIZE = 32;
+
+    private static final int CELL_BITS = 15;
+    private static final int CELLS_PER_SLAB = 1 << CELL_BITS;
+    private static final int MAGAZINE_SIZE = 64;
+
+    private static final PacketPool SHARED = new PacketPool();
+
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+
+    //Free cells not in any magazine, guarded by this
+    private int[] free = new int[0];
+    private int freeCount = 0;
+
+    private final ThreadLocal<Magazine> magazines = ThreadLocal.withInitial(Magazine::new);
+
+    public static PacketPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return Handle of a free cell. The cell's contents are left from its previous user.
+     */
+    public int allocate() {
+        Magazine magazine = magazines.get();
+        if (0 == magazine.count) {
+            refill(magazine);
+        }
+        return magazine.cells[--magazine.count];
+    }
+
+    /**
+     * Gives the cell back. The handle must not be used afterwards.
+     */
+    public void free(int cell) {
+        Magazine magazine = magazines.get();
+        if (MAGAZINE_SIZE == magazine.count) {
+            flush(magazine);
+        }
+        magazine.cells[magazine.count++] = cell;
+    }
+
+    public ByteBuffer buffer(int cell) {
+        return slabs[cell >>> CELL_BITS];
+    }
+
+    public static int offset(int cell) {
+        return (cell & (CELLS_PER_SLAB - 1)) * CELL_SIZE;
+    }
+
+    /**
+     * @return Off-heap bytes the pool has taken so far.
+     */
+    public long getReservedBytes() {
+        return (long) slabs.length * CELLS_PER_SLAB * CELL_SIZE;
+    }
+
+    private synchronized void refill(Magazine magazine) {
+        if (0 == freeCount) {
+            grow();
+        }
+        int taken = Math.min(MAGAZINE_SIZE / 2, freeCount);
+        freeCount -= taken;
+        System.arraycopy(free, freeCount, magazine.cells, 0, taken);
+        magazine.count = taken;
+    }
+
+    private synchronized void flush(Magazine magazine) {
+        int given = MAGAZINE_SIZE / 2;
+        if (free.length < freeCount + given) {
+            free = Arrays.copyOf(free, Math.max(free.length * 2, freeCount + given));
+        }
+        magazine.count -= given;
+        System.arraycopy(magazine.cells, magazine.count, free, freeCount, given);
+        freeCount += given;
+    }
+
+    //Must be called under the lock
+    private void grow() {
+        int slab = slabs.length;
+        if (slab >= 1 << (Integer.SIZE - 1 - CELL_BITS)) {
+            throw new IllegalStateException("Packet pool is exhausted.");
+        }
+        ByteBuffer[] grown = Arrays.copyOf(slabs, slab + 1);
+        grown[slab] = ByteBuffer.allocateDirect(CELLS_PER_SLAB * CELL_SIZE);
+        slabs = grown;
+        if (free.length < freeCount + CELLS_PER_SLAB) {
+            free = Arrays.copyOf(free, freeCount + CELLS_PER_SLAB);
+        }
+        for (int cell = CELLS_PER_SLAB - 1; cell >= 0; cell--) {
+            free[freeCount++] = (slab << CELL_BITS) | cell;
+        }
+        logger.info("Packet pool grew to {} slabs ({} KiB).", grown.length, getReservedBytes() / 1024);
+    }
+
+    private static class Magazine {
+        final int[] cells = new int[MAGAZINE_SIZE];
+        int count = 0;
+    }
+}
@@ -0,0 +1,41 @@
+package com.edunetcracker.simulator.model.dataUnit.packet;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight accessors of a UDP header (RFC 768) at the given offset of a buffer.
+ */
+public final class UdpHeader {
+
+    public static final int LENGTH = 8;
+
+    private static final int SOURCE_PORT = 0;
+    private static final int DESTINATION_PORT = 2;
+    private static final int DATAGRAM_LENGTH = 4;
+    private static final int CHECKSUM = 6;
+
+    private UdpHeader() {
+    }
+
+    /**
+     * The checksum is optional over IPv4 and is left zero.
+     */
+    public static void init(ByteBuffer buffer, int at, int sourcePort, int destinationPort, int datagramLength) {
+        buffer.putShort(at + SOURCE_PORT, (short) sourcePort);
+        buffer.putShort(at + DESTINATION_PORT, (short) destinationPort);
+        buffer.putShort(at + DATAGRAM_LENGTH, (short) datagramLength);
+        buffer.putShort(at + CHECKSUM, (short) 0);
+    }
+
+    public static int sourcePort(ByteBuffer buffer, int at) {
+        return buffer.getShort(at + SOURCE_PORT) & 0xFFFF;
+    }
+
+    public static int destinationPort(ByteBuffer buffer, int at) {
+        return buffer.getShort(at + DESTINATION_PORT) & 0xFFFF;
+    }
+
+    public static int datagramLength(ByteBuffer buffer, int at) {
+        return buffer.getShort(at + DATAGRAM_LENGTH) & 0xFFFF;
+    }
+}
@@ -6,27 +6,28 @@ import com.edunetcracker.simulator.model.context.NEContext;
 import com.edunetcracker.simulator.model.Scene;
 import com.edunetcracker.simulator.model.dataUnit.DataUnit;
 import com.edunetcracker.simulator.service.context.ContextService;
+import com.edunetcracker.simulator.service.simulation.OverloadPolicy;
+import com.edunetcracker.simulator.service.simulation.SimulationEngine;
 import com.edunetcracker.simulator.service.status.SequenceStatus;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.persistence.*;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Setter
 @Getter
 @Entity
 @Inheritance(strategy = InheritanceType.JOINED)
-public abstract class NetworkElement extends Thread implements DBObject<NetworkElement> {
+public abstract class NetworkElement implements DBObject<NetworkElement> {
 
     @Autowired
     static ContextService contextService;
@@ -53,21 +54,69 @@ public abstract class NetworkElement extends Thread implements DBObject<NetworkE
     private Scene scene;
 
     @Transient
-    protected List<NEContext> contexts;
+    protected Queue<NEContext> contexts;
 
     @Transient
-    private boolean working = true;
+    private volatile boolean working = true;
 
+    //Engine the element is registered at, null while the element is stopped
+    @Transient
+    private SimulationEngine engine;
+
+    public static final long NOT_SCHEDULED = Long.MAX_VALUE;
+
+    //Time of the tick the engine has scheduled for this element, NOT_SCHEDULED while the element is parked
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicLong scheduledTick = new AtomicLong(NOT_SCHEDULED);
+
+
+    //Packets per simulated second the element is able to process
+    @Column(name = "forwarding_rate")
+    @JsonProperty
+    private long forwardingRate = ProcessingProfile.DEFAULT.getForwardingRate();
+
+    //Wall clock milliseconds the element may spend on each phase of a tick
+    @Column(name = "input_processing_time")
+    @JsonProperty
+    private int inputProcessingTime = ProcessingProfile.DEFAULT.getInputProcessingTime();
+    @Column(name = "command_processing_time")
+    @JsonProperty
+    private int commandProcessingTime = ProcessingProfile.DEFAULT.getCommandProcessingTime();
+    @Column(name = "context_processing_time")
+    @JsonProperty
+    private int contextProcessingTime = ProcessingProfile.DEFAULT.getContextProcessingTime();
+
+    //Packets the element may process, accumulated tick by tick from the forwarding rate
+    @Transient
+    private double inputCredit;
+
+    //System.nanoTime() at which the current phase runs out of its budget
+    @Transient
+    private long phaseDeadline;
 
+    //Number of phases that took longer than their budget, and by how much in total
     @Transient
-    protected final static int inputProcessingTime = 30;
+    private long phaseOverruns;
     @Transient
-    protected final static int commandProcessingTime = 30;
+    private long overrunNanos;
+
+    //Whether a phase of the last tick took longer than its budget
+    @Transient
+    private boolean overranLastTick;
+
+    //DataUnits dropped under the SHED_INPUT overload policy
+    @Transient
+    private long shedDataUnits;
+
+    //Ticks that threw an exception
     @Transient
-    protected final static int contextProcessingTime = 60;
+    private long failures;
 
+    //Simulated time of the tick being run (or of the last one)
     @Transient
-    protected final static int inputProcessingRate = 100;
+    private volatile long tickTime;
 
     //tasks from user
     @Transient
@@ -77,10 +126,11 @@ public abstract class NetworkElement extends Thread implements DBObject<NetworkE
 
 
     public NetworkElement() {
-        contexts = new LinkedList<>();
+        contexts = new ConcurrentLinkedQueue<>();
     }
 
     protected NetworkElement(int id) {
+        this();
         this.idNE = id;
     }
 
@@ -98,27 +148,226 @@ public abstract class NetworkElement extends Thread implements DBObject<NetworkE
         return SequenceStatus.OK;
     }
 
-    @Override
-    public void run() {
-
-        Long stamp = 0L;
-
-        while (working) {
-             stamp = System.currentTimeMillis();
-             
-             processCommands();
-             processInputTraffic();
-             processContexts();
-
-            try {
-                //so that time would split into equal parts
-                Thread.sleep(100 + stamp - System.currentTimeMillis());
-            } catch (InterruptedException ie) {
-                Logger logger = LoggerFactory.getLogger(NetworkElement.class);
-                logger.error(ie.getMessage());
+    /**
+     * Processes everything the element has at the moment.
+     * Is called by the SimulationEngine, once per scheduled tick.
+     */
+    public void tick() {
+        flipInput();
+        tickInput();
+        tickContexts();
+    }
+
+    /**
+     * Input phase of a tick: user commands and the traffic received on the previous tick.
+     */
+    public void tickInput() {
+        overranLastTick = false;
+        long started = beginPhase(commandProcessingTime);
+        processCommands();
+        endPhase("Command phase", started, commandProcessingTime);
+
+        started = beginPhase(inputProcessingTime);
+        processInputTraffic();
+        endPhase("Input phase", started, inputProcessingTime);
+    }
+
+    /**
+     * Context phase of a tick.
+     */
+    public void tickContexts() {
+        if (isOverloaded() && OverloadPolicy.SKIP_CONTEXTS == getOverloadPolicy()) {
+            //Contexts stay alive and are processed once the element catches up
+            return;
+        }
+        long started = beginPhase(contextProcessingTime);
+        processContexts();
+        endPhase("Context phase", started, contextProcessingTime);
+    }
+
+    /**
+     * @return Whether the element (or the whole engine) can't keep up with the simulated time.
+     */
+    public boolean isOverloaded() {
+        SimulationEngine currentEngine = engine;
+        return overranLastTick || (null != currentEngine && currentEngine.isBehind());
+    }
+
+    protected OverloadPolicy getOverloadPolicy() {
+        SimulationEngine currentEngine = engine;
+        return (null == currentEngine) ? OverloadPolicy.NONE : currentEngine.getOverloadPolicy();
+    }
+
+    protected void recordShedDataUnit() {
+        ++shedDataUnits;
+    }
+
+    /**
+     * Is called when a phase of the element's tick throws. The element keeps running.
+     */
+    public void recordFailure(RuntimeException e) {
+        ++failures;
+        SequenceStatus.ELEMENT_TICK_FAILED.logError(idNE, e.toString());
+    }
+
+    public void applyProfile(ProcessingProfile profile) {
+        forwardingRate = profile.getForwardingRate();
+        inputProcessingTime = profile.getInputProcessingTime();
+        commandProcessingTime = profile.getCommandProcessingTime();
+        contextProcessingTime = profile.getContextProcessingTime();
+    }
+
+    private long beginPhase(int budgetMillis) {
+        long started = System.nanoTime();
+        phaseDeadline = started + budgetMillis * 1_000_000L;
+        return started;
+    }
+
+    private void endPhase(String phase, long started, int budgetMillis) {
+        long elapsed = System.nanoTime() - started;
+        long budget = budgetMillis * 1_000_000L;
+        if (elapsed <= budget) {
+            return;
+        }
+        overranLastTick = true;
+        overrunNanos += elapsed - budget;
+        //Logged on the 1st, 2nd, 4th, 8th... overrun, so that an overloaded element doesn't flood the log
+        if (Long.bitCount(++phaseOverruns) == 1) {
+            SequenceStatus.PHASE_BUDGET_EXCEEDED.logWarning(phase, idNE, elapsed / 1000, budgetMillis * 1000L,
+                    phaseOverruns);
+        }
+    }
+
+    /**
+     * @return Whether the current phase has already spent its wall clock budget.
+     */
+    protected boolean isOverBudget() {
+        return System.nanoTime() > phaseDeadline;
+    }
+
+    /**
+     * Adds one tick worth of forwarding rate to the element's credit.
+     * Credit of idle ticks doesn't pile up.
+     * @return Number of packets the element may process in this tick.
+     */
+    protected int takeInputCredit() {
+        long tickLength = currentTickLength();
+        double perTick = forwardingRate * tickLength / 1000.0;
+        inputCredit = Math.min(inputCredit + perTick, Math.max(perTick, 1.0));
+        return (int) Math.min(Integer.MAX_VALUE, (long) inputCredit);
+    }
+
+    /**
+     * @return Tick length of the engine the element runs at, simulated ms.
+     */
+    public long currentTickLength() {
+        SimulationEngine currentEngine = engine;
+        return (null == currentEngine) ? SimulationEngine.DEFAULT_TICK_LENGTH : currentEngine.getTickLength();
+    }
+
+    protected void spendInputCredit(int packets) {
+        inputCredit = Math.max(0, inputCredit - packets);
+    }
+
+    /**
+     * @return Whether the element has to be ticked again.
+     */
+    public boolean hasWork() {
+        return Long.MAX_VALUE != nextWorkTime();
+    }
+
+    /**
+     * @return Simulated time the element will have something to do at (times up to the
+     *         current tick mean "the next tick"), or Long.MAX_VALUE if it may park.
+     */
+    public long nextWorkTime() {
+        return contexts.isEmpty() ? Math.min(nextInputTime(), nextOutputTime()) : tickTime;
+    }
+
+    /**
+     * @return Simulated time the earliest input not processed yet is readable at, or Long.MAX_VALUE.
+     *         Elements whose input is delayed by links override it, so that they sleep till then.
+     */
+    protected long nextInputTime() {
+        return hasInputTraffic() ? tickTime : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return Simulated time output held back by the element (e.g. by egress scheduling) may be sent at,
+     *         or Long.MAX_VALUE if there is none.
+     */
+    protected long nextOutputTime() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Adds a context and makes sure the element will get to process it.
+     */
+    public void addContext(NEContext context) {
+        contexts.add(context);
+        wake();
+    }
+
+    /**
+     * Takes the element out of the parked state, or moves its scheduled tick to an earlier time.
+     * @return False, if the element already had a tick scheduled at that time or earlier.
+     */
+    public boolean claimTick(long time) {
+        while (true) {
+            long scheduled = scheduledTick.get();
+            if (scheduled <= time) {
+                return false;
+            }
+            if (scheduledTick.compareAndSet(scheduled, time)) {
+                return true;
             }
         }
+    }
 
+    /**
+     * @return Whether the element has a tick scheduled at the given time or earlier. Doesn't lock.
+     */
+    public boolean hasTickBy(long time) {
+        return scheduledTick.get() <= time;
+    }
+
+    /**
+     * Parks the element: the next wake() will schedule a tick again.
+     */
+    public void releaseTick() {
+        scheduledTick.set(NOT_SCHEDULED);
+    }
+
+    public boolean isParked() {
+        return NOT_SCHEDULED == scheduledTick.get();
+    }
+
+    /**
+     * @return Whether the tick at the given time is the one the element waits for.
+     */
+    public boolean isTickScheduledAt(long time) {
+        return scheduledTick.get() == time;
+    }
+
+    /**
+     * Asks the engine to tick the element, if the element is running.
+     * Is cheap when the element is already awake.
+     */
+    public void wake() {
+        SimulationEngine currentEngine = engine;
+        if (null != currentEngine) {
+            currentEngine.wake(this);
+        }
+    }
+
+    /**
+     * Asks the engine to tick the element once the simulated time reaches the given one.
+     */
+    public void wakeAt(long time) {
+        SimulationEngine currentEngine = engine;
+        if (null != currentEngine) {
+            currentEngine.wakeAt(this, time);
+        }
     }
 
     protected abstract void processContexts();
@@ -127,6 +376,14 @@ public abstract class NetworkElement extends Thread implements DBObject<NetworkE
 
     protected abstract void processCommands();
 
+    protected abstract boolean hasInputTraffic();
+
+    /**
+     * Makes the input that has arrived by the time of the tick readable.
+     * Is called before the input phase, while no element is being processed.
+     */
+    public abstract void flipInput();
+
     @Override
     public String toString() {
         ObjectMapper mapper = new ObjectMapper();
@@ -0,0 +1,46 @@
+package com.edunetcracker.simulator.model.element;
+
+import lombok.Getter;
+
+/**
+ * Processing capacity of a NetworkElement model, chosen by its physConfigType.
+ * Forwarding rate is given per simulated second, so it doesn't depend on the tick length.
+ * Phase budgets are wall clock milliseconds an element may spend on a phase of one tick.
+ */
+@Getter
+public enum ProcessingProfile {
+
+    DEFAULT("any", 1_000, 30, 30, 60),
+    ACCESS("access", 10_000, 30, 30, 60),
+    CORE("core", 1_000_000, 60, 30, 60);
+
+/*~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~*/
+
+    private String physConfigType;
+    //Packets per simulated second
+    private long forwardingRate;
+    private int inputProcessingTime;
+    private int commandProcessingTime;
+    private int contextProcessingTime;
+
+    ProcessingProfile(String physConfigType, long forwardingRate,
+                      int inputProcessingTime, int commandProcessingTime, int contextProcessingTime) {
+        this.physConfigType = physConfigType;
+        this.forwardingRate = forwardingRate;
+        this.inputProcessingTime = inputProcessingTime;
+        this.commandProcessingTime = commandProcessingTime;
+        this.contextProcessingTime = contextProcessingTime;
+    }
+
+    /**
+     * @return Profile of the given physical configuration type, or DEFAULT if there is no such.
+     */
+    public static ProcessingProfile forPhysConfigType(String physConfigType) {
+        for (ProcessingProfile profile : values()) {
+            if (profile.physConfigType.equalsIgnoreCase(physConfigType)) {
+                return profile;
+            }
+        }
+        return DEFAULT;
+    }
+}
@@ -1,18 +1,22 @@
 package com.edunetcracker.simulator.model.element;
 
+import com.edunetcracker.simulator.model.context.FlowControl;
 import com.edunetcracker.simulator.model.context.NEContext;
 import com.edunetcracker.simulator.model.dataUnit.ip.IP;
 import com.edunetcracker.simulator.model.dataUnit.DataUnit;
-import com.edunetcracker.simulator.model.port.Port;
 import com.edunetcracker.simulator.model.port.RouterPort;
 import com.edunetcracker.simulator.model.routing.RouteSource;
+import com.edunetcracker.simulator.model.routing.routingTable.FibSnapshot;
+import com.edunetcracker.simulator.model.routing.routingTable.FlowCache;
+import com.edunetcracker.simulator.model.routing.routingTable.ForwardingTable;
 import com.edunetcracker.simulator.model.routing.routingTable.RoutingTable;
 import com.edunetcracker.simulator.model.routing.routingTableEntry.RoutingTableEntry;
-import com.edunetcracker.simulator.service.context.ContextService;
 import com.edunetcracker.simulator.service.routingService.IpService;
 import com.edunetcracker.simulator.service.routingService.RoutingTableService;
+import com.edunetcracker.simulator.service.simulation.OverloadPolicy;
 import com.edunetcracker.simulator.service.status.SequenceStatus;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.slf4j.Logger;
@@ -27,9 +31,18 @@ import javax.persistence.*;
 @Setter
 @Getter
 @Entity
-public class Router extends NetworkElement {
+public class Router extends NetworkElement implements FlowControl {
     private static Logger logger = LoggerFactory.getLogger(Router.class);
 
+    //Bytes a port may send per round of the input scheduler
+    private static final int INPUT_QUANTUM = 4 * DataUnit.DEFAULT_SIZE;
+    //Most dataUnits taken from a port at once
+    private static final int INPUT_BATCH = 64;
+
+    //What findLeadingPort returns for the router's own addresses and for the unreachable ones
+    public static final int LOCAL = ForwardingTable.LOCAL;
+    public static final int UNREACHABLE = ForwardingTable.NO_ROUTE;
+
     @JsonProperty
     @OneToMany(mappedBy = "router",
                cascade = CascadeType.ALL,
@@ -44,6 +57,48 @@ public class Router extends NetworkElement {
                 referencedColumnName="id")
     private RoutingTable routingTable;
 
+    //Whether the routes are compiled to a forwarding table (takes 32 MiB), for routers with large tables
+    @JsonProperty
+    @Column(name = "compiled_fib")
+    private boolean compiledFib;
+
+    //Most destinations the flow cache holds, 0 means no cache
+    @JsonProperty
+    @Column(name = "flow_cache_size")
+    private int flowCacheSize;
+
+    //Ports of the recent destinations, in front of the route lookup
+    @Transient
+    @Setter(AccessLevel.NONE)
+    private volatile FlowCache flowCache;
+
+    @Transient
+    private long processedDataUnits;
+
+    //Deficit round robin state, is sized to the ports and reused from tick to tick
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private RouterPort[] inputPorts = new RouterPort[0];
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int[] deficits = new int[0];
+    //Indexes of the ports with input left in this tick
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int[] activePorts = new int[0];
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final DataUnit[] inputBatch = new DataUnit[INPUT_BATCH];
+    //Port the first round starts from, moves every tick
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int firstInputPort;
+
 
     public Router() {
         super();
@@ -78,9 +133,9 @@ public class Router extends NetworkElement {
     @Override
     protected void processContexts() {
         Iterator contextsIterator = this.contexts.iterator();
-        while (contextsIterator.hasNext()) {
+        while (contextsIterator.hasNext() && !isOverBudget()) {
             NEContext context = (NEContext) contextsIterator.next();
-            List<DataUnit> dataUnits = context.performAction();
+            List<DataUnit> dataUnits = context.performAction(this);
             processDataUnits(dataUnits);
             if (!context.isAlive()) {
                 contextsIterator.remove();
@@ -90,36 +145,108 @@ public class Router extends NetworkElement {
 
     @Override
     protected void processInputTraffic() {
-        Object[] nonemptyPortsArr = ports.stream()
-                                   .filter(Port::hasInput)
-                                   .toArray();
-        LinkedList nonemptyPorts = new LinkedList(Arrays.asList(nonemptyPortsArr));
-        ListIterator<RouterPort> portIter = nonemptyPorts.listIterator();
-
+        //A router woken only by its contexts shouldn't pay for the input scheduling
+        if (!hasInputTraffic()) {
+            return;
+        }
+        int active = collectActivePorts();
+        int limit = takeInputCredit();
         int n = 0;
-        while (n < inputProcessingRate) {
-            if (!portIter.hasNext()) {
-                if (!nonemptyPorts.isEmpty()) {
-                    portIter = nonemptyPorts.listIterator();
-                } else { break; }
+        boolean overBudget = false;
+        //Deficit round robin: every round a port may send a quantum of bytes, the overdraft of a batch is
+        //paid back in the next rounds. A port that runs out of input leaves the round and its deficit resets.
+        while (active > 0 && n < limit && !overBudget) {
+            int i = 0;
+            while (i < active && n < limit && !overBudget) {
+                int index = activePorts[i];
+                deficits[index] += INPUT_QUANTUM;
+                boolean exhausted = false;
+                while (deficits[index] > 0 && n < limit) {
+                    int max = Math.min(limit - n, Math.max(1, deficits[index] / DataUnit.DEFAULT_SIZE));
+                    int drained = inputPorts[index].drainTo(inputBatch, max);
+                    if (0 == drained) {
+                        exhausted = true;
+                        break;
+                    }
+                    for (int j = 0; j < drained; j++) {
+                        DataUnit dataUnit = inputBatch[j];
+                        inputBatch[j] = null;
+                        deficits[index] -= dataUnit.getSize();
+                        processDataUnit(dataUnit);
+                    }
+                    //nanoTime() isn't free, so the budget is checked every 16 packets
+                    if ((n >>> 4) != ((n + drained) >>> 4) && isOverBudget()) {
+                        overBudget = true;
+                    }
+                    n += drained;
+                    if (overBudget) {
+                        break;
+                    }
+                }
+                if (exhausted) {
+                    deficits[index] = 0;
+                    activePorts[i] = activePorts[--active];
+                } else {
+                    ++i;
+                }
             }
-            RouterPort curPort = portIter.next();
+        }
+        spendInputCredit(n);
 
-            if (processPortInput(curPort)) { ++n; }
-            else {
-                portIter.remove();
-            }
+        if (isOverloaded() && OverloadPolicy.SHED_INPUT == getOverloadPolicy()) {
+            shedInput();
         }
     }
 
-    private boolean processPortInput (RouterPort port) {
-        DataUnit dataUnit = port.getIn().poll();
-        if (null == dataUnit) {
-            return false;
+    /**
+     * Drops whatever input the router had no capacity to process in this tick.
+     */
+    private void shedInput() {
+        for (RouterPort port : ports) {
+            if (null == port.getIn()) {
+                continue;
+            }
+            DataUnit dataUnit;
+            while (null != (dataUnit = port.getIn().poll())) {
+                recordShedDataUnit();
+                dataUnit.release();
+            }
         }
-        processDataUnit(dataUnit);
+    }
 
-        return true;
+    /**
+     * Puts the indexes of the ports that have input to activePorts, starting from a port
+     * that moves every tick. Resizes the scheduler's arrays if the ports have changed.
+     * @return Number of such ports.
+     */
+    private int collectActivePorts() {
+        int count = ports.size();
+        if (inputPorts.length != count) {
+            inputPorts = new RouterPort[count];
+            deficits = new int[count];
+            activePorts = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            RouterPort port = ports.get(i);
+            if (inputPorts[i] != port) {
+                inputPorts[i] = port;
+                deficits[i] = 0;
+            }
+        }
+        if (0 == count) {
+            return 0;
+        }
+        firstInputPort = (firstInputPort + 1) % count;
+        int active = 0;
+        for (int k = 0; k < count; k++) {
+            int index = (firstInputPort + k) % count;
+            if (inputPorts[index].hasReadableInput()) {
+                activePorts[active++] = index;
+            } else {
+                deficits[index] = 0;
+            }
+        }
+        return active;
     }
 
     private void processDataUnits (List<DataUnit> dataUnits) {
@@ -131,40 +258,63 @@ public class Router extends NetworkElement {
     }
 
     private void processDataUnit (DataUnit dataUnit) {
-        logger.info("Processing dataUnit");
+        logger.trace("Processing dataUnit");
+        ++processedDataUnits;
         if (dataUnit.getType() == DataUnit.Type.IP) {
             processIp((IP)dataUnit);
+        } else {
+            dataUnit.release();
         }
     }
 
     private void processIp (IP packet) {
-        logger.info("Processing IP.");
-        Optional<RouterPort> port = findLeadingPort(packet.getDestinationIp());
-        if (null == port) {
-            logger.info("Destination {} is unreachable.", packet.getDestinationIp());
+        logger.trace("Processing IP.");
+        Integer destinationIp = packet.getDestinationIp();
+        int portIndex = (null == destinationIp) ? UNREACHABLE : findLeadingPort(destinationIp.intValue());
+        if (UNREACHABLE == portIndex) {
+            if (logger.isTraceEnabled()) {
+                logger.trace("Destination {} is unreachable.", packet.getDestinationIp());
+            }
             //This code is to create a "Destination unreachable" packet and reroute it
             //port = findPortByIp(packet.getSourceIp());
             //packet = IpBuilder.destinationUnreachable(packet, port.get().getIp());
+            packet.release();
             return;
         }
-        if (port.isPresent()) {
-            logger.info("Destination \"{}\" is reachable through port w/ ip \"{}\"",
-                    packet.getDestinationIp(), port.get().getIp());
-            if (null == packet.getSourceIp()) {
-                packet.setSourceIp(port.get().getIp());
+        if (LOCAL != portIndex) {
+            RouterPort port = ports.get(portIndex);
+            if (logger.isTraceEnabled()) {
+                logger.trace("Destination \"{}\" is reachable through port w/ ip \"{}\"",
+                        packet.getDestinationIp(), port.getIp());
             }
-            port.get().push(packet);
-            NEContext context = ContextService.fromTransitionalIp(packet);
-            if (null != context) {
-                contexts.add(context);
+            if (null == packet.getSourceIp()) {
+                packet.setSourceIp(port.getIp());
             }
+            //The port may have dropped and released the packet already, so it isn't touched after the push.
+            //Contexts out of the forwarded packets (ContextService.fromTransitionalIp) aren't implemented yet
+            port.push(packet);
         } else {
-            logger.info("The router is a destination \"{}\"", packet.getDestinationIp());
-            NEContext context = ContextService.fromAcceptedIp(packet);
-            if (null != context) {
-                contexts.add(context);
+            if (logger.isTraceEnabled()) {
+                logger.trace("The router is a destination \"{}\"", packet.getDestinationIp());
             }
+            //Contexts out of the accepted packets (ContextService.fromAcceptedIp) aren't implemented yet
+            packet.release();
+        }
+    }
+
+    /**
+     * Window of the port the traffic to the destination leaves through.
+     */
+    @Override
+    public int sendWindow(Integer destinationIp) {
+        int portIndex = findLeadingPort(destinationIp);
+        if (UNREACHABLE == portIndex) {
+            return 0;
+        }
+        if (LOCAL == portIndex) {
+            return UNLIMITED;
         }
+        return ports.get(portIndex).sendWindow();
     }
 
     @Override
@@ -172,43 +322,138 @@ public class Router extends NetworkElement {
 
     }
 
+    @Override
+    public void flipInput() {
+        for (RouterPort port : ports) {
+            port.flipInput(getTickTime());
+        }
+    }
+
+    /**
+     * Sends what the egress schedulers of the ports have held back, before the input is processed.
+     */
+    @Override
+    public void tickInput() {
+        for (RouterPort port : ports) {
+            port.transmitEgress(getTickTime());
+        }
+        super.tickInput();
+    }
+
+    @Override
+    protected long nextOutputTime() {
+        long time = Long.MAX_VALUE;
+        for (RouterPort port : ports) {
+            time = Math.min(time, port.nextEgressTime());
+        }
+        return time;
+    }
+
+    @Override
+    protected long nextInputTime() {
+        long time = Long.MAX_VALUE;
+        for (RouterPort port : ports) {
+            time = Math.min(time, port.nextInputTime());
+        }
+        return time;
+    }
+
+    @Override
+    protected boolean hasInputTraffic() {
+        for (RouterPort port : ports) {
+            if (port.hasInput()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void initializeRunningRoutes() {
         if (null == routingTable || null == ports) {
             SequenceStatus.FAILED_INITIALIZATION.logError("Router", "routingTable or ports");
             throw new NullPointerException();
         }
-        routingTable.loadSavedRoutesToRunning();
-        for (RouterPort port : ports) {
-            RoutingTableEntry[] dcroutes = RoutingTableService.constructDirectConnection(port);
-            if (null != dcroutes) {
-                routingTable.addRoute(dcroutes[0]);
-                routingTable.addRoute(dcroutes[1]);
+        routingTable.batch(() -> {
+            routingTable.loadSavedRoutesToRunning();
+            for (RouterPort port : ports) {
+                RoutingTableEntry[] dcroutes = RoutingTableService.constructDirectConnection(port);
+                if (null != dcroutes) {
+                    routingTable.addRoute(dcroutes[0]);
+                    routingTable.addRoute(dcroutes[1]);
+                }
             }
+            applyCompiledFib();
+        });
+        applyFlowCache();
+    }
+
+    /**
+     * Puts an empty flow cache of flowCacheSize in front of the route lookup, or removes the cache at 0 size.
+     */
+    public void applyFlowCache() {
+        flowCache = (flowCacheSize > 0) ? new FlowCache(flowCacheSize) : null;
+    }
+
+    /**
+     * Compiles the running routes to a forwarding table if the router asks for it, drops the table otherwise.
+     */
+    public void applyCompiledFib() {
+        if (compiledFib) {
+            routingTable.compileForwardingTable();
+        } else {
+            routingTable.dropForwardingTable();
+        }
+    }
+
+    /**
+     * Resolves the port the route leads through. Is called once per route, when it's installed
+     * or the addresses of the ports change, not per packet.
+     * @return Index of the port in the ports, LOCAL if the route is to the router's own address,
+     *         UNREACHABLE if no port is in the route's subnet.
+     */
+    public int egressPortOf (RoutingTableEntry route) {
+        if (RouteSource.LOCAL_PORT.equals(route.getRouteSource())) {
+            return LOCAL;
         }
+        for (int i = 0; i < ports.size(); i++) {
+            RouterPort port = ports.get(i);
+            if (IpService.isInSubnet(route.getIp(), port.getIp(), port.getMask())) {
+                return i;
+            }
+        }
+        return UNREACHABLE;
     }
 
 
     /**
-     * Searches for a port leading to the given destination IP.
+     * Searches for a port leading to the given destination IP: a route lookup, then the port the route was resolved to.
      * @param ip
-     * @return 1) Optional with null,       if port w/ destination IP is owned by the router
-     *         2) Optional with instance,   if the appropriate port was found
-     *         3) Null,                     if the router can't route to the given IP.
+     * @return 1) LOCAL,                    if port w/ destination IP is owned by the router
+     *         2) Index of the port,        if the appropriate port was found
+     *         3) UNREACHABLE,              if the router can't route to the given IP.
      */
-    public Optional<RouterPort> findLeadingPort (Integer ip) {
-        RoutingTableEntry entry = routingTable.getEntryByIp(ip);
-        if (null == entry) {
-            return null;
+    public int findLeadingPort (Integer ip) {
+        if (null == ip) {
+            return UNREACHABLE;
         }
-        if (RouteSource.LOCAL_PORT.equals(entry.getRouteSource())) {
-            return Optional.empty();
+        return findLeadingPort(ip.intValue());
+    }
+
+    /**
+     * {@link #findLeadingPort(Integer)} of the packet path, that doesn't box the address.
+     */
+    public int findLeadingPort (int ip) {
+        FibSnapshot fib = routingTable.getFib();
+        FlowCache cache = flowCache;
+        if (null == cache) {
+            return fib.lookupPort(ip);
         }
-        for (RouterPort port : ports) {
-            if (IpService.isInSubnet(entry.getIp(), port.getIp(), port.getMask())) {
-                return Optional.of(port);
-            }
+        int port = cache.get(ip, fib.getGeneration());
+        if (FlowCache.MISS == port) {
+            port = fib.lookupPort(ip);
+            cache.put(ip, port, fib.getGeneration());
         }
-        return null;
+        return port;
     }
 
     /**
@@ -62,6 +62,21 @@ public class Switch extends NetworkElement {
 
     }
 
+    @Override
+    public void flipInput() {
+        if (null == ports) {
+            return;
+        }
+        for (SwitchPort port : ports) {
+            port.flipInput(getTickTime());
+        }
+    }
+
+    @Override
+    protected boolean hasInputTraffic() {
+        return false;
+    }
+
 
     //    @Override
 //    void performAction(Object action) {
@@ -0,0 +1,82 @@
+package com.edunetcracker.simulator.model.policing;
+
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import com.edunetcracker.simulator.model.dataUnit.ip.IP;
+import com.edunetcracker.simulator.service.routingService.IpService;
+
+/**
+ * Flow classifier: source and destination prefixes and the protocol an IP packet has to match.
+ * Prefixes of length 0 and a null protocol match anything.
+ */
+public class FlowMatch {
+
+    private final int source;
+    private final int sourceMask;
+    private final int destination;
+    private final int destinationMask;
+    private final IP.EncapsulatedType protocol;
+
+    public FlowMatch(int source, int sourceLength, int destination, int destinationLength, IP.EncapsulatedType protocol) {
+        this.sourceMask = maskOf(sourceLength);
+        this.source = source & sourceMask;
+        this.destinationMask = maskOf(destinationLength);
+        this.destination = destination & destinationMask;
+        this.protocol = protocol;
+    }
+
+    /**
+     * Parses a prefix written as "10.0.0.0/8"; an address without the length is a host.
+     * @return Address and length, or null if it's not a prefix.
+     */
+    public static int[] parsePrefix(String prefix) {
+        String[] parts = prefix.trim().split("/");
+        if (parts.length > 2) {
+            return null;
+        }
+        Integer address = IpService.intFromString(parts[0]);
+        if (null == address) {
+            return null;
+        }
+        int length = 32;
+        if (2 == parts.length) {
+            try {
+                length = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (length < 0 || length > 32) {
+                return null;
+            }
+        }
+        return new int[] {address, length};
+    }
+
+    public boolean matches(DataUnit dataUnit) {
+        if (!(dataUnit instanceof IP)) {
+            return false;
+        }
+        IP ip = (IP) dataUnit;
+        if (null != protocol && protocol != ip.getEncapsulatedType()) {
+            return false;
+        }
+        return matches(ip.getSourceIp(), source, sourceMask) && matches(ip.getDestinationIp(), destination, destinationMask);
+    }
+
+    private static boolean matches(Integer address, int prefix, int mask) {
+        if (0 == mask) {
+            return true;
+        }
+        return null != address && (address & mask) == prefix;
+    }
+
+    private static int maskOf(int length) {
+        return (0 == length) ? 0 : IpService.createMask(length);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s/%d -> %s/%d %s", IpService.stringFromInt(source), Integer.bitCount(sourceMask),
+                IpService.stringFromInt(destination), Integer.bitCount(destinationMask),
+                (null == protocol) ? "any" : protocol.name());
+    }
+}
@@ -0,0 +1,195 @@
+package com.edunetcracker.simulator.model.policing;
+
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import com.edunetcracker.simulator.model.dataUnit.ip.IP;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Policer of the traffic a classifier matches. Either all of it shares one policer,
+ * or every flow (pair of source and destination addresses) gets a policer of its own,
+ * which is created when the flow shows up. Is used by the owner of the port only.
+ *
+ * Per-flow policers are kept in an open-addressing map (linear probing) of a bounded size, keyed by
+ * the two addresses in a long. Once it's full, a flow is forgotten by CLOCK, as {@link com.edunetcracker.simulator.model.routing.routingTable.FlowCache}
+ * does it, and its policer is recycled for the new flow. A flow counts as used from its second dataUnit on,
+ * so a scan of one-dataUnit flows evicts its own flows rather than the established ones.
+ * Counters of the forgotten flows are kept. The statistics read the map from other threads,
+ * so they are approximate while the traffic flows.
+ */
+@Getter
+public class FlowPolicer {
+
+    public static final int DEFAULT_MAX_FLOWS = 4096;
+    //About 10 MiB of policers
+    public static final int MAX_FLOWS = 1 << 16;
+
+    private final FlowMatch match;
+    private final long rate;
+    private final long burst;
+    private final long excessBurst;
+    private final PolicerAction exceedAction;
+    private final boolean perFlow;
+    private final int maxFlows;
+
+    //Not null unless per flow
+    private final Policer shared;
+
+    //Per flow only: keys of the slots, their policers (null in a free slot) and CLOCK bits
+    @Getter(AccessLevel.NONE)
+    private final long[] keys;
+    @Getter(AccessLevel.NONE)
+    private final Policer[] policers;
+    @Getter(AccessLevel.NONE)
+    private final boolean[] referenced;
+    @Getter(AccessLevel.NONE)
+    private final int mask;
+    @Getter(AccessLevel.NONE)
+    private int hand;
+    //Counters of the forgotten flows
+    @Getter(AccessLevel.NONE)
+    private final Policer retired;
+
+    private volatile int flowCount;
+    //Flows forgotten to make room for new ones
+    private volatile long evictedFlows;
+
+    public FlowPolicer(FlowMatch match, long rate, long burst, long excessBurst, PolicerAction exceedAction, boolean perFlow) {
+        this(match, rate, burst, excessBurst, exceedAction, perFlow, DEFAULT_MAX_FLOWS);
+    }
+
+    /**
+     * @param maxFlows Most flows policed at once, if per flow.
+     */
+    public FlowPolicer(FlowMatch match, long rate, long burst, long excessBurst, PolicerAction exceedAction,
+                       boolean perFlow, int maxFlows) {
+        if (perFlow && (maxFlows < 1 || maxFlows > MAX_FLOWS)) {
+            throw new IllegalArgumentException(String.format("Number of flows must be between 1 and %d.", MAX_FLOWS));
+        }
+        this.match = match;
+        this.rate = rate;
+        this.burst = burst;
+        this.excessBurst = excessBurst;
+        this.exceedAction = exceedAction;
+        this.perFlow = perFlow;
+        this.maxFlows = perFlow ? maxFlows : 0;
+        this.shared = perFlow ? null : new Policer(rate, burst, excessBurst, exceedAction);
+        //Keeps the load at 3/4 at most
+        int slots = perFlow ? Integer.highestOneBit(Math.max(2, maxFlows + (maxFlows + 2) / 3) - 1) << 1 : 0;
+        this.keys = perFlow ? new long[slots] : null;
+        this.policers = perFlow ? new Policer[slots] : null;
+        this.referenced = perFlow ? new boolean[slots] : null;
+        this.mask = slots - 1;
+        this.retired = perFlow ? new Policer(rate, burst, excessBurst, exceedAction) : null;
+    }
+
+    /**
+     * @return The policer of the dataUnit, or null if the classifier doesn't match it.
+     */
+    public Policer policerOf(DataUnit dataUnit) {
+        if (!match.matches(dataUnit)) {
+            return null;
+        }
+        if (!perFlow) {
+            return shared;
+        }
+        IP ip = (IP) dataUnit;
+        long key = ((long) addressOf(ip.getSourceIp()) << 32) | (addressOf(ip.getDestinationIp()) & 0xFFFFFFFFL);
+        int slot = home(key);
+        Policer policer;
+        while (null != (policer = policers[slot])) {
+            if (keys[slot] == key) {
+                referenced[slot] = true;
+                return policer;
+            }
+            slot = (slot + 1) & mask;
+        }
+        policer = (flowCount == maxFlows) ? evict() : new Policer(rate, burst, excessBurst, exceedAction);
+        //The eviction may have shifted the probe sequence, so the free slot is looked for again
+        slot = home(key);
+        while (null != policers[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        policers[slot] = policer;
+        referenced[slot] = false;
+        ++flowCount;
+        return policer;
+    }
+
+    /**
+     * @return The shared policer, or the ones of the flows policed now
+     *         and, once flows have been forgotten, one that holds their counters.
+     */
+    public Collection<Policer> getPolicers() {
+        if (!perFlow) {
+            return Collections.singletonList(shared);
+        }
+        List<Policer> all = new ArrayList<>(flowCount + 1);
+        for (Policer policer : policers) {
+            if (null != policer) {
+                all.add(policer);
+            }
+        }
+        if (evictedFlows > 0) {
+            all.add(retired);
+        }
+        return all;
+    }
+
+    //Takes two rounds at most: the first one clears the bits it passes
+    private Policer evict() {
+        while (true) {
+            int slot = hand;
+            hand = (hand + 1) & mask;
+            if (null == policers[slot]) {
+                continue;
+            }
+            if (referenced[slot]) {
+                referenced[slot] = false;
+                continue;
+            }
+            Policer policer = policers[slot];
+            remove(slot);
+            policer.recycle(retired);
+            ++evictedFlows;
+            return policer;
+        }
+    }
+
+    //Shifts the entries that follow back into the hole, so that the probing doesn't stop at it
+    private void remove(int slot) {
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (null == policers[next]) {
+                break;
+            }
+            int home = home(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                policers[hole] = policers[next];
+                referenced[hole] = referenced[next];
+                hole = next;
+            }
+        }
+        policers[hole] = null;
+        --flowCount;
+    }
+
+    private int home(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int folded = (int) (hash ^ (hash >>> 32));
+        return (folded ^ (folded >>> 16)) & mask;
+    }
+
+    private static int addressOf(Integer address) {
+        return (null == address) ? 0 : address;
+    }
+}
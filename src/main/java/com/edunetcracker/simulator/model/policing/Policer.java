@@ -0,0 +1,116 @@
+package com.edunetcracker.simulator.model.policing;
+
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import com.edunetcracker.simulator.model.dataUnit.ip.IP;
+import lombok.Getter;
+
+/**
+ * Single rate three color marker (RFC 2697). The committed bucket is refilled at the committed rate,
+ * the tokens it has no room for go to the excess bucket. A dataUnit the committed bucket pays for conforms,
+ * one the excess bucket pays for exceeds, any other violates and is dropped.
+ * Without the excess burst it's an ordinary two color policer.
+ * Keeps packet and byte counters of every color. Is used by the owner of the port only.
+ */
+@Getter
+public class Policer {
+
+    //Class selector 1, the bulk class
+    public static final int REMARK_DSCP = 8;
+
+    public enum Color {
+        CONFORM,
+        EXCEED,
+        VIOLATE
+    }
+
+    private final TokenBucket committed;
+    private final TokenBucket excess;
+    private final PolicerAction exceedAction;
+
+    private volatile long conformPackets;
+    private volatile long conformBytes;
+    private volatile long exceedPackets;
+    private volatile long exceedBytes;
+    private volatile long violatePackets;
+    private volatile long violateBytes;
+
+    /**
+     * @param rate Committed rate, bits per simulated second.
+     * @param burst Committed burst, bytes. Has to hold what arrives in a tick at the committed rate,
+     *              as the dataUnits of a tick are policed at the same simulated time.
+     * @param excessBurst Excess burst, bytes, 0 for none.
+     */
+    public Policer(long rate, long burst, long excessBurst, PolicerAction exceedAction) {
+        committed = new TokenBucket(rate, burst);
+        excess = new TokenBucket(0, excessBurst);
+        this.exceedAction = (null == exceedAction) ? PolicerAction.DROP : exceedAction;
+    }
+
+    public Color color(DataUnit dataUnit, long now) {
+        excess.add(committed.refill(now));
+        int size = dataUnit.getSize();
+        if (committed.take(size)) {
+            ++conformPackets;
+            conformBytes += size;
+            return Color.CONFORM;
+        }
+        if (excess.take(size)) {
+            ++exceedPackets;
+            exceedBytes += size;
+            return Color.EXCEED;
+        }
+        ++violatePackets;
+        violateBytes += size;
+        return Color.VIOLATE;
+    }
+
+    /**
+     * Colors the dataUnit and applies the actions.
+     * @return False, if the dataUnit has to be dropped.
+     */
+    public boolean police(DataUnit dataUnit, long now) {
+        switch (color(dataUnit, now)) {
+            case CONFORM:
+                return true;
+            case EXCEED:
+                if (PolicerAction.REMARK == exceedAction && dataUnit instanceof IP) {
+                    ((IP) dataUnit).setDscp(REMARK_DSCP);
+                }
+                return PolicerAction.DROP != exceedAction;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Moves the counters to the given policer and fills the buckets, so that this one may police another flow.
+     */
+    void recycle(Policer counters) {
+        counters.conformPackets += conformPackets;
+        counters.conformBytes += conformBytes;
+        counters.exceedPackets += exceedPackets;
+        counters.exceedBytes += exceedBytes;
+        counters.violatePackets += violatePackets;
+        counters.violateBytes += violateBytes;
+        conformPackets = 0;
+        conformBytes = 0;
+        exceedPackets = 0;
+        exceedBytes = 0;
+        violatePackets = 0;
+        violateBytes = 0;
+        committed.reset();
+        excess.reset();
+    }
+
+    public long getRate() {
+        return committed.getRate();
+    }
+
+    public long getBurst() {
+        return committed.getBurst();
+    }
+
+    public long getExcessBurst() {
+        return excess.getBurst();
+    }
+}
@@ -0,0 +1,11 @@
+package com.edunetcracker.simulator.model.policing;
+
+/**
+ * What a policer does with the dataUnits that exceed the committed rate but fit the excess burst.
+ */
+public enum PolicerAction {
+    TRANSMIT,
+    //Passes them marked down to the bulk class (CS1)
+    REMARK,
+    DROP
+}
@@ -0,0 +1,88 @@
+package com.edunetcracker.simulator.model.policing;
+
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import lombok.Getter;
+
+/**
+ * Egress shaper: dataUnits go to the wire only as the token bucket pays for them, the rest wait
+ * in the port's egress queues. A dataUnit that arrives to empty queues and finds the tokens conforms,
+ * one that has to wait exceeds, one the queues have no room for violates.
+ * Is used by the owner of the port only.
+ */
+@Getter
+public class Shaper {
+
+    private final TokenBucket bucket;
+
+    private volatile long conformPackets;
+    private volatile long conformBytes;
+    private volatile long exceedPackets;
+    private volatile long exceedBytes;
+    private volatile long violatePackets;
+    private volatile long violateBytes;
+
+    /**
+     * @param rate Bits per simulated second.
+     * @param burst Bytes that may go at once after an idle period.
+     */
+    public Shaper(long rate, long burst) {
+        bucket = new TokenBucket(rate, Math.max(burst, DataUnit.DEFAULT_SIZE));
+    }
+
+    /**
+     * Colors a dataUnit that has come to the port, without counting it: the port counts it once it knows
+     * whether the queues have room for it.
+     * @param queued Whether dataUnits wait in front of it.
+     * @return CONFORM or EXCEED.
+     */
+    public Policer.Color classify(DataUnit dataUnit, boolean queued, long now) {
+        bucket.refill(now);
+        return (!queued && bucket.has(cost(dataUnit))) ? Policer.Color.CONFORM : Policer.Color.EXCEED;
+    }
+
+    /**
+     * Counts the dataUnit under its color, VIOLATE for one the queues had no room for.
+     */
+    public void count(DataUnit dataUnit, Policer.Color color) {
+        int size = dataUnit.getSize();
+        if (Policer.Color.CONFORM == color) {
+            ++conformPackets;
+            conformBytes += size;
+        } else if (Policer.Color.EXCEED == color) {
+            ++exceedPackets;
+            exceedBytes += size;
+        } else {
+            ++violatePackets;
+            violateBytes += size;
+        }
+    }
+
+    /**
+     * Takes the tokens of the dataUnit, if the bucket has them.
+     */
+    public boolean admit(DataUnit dataUnit, long now) {
+        bucket.refill(now);
+        return bucket.take(cost(dataUnit));
+    }
+
+    /**
+     * @return Simulated ms till the dataUnit may go.
+     */
+    public long timeUntil(DataUnit dataUnit, long now) {
+        bucket.refill(now);
+        return bucket.timeUntil(cost(dataUnit));
+    }
+
+    //A dataUnit bigger than the burst would wait forever, it takes the whole bucket instead
+    private int cost(DataUnit dataUnit) {
+        return (int) Math.min(dataUnit.getSize(), bucket.getBurst());
+    }
+
+    public long getRate() {
+        return bucket.getRate();
+    }
+
+    public long getBurst() {
+        return bucket.getBurst();
+    }
+}
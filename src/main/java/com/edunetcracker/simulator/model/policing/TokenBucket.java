@@ -0,0 +1,116 @@
+package com.edunetcracker.simulator.model.policing;
+
+/**
+ * Token bucket that is only refilled when it's looked at: the tokens earned since the last look
+ * are computed from the simulated clock. An idle bucket costs nothing, there is no timer behind it.
+ * Tokens are counted in millibits, so that a bit per second rate earns a whole number of them per ms.
+ * Is not thread-safe, is used by the owner of the port only.
+ */
+public class TokenBucket {
+
+    private static final long NEVER = Long.MIN_VALUE;
+
+    //Bits per simulated second, 0 for a bucket that is only filled by add()
+    private final long rate;
+    //Most tokens the bucket holds, millibits
+    private final long depth;
+    private long tokens;
+    private long updated = NEVER;
+
+    /**
+     * @param burst Bytes the bucket holds; it starts full.
+     */
+    public TokenBucket(long rate, long burst) {
+        if (rate < 0 || burst < 0) {
+            throw new IllegalArgumentException("Rate and burst must not be negative.");
+        }
+        this.rate = rate;
+        this.depth = millibits(burst);
+        this.tokens = depth;
+    }
+
+    /**
+     * Adds the tokens earned since the last look.
+     * @return Tokens that didn't fit, millibits.
+     */
+    public long refill(long now) {
+        if (NEVER == updated || now <= updated) {
+            updated = Math.max(updated, now);
+            return 0;
+        }
+        long elapsed = now - updated;
+        updated = now;
+        if (0 == rate) {
+            return 0;
+        }
+        long earned = (elapsed > Long.MAX_VALUE / rate) ? Long.MAX_VALUE : elapsed * rate;
+        return add(earned);
+    }
+
+    /**
+     * @return Tokens that didn't fit, millibits.
+     */
+    public long add(long millibits) {
+        long room = depth - tokens;
+        if (millibits <= room) {
+            tokens += millibits;
+            return 0;
+        }
+        tokens = depth;
+        return millibits - room;
+    }
+
+    /**
+     * Takes the tokens of the given number of bytes, if the bucket has them. Doesn't refill.
+     */
+    public boolean take(int bytes) {
+        long cost = millibits(bytes);
+        if (tokens < cost) {
+            return false;
+        }
+        tokens -= cost;
+        return true;
+    }
+
+    public boolean has(int bytes) {
+        return tokens >= millibits(bytes);
+    }
+
+    /**
+     * @return Simulated ms till the bucket has the tokens of the given number of bytes,
+     *         Long.MAX_VALUE if it never will. Doesn't refill.
+     */
+    public long timeUntil(int bytes) {
+        long missing = millibits(bytes) - tokens;
+        if (missing <= 0) {
+            return 0;
+        }
+        if (0 == rate || millibits(bytes) > depth) {
+            return Long.MAX_VALUE;
+        }
+        return (missing + rate - 1) / rate;
+    }
+
+    /**
+     * Fills the bucket and forgets when it was looked at, as if it was a new one.
+     */
+    public void reset() {
+        tokens = depth;
+        updated = NEVER;
+    }
+
+    public long getRate() {
+        return rate;
+    }
+
+    /**
+     * @return Bytes the bucket holds at most.
+     */
+    public long getBurst() {
+        return depth / 8000;
+    }
+
+    private static long millibits(long bytes) {
+        return bytes * 8000;
+    }
+}
@@ -0,0 +1,323 @@
+package com.edunetcracker.simulator.model.port;
+
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import com.edunetcracker.simulator.model.dataUnit.TrafficClass;
+import com.edunetcracker.simulator.model.queue.DoubleBufferedQueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Queues of the traffic classes in front of a router port's wire, and the choice of the class to send next
+ * (see {@link EgressScheduling}). Keeps per-class counters of what was sent, dropped and how long it waited.
+ * Is used by the owner of the port only; the counters may be read from elsewhere, a bit stale.
+ */
+public class EgressScheduler {
+
+    private static final TrafficClass[] CLASSES = TrafficClass.values();
+    //Bytes a class may send per unit of its weight and round of DRR
+    private static final int QUANTUM = DataUnit.DEFAULT_SIZE;
+
+    private final ClassQueue[] queues = new ClassQueue[CLASSES.length];
+    private volatile EgressScheduling scheduling;
+
+    //Order of arrival over all the classes, for FIFO
+    private long sequence;
+    private int backlog;
+
+    //Class DRR is serving, and what every class may still send in its round
+    private int current;
+    private final long[] deficits = new long[CLASSES.length];
+
+    /**
+     * @param limit Most dataUnits each class queue holds.
+     */
+    public EgressScheduler(int limit, EgressScheduling scheduling) {
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ClassQueue(limit);
+        }
+        this.scheduling = scheduling;
+    }
+
+    public EgressScheduling getScheduling() {
+        return scheduling;
+    }
+
+    public void setScheduling(EgressScheduling scheduling) {
+        this.scheduling = scheduling;
+    }
+
+    /**
+     * @return False, if the queue of the dataUnit's class is full. The dataUnit is counted as dropped then.
+     */
+    public boolean enqueue(DataUnit dataUnit, long now) {
+        ClassQueue queue = queues[TrafficClass.of(dataUnit).ordinal()];
+        if (!queue.add(dataUnit, now, sequence++)) {
+            ++queue.dropped;
+            return false;
+        }
+        ++backlog;
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return 0 == backlog;
+    }
+
+    /**
+     * @return Number of dataUnits waiting in all the class queues.
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Takes the dataUnit to send next and counts it as sent.
+     * @return The dataUnit, or null if all the queues are empty.
+     */
+    public DataUnit poll(long now) {
+        if (0 == backlog) {
+            return null;
+        }
+        int index = select();
+        ClassQueue queue = queues[index];
+        long delay = now - queue.stamps[queue.head];
+        DataUnit dataUnit = queue.remove();
+        --backlog;
+        if (isByDrr(index)) {
+            deficits[index] -= dataUnit.getSize();
+        }
+        ++queue.sentPackets;
+        queue.sentBytes += dataUnit.getSize();
+        queue.delayTotal += delay;
+        queue.delayMax = Math.max(queue.delayMax, delay);
+        return dataUnit;
+    }
+
+    /**
+     * @return The dataUnit poll() would take, or null if all the queues are empty.
+     */
+    public DataUnit peek() {
+        if (0 == backlog) {
+            return null;
+        }
+        ClassQueue queue = queues[select()];
+        return queue.items[queue.head];
+    }
+
+    //Picking by DRR is repeatable: it stays at the class it picked until the class is polled
+    private int select() {
+        switch (scheduling) {
+            case STRICT_PRIORITY:
+                return firstNonEmpty(false);
+            case FIFO:
+                return oldest();
+            case PRIORITY_DRR:
+                int index = firstNonEmpty(true);
+                return (index < 0) ? pickDrr() : index;
+            default:
+                return pickDrr();
+        }
+    }
+
+    private boolean isByDrr(int index) {
+        return EgressScheduling.DRR == scheduling
+                || (EgressScheduling.PRIORITY_DRR == scheduling && !CLASSES[index].isStrict());
+    }
+
+    /**
+     * Counts a polled dataUnit the wire didn't take as dropped instead of sent.
+     */
+    public void recordDrop(DataUnit dataUnit) {
+        ClassQueue queue = queues[TrafficClass.of(dataUnit).ordinal()];
+        --queue.sentPackets;
+        queue.sentBytes -= dataUnit.getSize();
+        ++queue.dropped;
+    }
+
+    /**
+     * Takes all the waiting dataUnits out, e.g. to release them once the port is unlinked.
+     */
+    public void clear(Consumer<? super DataUnit> consumer) {
+        for (ClassQueue queue : queues) {
+            while (queue.size > 0) {
+                consumer.accept(queue.remove());
+            }
+        }
+        backlog = 0;
+        Arrays.fill(deficits, 0);
+    }
+
+    /**
+     * @return Waiting dataUnits with the time they were queued at, in the order they came in.
+     */
+    public List<DoubleBufferedQueue.Timed<DataUnit>> snapshot() {
+        List<DoubleBufferedQueue.Timed<DataUnit>> items = new ArrayList<>(backlog);
+        int[] taken = new int[queues.length];
+        for (int n = 0; n < backlog; n++) {
+            int index = -1;
+            long oldest = Long.MAX_VALUE;
+            for (int i = 0; i < queues.length; i++) {
+                ClassQueue queue = queues[i];
+                int at = (queue.head + taken[i]) % queue.items.length;
+                if (taken[i] < queue.size && queue.sequences[at] < oldest) {
+                    oldest = queue.sequences[at];
+                    index = i;
+                }
+            }
+            ClassQueue queue = queues[index];
+            int at = (queue.head + taken[index]++) % queue.items.length;
+            items.add(new DoubleBufferedQueue.Timed<>(queue.items[at], queue.stamps[at], DoubleBufferedQueue.NO_TIME));
+        }
+        return items;
+    }
+
+    /**
+     * Replaces the waiting dataUnits with the given ones, e.g. of a checkpoint. The ones replaced are released.
+     */
+    public void restore(Collection<DoubleBufferedQueue.Timed<DataUnit>> items) {
+        clear(DataUnit::release);
+        for (DoubleBufferedQueue.Timed<DataUnit> item : items) {
+            if (!enqueue(item.getItem(), item.getStamp())) {
+                item.getItem().release();
+            }
+        }
+    }
+
+    public int getLength(TrafficClass trafficClass) {
+        return queues[trafficClass.ordinal()].size;
+    }
+
+    public long getSentPackets(TrafficClass trafficClass) {
+        return queues[trafficClass.ordinal()].sentPackets;
+    }
+
+    public long getSentBytes(TrafficClass trafficClass) {
+        return queues[trafficClass.ordinal()].sentBytes;
+    }
+
+    public long getDropped(TrafficClass trafficClass) {
+        return queues[trafficClass.ordinal()].dropped;
+    }
+
+    /**
+     * @return Simulated ms the sent dataUnits of the class spent waiting in its queue, in total.
+     */
+    public long getDelayTotal(TrafficClass trafficClass) {
+        return queues[trafficClass.ordinal()].delayTotal;
+    }
+
+    public long getDelayMax(TrafficClass trafficClass) {
+        return queues[trafficClass.ordinal()].delayMax;
+    }
+
+    private int firstNonEmpty(boolean strictOnly) {
+        for (int i = 0; i < queues.length; i++) {
+            if (strictOnly && !CLASSES[i].isStrict()) {
+                break;
+            }
+            if (queues[i].size > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int oldest() {
+        int index = -1;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < queues.length; i++) {
+            ClassQueue queue = queues[i];
+            if (queue.size > 0 && queue.sequences[queue.head] < oldest) {
+                oldest = queue.sequences[queue.head];
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Deficit round robin, one dataUnit at a time. A class stays current while its deficit covers
+     * the head dataUnit; then the next non-empty class gets its quantum. An emptied class loses its deficit.
+     * Some queue must be non-empty.
+     */
+    private int pickDrr() {
+        while (true) {
+            ClassQueue queue = queues[current];
+            if (queue.size > 0) {
+                if (queue.items[queue.head].getSize() <= deficits[current]) {
+                    return current;
+                }
+            } else {
+                deficits[current] = 0;
+            }
+            current = (current + 1) % queues.length;
+            if (queues[current].size > 0) {
+                deficits[current] += (long) QUANTUM * CLASSES[current].getWeight();
+            }
+        }
+    }
+
+    //Ring of the dataUnits of a class with the time and order they came at; grows up to its limit
+    private static final class ClassQueue {
+        final int limit;
+        DataUnit[] items = new DataUnit[16];
+        long[] stamps = new long[16];
+        long[] sequences = new long[16];
+        int head;
+        int size;
+
+        long sentPackets;
+        long sentBytes;
+        long dropped;
+        long delayTotal;
+        long delayMax;
+
+        ClassQueue(int limit) {
+            this.limit = limit;
+        }
+
+        boolean add(DataUnit dataUnit, long stamp, long sequence) {
+            if (size >= limit) {
+                return false;
+            }
+            if (size == items.length) {
+                grow();
+            }
+            int index = (head + size) % items.length;
+            items[index] = dataUnit;
+            stamps[index] = stamp;
+            sequences[index] = sequence;
+            ++size;
+            return true;
+        }
+
+        DataUnit remove() {
+            DataUnit dataUnit = items[head];
+            items[head] = null;
+            head = (head + 1) % items.length;
+            --size;
+            return dataUnit;
+        }
+
+        private void grow() {
+            int capacity = items.length * 2;
+            DataUnit[] grownItems = new DataUnit[capacity];
+            long[] grownStamps = new long[capacity];
+            long[] grownSequences = new long[capacity];
+            for (int i = 0; i < size; i++) {
+                int index = (head + i) % items.length;
+                grownItems[i] = items[index];
+                grownStamps[i] = stamps[index];
+                grownSequences[i] = sequences[index];
+            }
+            items = grownItems;
+            stamps = grownStamps;
+            sequences = grownSequences;
+            head = 0;
+        }
+    }
+}
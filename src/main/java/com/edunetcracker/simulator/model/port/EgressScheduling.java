@@ -0,0 +1,15 @@
+package com.edunetcracker.simulator.model.port;
+
+/**
+ * How a router port picks the traffic class to put on the wire next.
+ */
+public enum EgressScheduling {
+    //Order of arrival, whatever the class
+    FIFO,
+    //Highest class first, lower classes get only what the higher ones leave
+    STRICT_PRIORITY,
+    //Deficit round robin: every class gets a share of the bandwidth by its weight
+    DRR,
+    //Strict classes (network control, voice) first, the rest by DRR
+    PRIORITY_DRR
+}
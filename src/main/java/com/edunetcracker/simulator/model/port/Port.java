@@ -5,11 +5,13 @@ import com.edunetcracker.simulator.model.Link;
 import com.edunetcracker.simulator.model.dataUnit.DataUnit;
 import com.edunetcracker.simulator.model.dataUnit.IDataUnit;
 import com.edunetcracker.simulator.model.element.NetworkElement;
+import com.edunetcracker.simulator.model.queue.DoubleBufferedQueue;
 import com.edunetcracker.simulator.service.status.SequenceStatus;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.slf4j.Logger;
@@ -17,9 +19,11 @@ import org.slf4j.LoggerFactory;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import javax.persistence.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 @Getter
 @Setter
@@ -57,6 +61,23 @@ public abstract class Port implements DBObject<Port> {
     @Transient
     private Link.Connection connection;
 
+    //Capacity of the port's output queue (in dataUnits), is applied when the port gets linked
+    @Column(name = "buffer_size")
+    @JsonProperty
+    private int bufferSize = DoubleBufferedQueue.DEFAULT_CAPACITY;
+
+    //DataUnits tail-dropped because the output queue was full
+    @Transient
+    private long droppedDataUnits;
+
+    private static final PortTap[] NO_TAPS = new PortTap[0];
+
+    //Replaced as a whole when a tap is added or removed, so that the hot path reads it without locking
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile PortTap[] taps = NO_TAPS;
+
 
     public Port (){
 //ToDo
@@ -99,26 +120,150 @@ public abstract class Port implements DBObject<Port> {
             throw new NullPointerException();
         }
         DataUnit retDataUnit = null;
-        if (!connection.getOut().offer(dataUnit)) {
+        NetworkElement owner = checkForOwner();
+        long now = (null == owner) ? DoubleBufferedQueue.NO_TIME : owner.getTickTime();
+        if (!transmit(dataUnit, now)) {
             retDataUnit = rejectedDueToOverflow(dataUnit);
         }
-        logger.info("Pushed {} through port {}.", dataUnit.getType(), id);
+        if (logger.isTraceEnabled()) {
+            logger.trace("Pushed {} through port {}.", dataUnit.getType(), id);
+        }
         return retDataUnit;
     }
 
+    /**
+     * Puts the dataUnit to the wire, and shows it to the taps if the wire took it.
+     * A down link loses the dataUnit, the taps don't see it.
+     * @return False, if the output queue rejected the dataUnit.
+     */
+    protected boolean transmit (DataUnit dataUnit, long now) {
+        boolean up = connection.isUp();
+        if (!connection.send(dataUnit, now)) {
+            return false;
+        }
+        //The receiver reads it at one of the next ticks at the earliest, so it's still intact here
+        if (up) {
+            tap(dataUnit, PortTap.Direction.EGRESS, now);
+        }
+        return true;
+    }
+
     protected abstract DataUnit rejectedDueToOverflow (DataUnit dataUnit);
 
-    public ConcurrentLinkedQueue<DataUnit> getIn () {
+    /**
+     * Sets up the discipline of the port's output queue. Output queues are only tail-dropped by default.
+     */
+    public void applyQueueDiscipline (DoubleBufferedQueue<DataUnit> out) {
+    }
+
+    /**
+     * @return Output queue of the port, or null if the port isn't linked.
+     */
+    public DoubleBufferedQueue<DataUnit> getOut () {
+        if (null == connection) {
+            return null;
+        }
+        return connection.getOut();
+    }
+
+    /**
+     * Drops the dataUnit that didn't fit to the output queue.
+     * Is only called by the owner of the port, so the counter needs no synchronization.
+     */
+    protected void tailDrop (DataUnit dataUnit) {
+        ++droppedDataUnits;
+        if (logger.isTraceEnabled()) {
+            logger.trace("Port {} dropped {}: output queue is full.", id, dataUnit.getType());
+        }
+        dataUnit.release();
+    }
+
+    /**
+     * Moves up to max readable dataUnits out of the input queue in one call.
+     * @param buffer Array to put the dataUnits to, from its start.
+     * @return Number of dataUnits put to the buffer.
+     */
+    public int drainTo (DataUnit[] buffer, int max) {
+        if (null == connection) {
+            return 0;
+        }
+        NetworkElement owner = checkForOwner();
+        long now = (null == owner) ? DoubleBufferedQueue.NO_TIME : owner.getTickTime();
+        int drained = connection.getIn().drainTo(buffer, max, now);
+        if (taps.length > 0) {
+            for (int i = 0; i < drained; i++) {
+                tap(buffer[i], PortTap.Direction.INGRESS, now);
+            }
+        }
+        return drained;
+    }
+
+    public synchronized void addTap (PortTap tap) {
+        PortTap[] grown = Arrays.copyOf(taps, taps.length + 1);
+        grown[taps.length] = tap;
+        taps = grown;
+    }
+
+    public synchronized void removeTap (PortTap tap) {
+        List<PortTap> left = new ArrayList<>(Arrays.asList(taps));
+        left.remove(tap);
+        taps = left.isEmpty() ? NO_TAPS : left.toArray(new PortTap[0]);
+    }
+
+    private void tap (DataUnit dataUnit, PortTap.Direction direction, long now) {
+        PortTap[] currentTaps = taps;
+        for (PortTap portTap : currentTaps) {
+            try {
+                portTap.tap(this, dataUnit, direction, now);
+            } catch (RuntimeException e) {
+                //A broken tap must not break the forwarding
+                logger.error("Tap {} failed on port {}.", portTap, id, e);
+            }
+        }
+    }
+
+    /**
+     * @return Whether there is input to read now.
+     */
+    public boolean hasReadableInput () {
+        return null != connection && !connection.getIn().isEmpty();
+    }
+
+    public DoubleBufferedQueue<DataUnit> getIn () {
         if (null == connection) {
             return null;
         }
         return connection.getIn();
     }
 
+    /**
+     * Makes the dataUnits that have arrived by the given time readable.
+     */
+    public void flipInput (long now) {
+        if (null != connection) {
+            connection.getIn().flip(now);
+        }
+    }
+
+    /**
+     * @return Simulated time the next dataUnit to read arrives at (Long.MIN_VALUE if there is one already),
+     *         or Long.MAX_VALUE if there is nothing in the input queue.
+     */
+    public long nextInputTime () {
+        if (null == connection) {
+            return Long.MAX_VALUE;
+        }
+        return connection.getIn().nextVisibleTime();
+    }
+
+    /**
+     * @return Whether there is input to read now, or input that will be readable after the next flip.
+     */
     public boolean hasInput () {
         if (connection == null) {
             return false;
         }
-        return !connection.getIn().isEmpty();
+        DoubleBufferedQueue<DataUnit> in = connection.getIn();
+        return !in.isEmpty() || in.hasPending();
     }
 }
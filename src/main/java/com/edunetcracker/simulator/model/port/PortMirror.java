@@ -0,0 +1,72 @@
+package com.edunetcracker.simulator.model.port;
+
+import com.edunetcracker.simulator.model.Link;
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import lombok.Getter;
+
+/**
+ * Port mirroring (SPAN): repeats the traffic of a port to another port and/or to an analysis sink.
+ * The sink sees the very dataUnits of the mirrored port, with the same rules as any tap.
+ * The destination port gets their mirror copies (see {@link DataUnit#mirrorCopy()}), which share
+ * the payload with the originals, so a mirrored link doesn't cost a deep copy per dataUnit.
+ *
+ * The destination must belong to the same element as the mirrored port, as its output queue
+ * has a single producer. Copies are put right to the destination's output queue,
+ * so the destination's own taps don't see them and mirrors can't loop.
+ */
+@Getter
+public class PortMirror implements PortTap {
+
+    public enum Mode {
+        INGRESS,
+        EGRESS,
+        BOTH;
+
+        public boolean covers(Direction direction) {
+            return BOTH == this || name().equals(direction.name());
+        }
+    }
+
+    private final Mode mode;
+    //Null when only the sink gets the traffic
+    private final Port destination;
+    //Null when only the destination gets the traffic
+    private final PortTap sink;
+
+    //DataUnits mirrored, and the copies the destination's output queue had no room for.
+    //Only the owner of the mirrored port writes them
+    private volatile long mirrored;
+    private volatile long dropped;
+
+    public PortMirror(Mode mode, Port destination, PortTap sink) {
+        if (null == destination && null == sink) {
+            throw new IllegalArgumentException("Mirror needs a destination port or a sink.");
+        }
+        this.mode = mode;
+        this.destination = destination;
+        this.sink = sink;
+    }
+
+    @Override
+    public void tap(Port port, DataUnit dataUnit, Direction direction, long time) {
+        if (!mode.covers(direction)) {
+            return;
+        }
+        ++mirrored;
+        if (null != sink) {
+            sink.tap(port, dataUnit, direction, time);
+        }
+        if (null == destination) {
+            return;
+        }
+        Link.Connection connection = destination.getConnection();
+        if (null == connection) {
+            return;
+        }
+        DataUnit copy = dataUnit.mirrorCopy();
+        if (!connection.send(copy, time)) {
+            ++dropped;
+            copy.release();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.edunetcracker.simulator.model.port;
+
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+
+/**
+ * Sees the dataUnits passing through a port, e.g. to capture or mirror them.
+ * Is called on the thread of the port's owner, in the middle of its tick, so it must be quick.
+ * The dataUnit must not be changed or kept after the call returns.
+ */
+public interface PortTap {
+
+    enum Direction {
+        //Read from the port's input queue
+        INGRESS,
+        //Pushed to the port's output queue
+        EGRESS
+    }
+
+    void tap(Port port, DataUnit dataUnit, Direction direction, long time);
+}
@@ -1,7 +1,14 @@
 package com.edunetcracker.simulator.model.port;
 
+import com.edunetcracker.simulator.model.Link;
 import com.edunetcracker.simulator.model.dataUnit.DataUnit;
 import com.edunetcracker.simulator.model.element.Router;
+import com.edunetcracker.simulator.model.policing.FlowPolicer;
+import com.edunetcracker.simulator.model.policing.Policer;
+import com.edunetcracker.simulator.model.policing.PolicerAction;
+import com.edunetcracker.simulator.model.policing.Shaper;
+import com.edunetcracker.simulator.model.queue.DoubleBufferedQueue;
+import com.edunetcracker.simulator.model.queue.QueueDisciplineType;
 import com.edunetcracker.simulator.service.routingService.IpService;
 import com.edunetcracker.simulator.service.status.SequenceStatus;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -11,9 +18,10 @@ import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import javax.persistence.*;
+import java.util.Arrays;
+import java.util.List;
 
 @Getter
 @Entity
@@ -34,6 +42,63 @@ public class RouterPort extends Port {
     @JsonProperty
     private int mask;
 
+    //Active queue management of the port's output queue
+    @Setter
+    @Column(name = "queue_discipline")
+    @Enumerated(EnumType.STRING)
+    @JsonProperty
+    private QueueDisciplineType queueDiscipline = QueueDisciplineType.TAIL_DROP;
+
+    //How the traffic classes share the port's link
+    @Setter
+    @Column(name = "egress_scheduling")
+    @Enumerated(EnumType.STRING)
+    @JsonProperty
+    private volatile EgressScheduling egressScheduling = EgressScheduling.FIFO;
+
+    //Class queues, created once the port is scheduled other than FIFO or shaped, and kept for their counters
+    @Transient
+    private EgressScheduler egressScheduler;
+
+    //Ingress policer of all the port's traffic (bits per simulated second and bytes), none at 0 rate
+    @Column(name = "policing_rate")
+    @JsonProperty
+    private long policingRate;
+    @Column(name = "policing_burst")
+    @JsonProperty
+    private long policingBurst;
+    @Column(name = "policing_excess_burst")
+    @JsonProperty
+    private long policingExcessBurst;
+    @Column(name = "policing_exceed_action")
+    @Enumerated(EnumType.STRING)
+    @JsonProperty
+    private PolicerAction policingExceedAction = PolicerAction.DROP;
+
+    //Egress shaper (bits per simulated second and bytes), none at 0 rate
+    @Column(name = "shaping_rate")
+    @JsonProperty
+    private long shapingRate;
+    @Column(name = "shaping_burst")
+    @JsonProperty
+    private long shapingBurst;
+
+    //Built from the columns when first needed, replaced as a whole when they change
+    @Transient
+    private volatile Policer policer;
+    @Transient
+    private volatile Shaper shaper;
+
+    private static final FlowPolicer[] NO_FLOW_POLICERS = new FlowPolicer[0];
+
+    //Policers of classified traffic, tried before the port's one, the first matching one applies
+    @Transient
+    private volatile FlowPolicer[] flowPolicers = NO_FLOW_POLICERS;
+
+    //DataUnits dropped by the ingress policers
+    @Transient
+    private volatile long policedDataUnits;
+
     @Setter
     @ManyToOne(fetch = FetchType.EAGER)
     @OnDelete(action = OnDeleteAction.CASCADE)
@@ -73,10 +138,242 @@ public class RouterPort extends Port {
         return router;
     }
 
+    @Override
+    public void applyQueueDiscipline(DoubleBufferedQueue<DataUnit> out) {
+        QueueDisciplineType type = (null == queueDiscipline) ? QueueDisciplineType.TAIL_DROP : queueDiscipline;
+        //Seeded with the port, so that a run with the same scene drops the same packets
+        out.setDiscipline(type.create(out.capacity(), getId()));
+    }
+
+    public synchronized void setPolicing (long rate, long burst, long excessBurst, PolicerAction exceedAction) {
+        policingRate = rate;
+        policingBurst = burst;
+        policingExcessBurst = excessBurst;
+        policingExceedAction = exceedAction;
+        policer = (rate > 0) ? new Policer(rate, burst, excessBurst, exceedAction) : null;
+    }
+
+    public synchronized void setShaping (long rate, long burst) {
+        shapingRate = rate;
+        shapingBurst = burst;
+        shaper = (rate > 0) ? new Shaper(rate, burst) : null;
+    }
+
+    public synchronized void addFlowPolicer (FlowPolicer flowPolicer) {
+        FlowPolicer[] grown = Arrays.copyOf(flowPolicers, flowPolicers.length + 1);
+        grown[flowPolicers.length] = flowPolicer;
+        flowPolicers = grown;
+    }
+
+    public synchronized void clearFlowPolicers () {
+        flowPolicers = NO_FLOW_POLICERS;
+    }
+
+    /**
+     * Reads the input as any port does, then polices it: by the first flow policer that matches a dataUnit,
+     * then by the port's policer. The dataUnits policed away are released.
+     */
+    @Override
+    public int drainTo (DataUnit[] buffer, int max) {
+        while (true) {
+            int drained = super.drainTo(buffer, max);
+            Policer portPolicer = currentPolicer();
+            FlowPolicer[] flows = flowPolicers;
+            if (0 == drained || null == router || (null == portPolicer && 0 == flows.length)) {
+                return drained;
+            }
+            long now = router.getTickTime();
+            int kept = 0;
+            for (int i = 0; i < drained; i++) {
+                DataUnit dataUnit = buffer[i];
+                buffer[i] = null;
+                if (police(dataUnit, portPolicer, flows, now)) {
+                    buffer[kept++] = dataUnit;
+                } else {
+                    ++policedDataUnits;
+                    dataUnit.release();
+                }
+            }
+            //0 means "no input left" to the caller, so a batch policed away entirely is followed by the next one
+            if (kept > 0) {
+                return kept;
+            }
+        }
+    }
+
+    private static boolean police (DataUnit dataUnit, Policer portPolicer, FlowPolicer[] flows, long now) {
+        for (FlowPolicer flowPolicer : flows) {
+            Policer flowsPolicer = flowPolicer.policerOf(dataUnit);
+            if (null != flowsPolicer) {
+                if (!flowsPolicer.police(dataUnit, now)) {
+                    return false;
+                }
+                break;
+            }
+        }
+        return null == portPolicer || portPolicer.police(dataUnit, now);
+    }
+
+    /**
+     * Puts the dataUnit to the queue of its traffic class, unless the port is neither scheduled nor shaped.
+     */
+    @Override
+    public DataUnit push (DataUnit dataUnit) {
+        EgressScheduler scheduler = currentScheduler();
+        if (null == scheduler || null == router || null == getConnection()) {
+            return super.push(dataUnit);
+        }
+        long now = router.getTickTime();
+        Shaper currentShaper = currentShaper();
+        Policer.Color color = (null == currentShaper) ? null
+                : currentShaper.classify(dataUnit, !scheduler.isEmpty(), now);
+        if (!scheduler.enqueue(dataUnit, now)) {
+            if (null != currentShaper) {
+                currentShaper.count(dataUnit, Policer.Color.VIOLATE);
+            }
+            tailDrop(dataUnit);
+            return null;
+        }
+        if (null != currentShaper) {
+            currentShaper.count(dataUnit, color);
+        }
+        transmitEgress(now);
+        return null;
+    }
+
+    /**
+     * Hands the waiting dataUnits to the wire, as long as it has less than a tick worth of them to serialize.
+     * So the wire never runs dry, and a dataUnit of a higher class overtakes the ones waiting.
+     * Without the bandwidth limit everything goes at once, unless the shaper holds it back.
+     */
+    public void transmitEgress (long now) {
+        EgressScheduler scheduler = egressScheduler;
+        if (null == scheduler || scheduler.isEmpty() || null == router) {
+            return;
+        }
+        Link.Connection connection = getConnection();
+        if (null == connection) {
+            //Unlinked, there is nowhere to send the rest to
+            scheduler.clear(DataUnit::release);
+            return;
+        }
+        DoubleBufferedQueue<DataUnit> out = connection.getOut();
+        long horizon = (now + router.currentTickLength()) * 1_000_000L;
+        Shaper currentShaper = currentShaper();
+        while (!scheduler.isEmpty() && out.getBusyUntil() < horizon && out.size() < out.capacity()) {
+            if (null != currentShaper && !currentShaper.admit(scheduler.peek(), now)) {
+                break;
+            }
+            DataUnit dataUnit = scheduler.poll(now);
+            if (!transmit(dataUnit, now)) {
+                //Dropped by the queue discipline of the wire, which counts it too; the output queue isn't full,
+                //so it's the class's drop and not the port's tail drop
+                scheduler.recordDrop(dataUnit);
+                dataUnit.release();
+            }
+        }
+    }
+
+    /**
+     * @return Simulated time the waiting dataUnits may go to the wire at, Long.MAX_VALUE if none wait.
+     */
+    public long nextEgressTime () {
+        EgressScheduler scheduler = egressScheduler;
+        Link.Connection connection = getConnection();
+        if (null == scheduler || scheduler.isEmpty() || null == router) {
+            return Long.MAX_VALUE;
+        }
+        if (null == connection) {
+            //The next tick releases them
+            return router.getTickTime();
+        }
+        DoubleBufferedQueue<DataUnit> out = connection.getOut();
+        if (out.size() >= out.capacity()) {
+            return router.getTickTime();
+        }
+        long time = (out.getBusyUntil() + 999_999) / 1_000_000 - router.currentTickLength();
+        Shaper currentShaper = currentShaper();
+        if (null != currentShaper) {
+            long now = router.getTickTime();
+            time = Math.max(time, now + currentShaper.timeUntil(scheduler.peek(), now));
+        }
+        return time;
+    }
+
+    /**
+     * Backpressure of the port: the window of its connection, narrowed by what waits in the class queues.
+     */
+    public int sendWindow () {
+        Link.Connection connection = getConnection();
+        if (null == connection) {
+            return 0;
+        }
+        int window = connection.sendWindow();
+        EgressScheduler scheduler = egressScheduler;
+        if (null != scheduler) {
+            window = Math.min(window, Math.max(0, getBufferSize() * Link.HIGH_WATERMARK / 100 - scheduler.getBacklog()));
+        }
+        return window;
+    }
+
+    /**
+     * Puts the dataUnits of a checkpoint to the class queues, which are created for them if needed.
+     */
+    public void restoreEgress (List<DoubleBufferedQueue.Timed<DataUnit>> items) {
+        if (null == egressScheduler) {
+            if (items.isEmpty()) {
+                return;
+            }
+            EgressScheduling scheduling = egressScheduling;
+            egressScheduler = new EgressScheduler(getBufferSize(), null == scheduling ? EgressScheduling.FIFO : scheduling);
+        }
+        egressScheduler.restore(items);
+    }
+
+    private Policer currentPolicer () {
+        Policer current = policer;
+        if (null == current && policingRate > 0) {
+            //Loaded from the database, the policer isn't built yet
+            synchronized (this) {
+                if (null == policer && policingRate > 0) {
+                    policer = new Policer(policingRate, policingBurst, policingExcessBurst, policingExceedAction);
+                }
+                current = policer;
+            }
+        }
+        return current;
+    }
+
+    private Shaper currentShaper () {
+        Shaper current = shaper;
+        if (null == current && shapingRate > 0) {
+            synchronized (this) {
+                if (null == shaper && shapingRate > 0) {
+                    shaper = new Shaper(shapingRate, shapingBurst);
+                }
+                current = shaper;
+            }
+        }
+        return current;
+    }
+
+    private EgressScheduler currentScheduler () {
+        EgressScheduling scheduling = egressScheduling;
+        if (null == egressScheduler) {
+            if ((null == scheduling || EgressScheduling.FIFO == scheduling) && null == currentShaper()) {
+                return null;
+            }
+            egressScheduler = new EgressScheduler(getBufferSize(), null == scheduling ? EgressScheduling.FIFO : scheduling);
+        } else if (null != scheduling && egressScheduler.getScheduling() != scheduling) {
+            egressScheduler.setScheduling(scheduling);
+        }
+        return egressScheduler;
+    }
+
     @Override
     protected DataUnit rejectedDueToOverflow(DataUnit dataUnit) {
-        //ToDo(Wisp): Implement router behaviour on port overflow
-        throw new NotImplementedException();
+        tailDrop(dataUnit);
+        return null;
     }
 
 
@@ -9,7 +9,6 @@ import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import javax.persistence.*;
 
@@ -46,7 +45,7 @@ public class SwitchPort extends Port {
 
     @Override
     protected DataUnit rejectedDueToOverflow(DataUnit dataUnit) {
-        //ToDo(Wisp): Implement switch behaviour on port overflow
-        throw new NotImplementedException();
+        tailDrop(dataUnit);
+        return null;
     }
 }
@@ -0,0 +1,86 @@
+package com.edunetcracker.simulator.model.queue;
+
+/**
+ * Controlled Delay (RFC 8289). Watches how long items spend in the queue: once the sojourn time
+ * stays above the target for a whole interval, items are dropped at dequeue, the drops getting
+ * closer to each other (interval / sqrt(count)) until the delay falls below the target again.
+ * Works on the dequeue side only.
+ */
+public class CoDel implements QueueDiscipline {
+
+    public static final long TARGET = 5;
+    public static final long INTERVAL = 100;
+
+    private final long target;
+    private final long interval;
+
+    //When the sojourn time went above the target plus an interval, 0 if it is below
+    private long firstAboveTime = 0;
+    private long dropNext = 0;
+    private int count = 0;
+    private int lastCount = 0;
+    private boolean dropping = false;
+
+    public CoDel() {
+        this(TARGET, INTERVAL);
+    }
+
+    public CoDel(long target, long interval) {
+        this.target = target;
+        this.interval = interval;
+    }
+
+    @Override
+    public QueueDisciplineType getType() {
+        return QueueDisciplineType.CODEL;
+    }
+
+    @Override
+    public boolean admit(int length, int capacity, long now) {
+        return true;
+    }
+
+    @Override
+    public boolean dropOnDequeue(long sojourn, int remaining, long now) {
+        boolean okToDrop = okToDrop(sojourn, remaining, now);
+        if (dropping) {
+            if (!okToDrop) {
+                dropping = false;
+                return false;
+            }
+            if (now >= dropNext) {
+                ++count;
+                dropNext = controlLaw(dropNext);
+                return true;
+            }
+            return false;
+        }
+        if (okToDrop) {
+            dropping = true;
+            //Dropping resumed soon after it stopped, so it picks up near the old rate
+            int delta = count - lastCount;
+            count = (delta > 1 && now - dropNext < 16 * interval) ? delta : 1;
+            dropNext = controlLaw(now);
+            lastCount = count;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean okToDrop(long sojourn, int remaining, long now) {
+        //A queue of one item can't be drained any faster
+        if (sojourn < target || remaining == 0) {
+            firstAboveTime = 0;
+            return false;
+        }
+        if (firstAboveTime == 0) {
+            firstAboveTime = now + interval;
+            return false;
+        }
+        return now >= firstAboveTime;
+    }
+
+    private long controlLaw(long time) {
+        return time + Math.max(1, (long) (interval / Math.sqrt(count)));
+    }
+}
@@ -0,0 +1,567 @@
+package com.edunetcracker.simulator.model.queue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * A bounded single-producer/single-consumer ring buffer, readable only up to the last flip.
+ * Whatever is offered during a tick becomes readable only after {@link #flip(long)}, which the
+ * engine calls between ticks. Therefore a tick always reads what was written in the previous
+ * ones, no matter in which order (or on how many threads) the elements were processed.
+ *
+ * The queue may also model the wire behind it ({@link #setTransmission(long, long)}): an item is
+ * serialized at the given bandwidth after the ones offered before it, and then travels for
+ * the propagation delay. A flip only makes readable the items that have arrived by its time.
+ *
+ * Items offered with a (simulated) time are stamped, so that the time they spend in the queue
+ * is known at dequeue. A {@link QueueDiscipline} may drop items earlier than the queue is full,
+ * either when they arrive or when they leave.
+ *
+ * The producer and the consumer may run at the same time on different threads: the producer
+ * only moves the tail, the consumer only moves the head and the readable limit. Nothing is
+ * allocated per item. When the ring is full, offered items are dropped (tail drop) and counted.
+ *
+ * If the producer lives in another partition of a parallel simulation, the queue is switched
+ * to the deferred mode: offered items wait in a thread-safe buffer until
+ * {@link #publishDeferred()} is called at the synchronization barrier.
+ */
+public class DoubleBufferedQueue<T> {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    //Time of an item offered without one, its sojourn is not measured
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    private final Object[] ring;
+    //Time every item was offered at
+    private final long[] stamps;
+    //Time every item becomes readable at, never decreases from an item to the next one
+    private final long[] arrivals;
+    private final int mask;
+
+    private volatile QueueDiscipline discipline = new TailDrop();
+
+    //Is given the items dropped on dequeue or cleared away, e.g. to give their memory back
+    private volatile Consumer<? super T> discardHandler;
+
+    //Bits per simulated second, 0 means the serialization takes no time
+    private volatile long bandwidth = 0;
+    //Propagation delay, simulated ms
+    private volatile long delay = 0;
+    //Producer's: when the wire finishes serializing the last item (simulated ns), and when that item arrives
+    private long busyUntil = 0;
+    private long lastArrival = NO_TIME;
+
+    //Next slot to read, is moved by the consumer only
+    private volatile long head = 0;
+    //Next slot to write, is moved by the producer only
+    private volatile long tail = 0;
+    //Slots before it are readable, is moved by the flip
+    private long readableLimit = 0;
+    //Producer's last look at the head, to not read the volatile on every offer
+    private long headCache = 0;
+
+    //Written by the producer only
+    private volatile long tailDrops = 0;
+    private volatile long earlyDrops = 0;
+    //Written by the consumer only
+    private volatile long dequeueDrops = 0;
+    private volatile long dequeued = 0;
+    private volatile long sojournTotal = 0;
+    private volatile long sojournMax = 0;
+
+    //Not null only in the deferred mode
+    private volatile ConcurrentLinkedQueue<Timed<T>> deferred;
+
+    public DoubleBufferedQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Maximal number of items, is rounded up to a power of two.
+     */
+    public DoubleBufferedQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        ring = new Object[size];
+        stamps = new long[size];
+        arrivals = new long[size];
+        mask = size - 1;
+    }
+
+    public QueueDiscipline getDiscipline() {
+        return discipline;
+    }
+
+    /**
+     * Replaces the queue discipline. May be called while the queue is in use.
+     */
+    public void setDiscipline(QueueDiscipline discipline) {
+        if (null == discipline) {
+            throw new NullPointerException();
+        }
+        this.discipline = discipline;
+    }
+
+    public void setDiscardHandler(Consumer<? super T> discardHandler) {
+        this.discardHandler = discardHandler;
+    }
+
+    public long getBandwidth() {
+        return bandwidth;
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    /**
+     * Sets up the wire the items go through. Applies to the items offered from now on.
+     * @param bandwidth Bits per simulated second, 0 for unlimited.
+     * @param delay Propagation delay, simulated ms.
+     */
+    public void setTransmission(long bandwidth, long delay) {
+        if (bandwidth < 0 || delay < 0) {
+            throw new IllegalArgumentException("Bandwidth and delay must not be negative.");
+        }
+        this.bandwidth = bandwidth;
+        this.delay = delay;
+    }
+
+    public boolean offer(T item) {
+        return offer(item, NO_TIME, 0);
+    }
+
+    public boolean offer(T item, long now) {
+        return offer(item, now, 0);
+    }
+
+    /**
+     * @param now Simulated time the item is offered at.
+     * @param size Size of the item in bytes, takes time to serialize if the bandwidth is limited.
+     * @return False, if the queue (or its discipline) dropped the item.
+     */
+    public boolean offer(T item, long now, int size) {
+        if (null == item) {
+            throw new NullPointerException();
+        }
+        ConcurrentLinkedQueue<Timed<T>> deferredItems = deferred;
+        if (null != deferredItems) {
+            //The wire is the producer's, so the arrival is known already
+            return deferredItems.offer(new Timed<>(item, now, arrivalOf(now, size)));
+        }
+        long currentTail = tail;
+        if (!hasRoom(currentTail) || !admits(currentTail, now)) {
+            return false;
+        }
+        put(currentTail, item, now, arrivalOf(now, size));
+        return true;
+    }
+
+    /**
+     * Puts an item whose arrival was computed by its producer elsewhere, e.g. by another process.
+     * @return False, if the queue (or its discipline) dropped the item.
+     */
+    public boolean offerTimed(Timed<T> timed) {
+        long currentTail = tail;
+        if (!hasRoom(currentTail) || !admits(currentTail, timed.stamp)) {
+            return false;
+        }
+        put(currentTail, timed.item, timed.stamp, timed.arrival);
+        return true;
+    }
+
+    /**
+     * @return Simulated ns the wire finishes serializing the items offered so far at,
+     *         0 if it never was busy. Is for the producer only.
+     */
+    public long getBusyUntil() {
+        return busyUntil;
+    }
+
+    /**
+     * @return Arrival time of the last item offered. Is for the producer only.
+     */
+    public long getLastArrival() {
+        return lastArrival;
+    }
+
+    private boolean hasRoom(long currentTail) {
+        if (currentTail - headCache >= ring.length) {
+            headCache = head;
+            if (currentTail - headCache >= ring.length) {
+                tailDrops++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean admits(long currentTail, long now) {
+        if (NO_TIME != now && !discipline.admit((int) (currentTail - head), ring.length, now)) {
+            earlyDrops++;
+            return false;
+        }
+        return true;
+    }
+
+    private void put(long currentTail, T item, long stamp, long arrival) {
+        //Items never overtake each other
+        lastArrival = Math.max(lastArrival, arrival);
+        int index = (int) currentTail & mask;
+        ring[index] = item;
+        stamps[index] = stamp;
+        arrivals[index] = lastArrival;
+        //The volatile write publishes the slot to the consumer
+        tail = currentTail + 1;
+    }
+
+    /**
+     * Serializes the item after the ones before it. Is called by the producer only.
+     * @return Simulated time the item arrives at the other end, NO_TIME if it doesn't take time.
+     */
+    private long arrivalOf(long now, int size) {
+        if (NO_TIME == now) {
+            return NO_TIME;
+        }
+        long sent = now * 1_000_000L;
+        long currentBandwidth = bandwidth;
+        if (currentBandwidth > 0 && size > 0) {
+            busyUntil = Math.max(busyUntil, sent) + size * 8L * 1_000_000_000L / currentBandwidth;
+            sent = busyUntil;
+        }
+        return (sent + 999_999) / 1_000_000 + delay;
+    }
+
+    public T poll() {
+        return poll(NO_TIME);
+    }
+
+    /**
+     * @param now Simulated time the item is taken at. The sojourn of the item is measured,
+     *            and the discipline may drop it (and the following ones) at this point.
+     * @return Next readable item, or null if there are none.
+     */
+    @SuppressWarnings("unchecked")
+    public T poll(long now) {
+        while (true) {
+            long currentHead = head;
+            if (currentHead >= readableLimit) {
+                return null;
+            }
+            int index = (int) currentHead & mask;
+            T item = (T) ring[index];
+            long stamp = stamps[index];
+            ring[index] = null;
+            //The volatile write hands the slot back to the producer
+            head = currentHead + 1;
+            if (!droppedOnDequeue(stamp, currentHead + 1, now)) {
+                return item;
+            }
+            discard(item);
+        }
+    }
+
+    /**
+     * Takes up to max readable items at once, the way {@link #poll(long)} would take them one by one.
+     * @param buffer Array to put the items to, from its start.
+     * @return Number of items put to the buffer.
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(T[] buffer, int max, long now) {
+        max = Math.min(max, buffer.length);
+        long currentHead = head;
+        long limit = readableLimit;
+        int count = 0;
+        while (count < max && currentHead < limit) {
+            int index = (int) currentHead & mask;
+            T item = (T) ring[index];
+            long stamp = stamps[index];
+            ring[index] = null;
+            ++currentHead;
+            if (!droppedOnDequeue(stamp, currentHead, now)) {
+                buffer[count++] = item;
+            } else {
+                discard(item);
+            }
+        }
+        //A single volatile write hands all the slots back to the producer
+        head = currentHead;
+        return count;
+    }
+
+    private void discard(T item) {
+        Consumer<? super T> handler = discardHandler;
+        if (null != handler) {
+            handler.accept(item);
+        }
+    }
+
+    /**
+     * Measures the sojourn of an item being taken and asks the discipline about it.
+     * @param nextHead Head after the item is taken.
+     * @return Whether the item is dropped.
+     */
+    private boolean droppedOnDequeue(long stamp, long nextHead, long now) {
+        if (NO_TIME == now || NO_TIME == stamp) {
+            return false;
+        }
+        //Propagation isn't queueing
+        long sojourn = Math.max(0, now - stamp - delay);
+        dequeued++;
+        sojournTotal += sojourn;
+        if (sojourn > sojournMax) {
+            sojournMax = sojourn;
+        }
+        if (!discipline.dropOnDequeue(sojourn, (int) (tail - nextHead), now)) {
+            return false;
+        }
+        dequeueDrops++;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        long currentHead = head;
+        if (currentHead >= readableLimit) {
+            return null;
+        }
+        return (T) ring[(int) currentHead & mask];
+    }
+
+    /**
+     * Makes everything that has arrived by the given time readable.
+     * Each item is looked at by one flip only, since the arrivals don't decrease.
+     */
+    public void flip(long now) {
+        long limit = readableLimit;
+        long currentTail = tail;
+        while (limit < currentTail && arrivals[(int) limit & mask] <= now) {
+            ++limit;
+        }
+        readableLimit = limit;
+    }
+
+    /**
+     * @return Long.MIN_VALUE if there is something to read, otherwise the time the next item
+     *         arrives at, or Long.MAX_VALUE if nothing is on the way.
+     */
+    public long nextVisibleTime() {
+        if (head < readableLimit) {
+            return Long.MIN_VALUE;
+        }
+        if (readableLimit < tail) {
+            return arrivals[(int) readableLimit & mask];
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public boolean isDeferred() {
+        return null != deferred;
+    }
+
+    /**
+     * Switches the deferred mode on or off. Items still waiting are published.
+     */
+    public void setDeferred(boolean isDeferred) {
+        if (isDeferred == isDeferred()) {
+            return;
+        }
+        if (isDeferred) {
+            deferred = new ConcurrentLinkedQueue<>();
+        } else {
+            publishDeferred();
+            deferred = null;
+        }
+    }
+
+    /**
+     * Moves the items offered in the deferred mode to the ring, as if the producer offered them now.
+     * Must not run concurrently with the consumer.
+     * @return Number of published items, not counting the ones dropped because the ring was full.
+     */
+    public int publishDeferred() {
+        ConcurrentLinkedQueue<Timed<T>> deferredItems = deferred;
+        if (null == deferredItems) {
+            return 0;
+        }
+        int published = 0;
+        Timed<T> item;
+        while (null != (item = deferredItems.poll())) {
+            if (offerTimed(item)) {
+                ++published;
+            }
+        }
+        return published;
+    }
+
+    /**
+     * Takes the items offered in the deferred mode away instead of publishing them,
+     * e.g. to hand them over to another process.
+     * @return Number of taken items.
+     */
+    public int drainDeferred(Collection<? super Timed<T>> target) {
+        ConcurrentLinkedQueue<Timed<T>> deferredItems = deferred;
+        if (null == deferredItems) {
+            return 0;
+        }
+        int drained = 0;
+        Timed<T> item;
+        while (null != (item = deferredItems.poll())) {
+            target.add(item);
+            ++drained;
+        }
+        return drained;
+    }
+
+    /**
+     * @return Whether there is nothing to read at the moment.
+     */
+    public boolean isEmpty() {
+        return head >= readableLimit;
+    }
+
+    /**
+     * @return Whether something was written and will be readable after a flip.
+     */
+    public boolean hasPending() {
+        return tail != readableLimit;
+    }
+
+    /**
+     * @param readable Whether to copy the readable items or the ones pending till a flip.
+     * @return Copy of the items with their times. Must not run concurrently with the queue's users.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Timed<T>> snapshot(boolean readable) {
+        long from = readable ? head : readableLimit;
+        long to = readable ? readableLimit : tail;
+        List<Timed<T>> items = new ArrayList<>((int) (to - from));
+        for (long i = from; i < to; i++) {
+            int index = (int) i & mask;
+            items.add(new Timed<>((T) ring[index], stamps[index], arrivals[index]));
+        }
+        return items;
+    }
+
+    /**
+     * Replaces the contents of the queue. Items that don't fit are dropped.
+     * Must not run concurrently with the queue's users.
+     */
+    public void restore(Collection<Timed<T>> readable, Collection<Timed<T>> pending) {
+        clear();
+        for (Timed<T> item : readable) {
+            if (hasRoom(tail)) {
+                put(tail, item.item, item.stamp, item.arrival);
+            }
+        }
+        readableLimit = tail;
+        for (Timed<T> item : pending) {
+            if (hasRoom(tail)) {
+                put(tail, item.item, item.stamp, item.arrival);
+            }
+        }
+    }
+
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    /**
+     * @return Number of items dropped because the queue was full.
+     */
+    public long getTailDrops() {
+        return tailDrops;
+    }
+
+    /**
+     * @return Number of items the discipline dropped on arrival.
+     */
+    public long getEarlyDrops() {
+        return earlyDrops;
+    }
+
+    /**
+     * @return Number of items the discipline dropped on dequeue.
+     */
+    public long getDequeueDrops() {
+        return dequeueDrops;
+    }
+
+    /**
+     * @return Number of timed items taken from the queue, dropped ones included.
+     */
+    public long getDequeued() {
+        return dequeued;
+    }
+
+    public long getSojournTotal() {
+        return sojournTotal;
+    }
+
+    public long getSojournMax() {
+        return sojournMax;
+    }
+
+    /**
+     * Discards all the items, the ones offered in the deferred mode too.
+     * Must not run concurrently with the producer or the consumer.
+     */
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        ConcurrentLinkedQueue<Timed<T>> deferredItems = deferred;
+        Timed<T> deferredItem;
+        while (null != deferredItems && null != (deferredItem = deferredItems.poll())) {
+            discard(deferredItem.getItem());
+        }
+        for (long i = head; i < tail; i++) {
+            int index = (int) i & mask;
+            discard((T) ring[index]);
+            ring[index] = null;
+        }
+        head = tail;
+        readableLimit = tail;
+        headCache = tail;
+        busyUntil = 0;
+        lastArrival = NO_TIME;
+    }
+
+    /**
+     * An item with the time it was offered at and the time it arrives at.
+     */
+    public static final class Timed<T> {
+        private final T item;
+        private final long stamp;
+        private final long arrival;
+
+        public Timed(T item, long stamp, long arrival) {
+            this.item = item;
+            this.stamp = stamp;
+            this.arrival = arrival;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public long getStamp() {
+            return stamp;
+        }
+
+        public long getArrival() {
+            return arrival;
+        }
+    }
+}
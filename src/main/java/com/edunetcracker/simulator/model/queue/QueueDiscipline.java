@@ -0,0 +1,27 @@
+package com.edunetcracker.simulator.model.queue;
+
+/**
+ * Decides which items of a {@link DoubleBufferedQueue} are dropped before the queue is full.
+ * Enqueue decisions are made on the producer's thread and dequeue decisions on the consumer's,
+ * so a discipline must keep the state of the two sides apart. Time is simulated milliseconds.
+ */
+public interface QueueDiscipline {
+
+    QueueDisciplineType getType();
+
+    /**
+     * Is called by the producer before an item is put to the queue.
+     * @param length Number of items in the queue.
+     * @param capacity Maximal number of items in the queue.
+     * @return False, if the item must be dropped.
+     */
+    boolean admit(int length, int capacity, long now);
+
+    /**
+     * Is called by the consumer for every item taken from the queue.
+     * @param sojourn How long the item has spent in the queue.
+     * @param remaining Number of items left in the queue.
+     * @return True, if the item must be dropped instead of being handed to the consumer.
+     */
+    boolean dropOnDequeue(long sojourn, int remaining, long now);
+}
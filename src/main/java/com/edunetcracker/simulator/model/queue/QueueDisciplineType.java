@@ -0,0 +1,25 @@
+package com.edunetcracker.simulator.model.queue;
+
+/**
+ * Queue disciplines a port's output queue can be managed with.
+ */
+public enum QueueDisciplineType {
+    TAIL_DROP,
+    RED,
+    CODEL;
+
+    /**
+     * @param capacity Capacity of the queue the discipline is for.
+     * @param seed Seed of random decisions, if the discipline makes any.
+     */
+    public QueueDiscipline create(int capacity, long seed) {
+        switch (this) {
+            case RED:
+                return new RandomEarlyDetection(capacity, seed);
+            case CODEL:
+                return new CoDel();
+            default:
+                return new TailDrop();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.edunetcracker.simulator.model.queue;
+
+import java.util.Random;
+
+/**
+ * Random Early Detection (Floyd, Jacobson). Keeps an exponentially weighted average
+ * of the queue length and drops arriving items with a probability growing from 0
+ * at the minimal threshold to maxProbability at the maximal one. Above it everything is dropped.
+ * Works on the enqueue side only.
+ */
+public class RandomEarlyDetection implements QueueDiscipline {
+
+    private static final double WEIGHT = 0.002;
+    private static final double MAX_PROBABILITY = 0.1;
+
+    private final double minThreshold;
+    private final double maxThreshold;
+    private final Random random;
+
+    private double averageLength = 0;
+    //Items admitted since the last drop, spreads the drops out evenly
+    private int sinceDrop = 0;
+
+    /**
+     * Thresholds are a quarter and three quarters of the capacity.
+     * @param seed Seed of the drop decisions, so that a run can be repeated.
+     */
+    public RandomEarlyDetection(int capacity, long seed) {
+        minThreshold = Math.max(1, capacity / 4.0);
+        maxThreshold = Math.max(minThreshold + 1, capacity * 3 / 4.0);
+        random = new Random(seed);
+    }
+
+    @Override
+    public QueueDisciplineType getType() {
+        return QueueDisciplineType.RED;
+    }
+
+    @Override
+    public boolean admit(int length, int capacity, long now) {
+        averageLength += WEIGHT * (length - averageLength);
+        if (averageLength < minThreshold) {
+            sinceDrop = 0;
+            return true;
+        }
+        if (averageLength >= maxThreshold) {
+            sinceDrop = 0;
+            return false;
+        }
+        double probability = MAX_PROBABILITY * (averageLength - minThreshold) / (maxThreshold - minThreshold);
+        double spread = 1 - sinceDrop * probability;
+        if (spread <= 0 || random.nextDouble() < probability / spread) {
+            sinceDrop = 0;
+            return false;
+        }
+        ++sinceDrop;
+        return true;
+    }
+
+    @Override
+    public boolean dropOnDequeue(long sojourn, int remaining, long now) {
+        return false;
+    }
+}
@@ -0,0 +1,22 @@
+package com.edunetcracker.simulator.model.queue;
+
+/**
+ * Drops nothing by itself: items are only dropped when the queue is full.
+ */
+public class TailDrop implements QueueDiscipline {
+
+    @Override
+    public QueueDisciplineType getType() {
+        return QueueDisciplineType.TAIL_DROP;
+    }
+
+    @Override
+    public boolean admit(int length, int capacity, long now) {
+        return true;
+    }
+
+    @Override
+    public boolean dropOnDequeue(long sojourn, int remaining, long now) {
+        return false;
+    }
+}
@@ -0,0 +1,21 @@
+package com.edunetcracker.simulator.model.routing.routingTable;
+
+import com.edunetcracker.simulator.model.routing.routingTableEntry.RoutingTableEntry;
+import lombok.Getter;
+
+/**
+ * A running route with its egress port resolved: the index of the port among the router's ports,
+ * {@link ForwardingTable#LOCAL} for the router's own addresses, or {@link ForwardingTable#NO_ROUTE}
+ * if no port leads there. Is resolved once, when the route is installed or a port address changes.
+ */
+@Getter
+public final class Adjacency {
+
+    private final RoutingTableEntry route;
+    private final int port;
+
+    Adjacency(RoutingTableEntry route, int port) {
+        this.route = route;
+        this.port = port;
+    }
+}
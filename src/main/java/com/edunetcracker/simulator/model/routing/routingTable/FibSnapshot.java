@@ -0,0 +1,45 @@
+package com.edunetcracker.simulator.model.routing.routingTable;
+
+import com.edunetcracker.simulator.model.routing.routingTableEntry.RoutingTableEntry;
+import lombok.Getter;
+
+/**
+ * Forwarding state a routing table has published: immutable, so the packet path
+ * looks routes up in it without locks while the table changes.
+ */
+@Getter
+public final class FibSnapshot {
+
+    //The running routes by their prefixes
+    private final PrefixTrie<Adjacency> routes;
+    //Null unless the router compiles its routes
+    private final ForwardingTable<Adjacency> compiled;
+    //Goes up with every change of the routes or their ports, for the caches of the lookups
+    private final int generation;
+
+    FibSnapshot(PrefixTrie<Adjacency> routes, ForwardingTable<Adjacency> compiled, int generation) {
+        this.routes = routes;
+        this.compiled = compiled;
+        this.generation = generation;
+    }
+
+    /**
+     * @return The route of the longest prefix the ip is in, or null if there is none.
+     */
+    public RoutingTableEntry lookup(Integer ip) {
+        Adjacency adjacency = (null == ip) ? null : routes.lookup(ip);
+        return (null == adjacency) ? null : adjacency.getRoute();
+    }
+
+    /**
+     * @return Index of the port the traffic to the ip leaves through,
+     *         {@link ForwardingTable#LOCAL} if the ip is the router's own, {@link ForwardingTable#NO_ROUTE} if it's unreachable.
+     */
+    public int lookupPort(int ip) {
+        if (null != compiled) {
+            return compiled.lookup(ip);
+        }
+        Adjacency adjacency = routes.lookup(ip);
+        return (null == adjacency) ? ForwardingTable.NO_ROUTE : adjacency.getPort();
+    }
+}
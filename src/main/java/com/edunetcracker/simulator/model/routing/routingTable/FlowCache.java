@@ -0,0 +1,158 @@
+package com.edunetcracker.simulator.model.routing.routingTable;
+
+import lombok.Getter;
+
+/**
+ * Exact-match cache of the ports the traffic to a destination leaves through, in front of the route lookup.
+ * Is an open-addressing map of ints (linear probing) of a bounded size; once it's full, an entry is evicted
+ * by CLOCK: the hand passes over the recently used entries once, clearing their bits, and takes the first unused one.
+ *
+ * Entries are stamped with the generation of the routes they were looked up in, the ones of an older generation
+ * are misses and are evicted first, so a route change invalidates the whole cache at once.
+ * Is used by the owner's thread only.
+ */
+public final class FlowCache {
+
+    //What get returns for a destination that isn't cached
+    public static final int MISS = Integer.MIN_VALUE;
+    //Most destinations a router may cache, takes about 7 MiB
+    public static final int MAX_CAPACITY = 1 << 18;
+
+    private final int[] keys;
+    private final int[] values;
+    private final int[] generations;
+    private final boolean[] used;
+    private final boolean[] referenced;
+    private final int mask;
+    private int hand;
+
+    @Getter
+    private final int capacity;
+    @Getter
+    private int size;
+
+    @Getter
+    private long hits;
+    @Getter
+    private long misses;
+    //Misses of destinations that were cached for an older generation of the routes
+    @Getter
+    private long staleMisses;
+    @Getter
+    private long evictions;
+
+    /**
+     * @param capacity Most destinations the cache holds.
+     */
+    public FlowCache(int capacity) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException(String.format("Flow cache size must be between 1 and %d.", MAX_CAPACITY));
+        }
+        this.capacity = capacity;
+        //Keeps the load at 3/4 at most
+        int slots = Integer.highestOneBit(Math.max(2, capacity + (capacity + 2) / 3) - 1) << 1;
+        keys = new int[slots];
+        values = new int[slots];
+        generations = new int[slots];
+        used = new boolean[slots];
+        referenced = new boolean[slots];
+        mask = slots - 1;
+    }
+
+    /**
+     * @return The cached value of the key, MISS if it isn't cached for this generation.
+     */
+    public int get(int key, int generation) {
+        int slot = find(key);
+        if (slot < 0 || generations[slot] != generation) {
+            if (slot >= 0) {
+                ++staleMisses;
+            }
+            ++misses;
+            return MISS;
+        }
+        referenced[slot] = true;
+        ++hits;
+        return values[slot];
+    }
+
+    public void put(int key, int value, int generation) {
+        int slot = find(key);
+        if (slot < 0) {
+            if (size == capacity) {
+                evict(generation);
+            }
+            slot = home(key);
+            while (used[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            keys[slot] = key;
+            ++size;
+        }
+        values[slot] = value;
+        generations[slot] = generation;
+        referenced[slot] = true;
+    }
+
+    public double getHitRatio() {
+        long lookups = hits + misses;
+        return (0 == lookups) ? 0 : (double) hits / lookups;
+    }
+
+    private int find(int key) {
+        int slot = home(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int home(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    //Takes two rounds at most: the first one clears the bits it passes
+    private void evict(int generation) {
+        while (true) {
+            int slot = hand;
+            hand = (hand + 1) & mask;
+            if (!used[slot]) {
+                continue;
+            }
+            if (generations[slot] == generation && referenced[slot]) {
+                referenced[slot] = false;
+                continue;
+            }
+            remove(slot);
+            ++evictions;
+            return;
+        }
+    }
+
+    //Shifts the entries that follow back into the hole, so that the probing doesn't stop at it
+    private void remove(int slot) {
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (!used[next]) {
+                break;
+            }
+            int home = home(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                generations[hole] = generations[next];
+                referenced[hole] = referenced[next];
+                hole = next;
+            }
+        }
+        used[hole] = false;
+        --size;
+    }
+}
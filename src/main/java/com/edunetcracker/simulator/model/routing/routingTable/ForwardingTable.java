@@ -0,0 +1,225 @@
+package com.edunetcracker.simulator.model.routing.routingTable;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * Forwarding table compiled out of the routes of a {@link PrefixTrie}, DIR-24-8 style:
+ * a table indexed by the upper 24 bits of the address, whose slot either holds the next hop of the
+ * whole /24, or points to a chunk of 256 next hops, one per address, for /24s with longer prefixes in them.
+ * The /24 table is split into blocks of 64K slots, so a lookup is two or three array reads.
+ *
+ * Next hops are what the resolver makes of the routes: numbers from 0 to MAX_HOP, LOCAL or NO_ROUTE.
+ * The /24 table takes 32 MiB, so the table is meant for routers with large tables.
+ *
+ * A table never changes once it's built. An {@link Editor} makes the next version of it, copying
+ * only the blocks and chunks it changes, so lookups may run in any thread along with the edits.
+ */
+public final class ForwardingTable<T> {
+
+    public static final int NO_ROUTE = -1;
+    //The router itself
+    public static final int LOCAL = -2;
+    public static final int MAX_HOP = 0x7FFD;
+
+    //A slot of the /24 table with this bit set holds the number of a chunk, otherwise the next hop + 2
+    private static final char CHUNK = 0x8000;
+    private static final char EMPTY = NO_ROUTE + 2;
+    private static final int CHUNK_SIZE = 256;
+    private static final int MAX_CHUNKS = 0x8000;
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int BLOCKS = (1 << 24) / BLOCK_SIZE;
+
+    private final char[][] blocks;
+    private final char[][] chunks;
+    private final int chunkCount;
+
+    private ForwardingTable(char[][] blocks, char[][] chunks, int chunkCount) {
+        this.blocks = blocks;
+        this.chunks = chunks;
+        this.chunkCount = chunkCount;
+    }
+
+    /**
+     * @param resolver Gives the next hop of a route, from 0 to MAX_HOP, LOCAL or NO_ROUTE.
+     * @return Editor of a table of all the routes, that is kept up to date with them by {@link Editor#update}.
+     */
+    public static <T> Editor<T> compile(PrefixTrie<T> routes, ToIntFunction<? super T> resolver) {
+        Editor<T> editor = new Editor<>(resolver);
+        editor.rebuild(routes);
+        return editor;
+    }
+
+    /**
+     * @return Next hop of the longest prefix the address is in, NO_ROUTE if there is none.
+     */
+    public int lookup(int address) {
+        char value = blocks[address >>> 24][(address >>> 8) & (BLOCK_SIZE - 1)];
+        if (0 != (value & CHUNK)) {
+            value = chunks[value & ~CHUNK][address & 0xFF];
+        }
+        return value - 2;
+    }
+
+    /**
+     * @return Bytes the table takes, the parts shared with other versions included.
+     */
+    public long getMemoryBytes() {
+        return 2L * BLOCKS * BLOCK_SIZE + 2L * CHUNK_SIZE * chunkCount + 4L * (blocks.length + chunks.length);
+    }
+
+    /**
+     * @return Number of chunks of the /24s that have longer prefixes.
+     */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * Changes a working copy of the table, route by route, and publishes versions of it.
+     * Blocks and chunks of the published versions are copied before they are changed.
+     * Is not thread-safe.
+     */
+    public static final class Editor<T> {
+        private final ToIntFunction<? super T> resolver;
+        private char[][] blocks;
+        private final boolean[] ownedBlocks = new boolean[BLOCKS];
+        private char[][] chunks;
+        private boolean[] ownedChunks;
+        //Chunks ever allocated, and the ones given back for reuse
+        private int allocated;
+        private int[] freeChunks = new int[16];
+        private int freeCount;
+
+        private Editor(ToIntFunction<? super T> resolver) {
+            this.resolver = resolver;
+        }
+
+        /**
+         * Compiles all the routes again, e.g. once the next hops the resolver gives have changed.
+         */
+        public void rebuild(PrefixTrie<T> routes) {
+            blocks = new char[BLOCKS][BLOCK_SIZE];
+            for (char[] block : blocks) {
+                Arrays.fill(block, EMPTY);
+            }
+            Arrays.fill(ownedBlocks, true);
+            chunks = new char[16][];
+            ownedChunks = new boolean[16];
+            allocated = 0;
+            freeCount = 0;
+            routes.walk(0, 0, (prefix, length, best) -> paint(prefix, length, valueOf(best)));
+        }
+
+        /**
+         * Recompiles the addresses of the prefix, after a route to it was added to the trie or removed from it.
+         */
+        public void update(PrefixTrie<T> routes, int prefix, int length) {
+            prefix &= PrefixTrie.maskOf(length);
+            //The prefix takes the next hop of the one it's within, then the routes within it paint over
+            paint(prefix, length, valueOf(0 == length ? null : routes.lookup(prefix, length - 1)));
+            routes.walk(prefix, length, (p, l, best) -> paint(p, l, valueOf(best)));
+            if (length > 24) {
+                collapse(routes, prefix >>> 8);
+            }
+        }
+
+        /**
+         * @return Table of the routes as they are now, the later edits don't change it.
+         */
+        public ForwardingTable<T> publish() {
+            Arrays.fill(ownedBlocks, false);
+            Arrays.fill(ownedChunks, false);
+            return new ForwardingTable<>(blocks.clone(), chunks.clone(), allocated - freeCount);
+        }
+
+        private char valueOf(T route) {
+            int hop = (null == route) ? NO_ROUTE : resolver.applyAsInt(route);
+            if (hop < LOCAL || hop > MAX_HOP) {
+                throw new IllegalArgumentException(String.format("Next hop %d is out of the table's range.", hop));
+            }
+            return (char) (hop + 2);
+        }
+
+        private char slot(int slot) {
+            return blocks[slot >>> 16][slot & (BLOCK_SIZE - 1)];
+        }
+
+        private void setSlot(int slot, char value) {
+            int block = slot >>> 16;
+            if (!ownedBlocks[block]) {
+                blocks[block] = blocks[block].clone();
+                ownedBlocks[block] = true;
+            }
+            blocks[block][slot & (BLOCK_SIZE - 1)] = value;
+        }
+
+        private char[] writableChunk(int chunk) {
+            if (!ownedChunks[chunk]) {
+                chunks[chunk] = chunks[chunk].clone();
+                ownedChunks[chunk] = true;
+            }
+            return chunks[chunk];
+        }
+
+        private void paint(int prefix, int length, char value) {
+            if (length <= 24) {
+                int first = prefix >>> 8;
+                int last = first + (1 << (24 - length));
+                for (int slot = first; slot < last; slot++) {
+                    char current = slot(slot);
+                    if (0 != (current & CHUNK)) {
+                        Arrays.fill(writableChunk(current & ~CHUNK), value);
+                    } else if (current != value) {
+                        setSlot(slot, value);
+                    }
+                }
+                return;
+            }
+            int slot = prefix >>> 8;
+            char current = slot(slot);
+            if (0 == (current & CHUNK)) {
+                current = (char) (CHUNK | allocateChunk(current));
+                setSlot(slot, current);
+            }
+            int from = prefix & 0xFF;
+            Arrays.fill(writableChunk(current & ~CHUNK), from, from + (1 << (32 - length)), value);
+        }
+
+        //A chunk without longer prefixes in its /24 is all the same, the slot takes its value back
+        private void collapse(PrefixTrie<T> routes, int slot) {
+            char current = slot(slot);
+            if (0 == (current & CHUNK) || routes.hasLonger(slot << 8, 24)) {
+                return;
+            }
+            int chunk = current & ~CHUNK;
+            setSlot(slot, chunks[chunk][0]);
+            chunks[chunk] = null;
+            if (freeCount == freeChunks.length) {
+                freeChunks = Arrays.copyOf(freeChunks, freeCount * 2);
+            }
+            freeChunks[freeCount++] = chunk;
+        }
+
+        private int allocateChunk(char fill) {
+            int chunk;
+            if (freeCount > 0) {
+                chunk = freeChunks[--freeCount];
+            } else {
+                if (MAX_CHUNKS == allocated) {
+                    throw new IllegalStateException("Forwarding table has run out of chunks.");
+                }
+                chunk = allocated++;
+                if (chunk == chunks.length) {
+                    chunks = Arrays.copyOf(chunks, chunks.length * 2);
+                    ownedChunks = Arrays.copyOf(ownedChunks, chunks.length);
+                }
+            }
+            char[] values = new char[CHUNK_SIZE];
+            Arrays.fill(values, fill);
+            chunks[chunk] = values;
+            ownedChunks[chunk] = true;
+            return chunk;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.edunetcracker.simulator.model.routing.routingTable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Path-compressed binary (Patricia) trie of IPv4 prefixes, for the longest prefix match.
+ * A node stands for a prefix; a node that holds no values is only there to branch, so there are
+ * less than two nodes per prefix and a lookup visits at most 33 of them.
+ * A prefix may hold several values, the lookup returns the preferred one.
+ *
+ * The trie is persistent: {@link #snapshot()} takes an immutable copy in O(1), and the nodes it shares
+ * are copied, along their path, before the trie changes them. Nodes that no snapshot has seen yet are
+ * changed in place, so a batch of updates copies a path once.
+ * Updates are not thread-safe, and a lookup on the trie itself must not run along with one;
+ * lookups on snapshots may run in any thread.
+ */
+public class PrefixTrie<T> {
+
+    //Rough size of a node with a list of one value (compressed references)
+    private static final int NODE_BYTES = 96;
+
+    private final Comparator<? super T> preference;
+    private Node<T> root;
+    private int size;
+    private int nodes;
+    //Nodes of this owner aren't in any snapshot yet. Is null for a snapshot, that can't be changed
+    private Object owner = new Object();
+
+    public interface Visitor<T> {
+        void visit(int prefix, int length, T best);
+    }
+
+    /**
+     * @param preference Orders the values of a prefix, the least is the preferred one.
+     */
+    public PrefixTrie(Comparator<? super T> preference) {
+        this.preference = preference;
+    }
+
+    private PrefixTrie(PrefixTrie<T> trie) {
+        preference = trie.preference;
+        root = trie.root;
+        size = trie.size;
+        nodes = trie.nodes;
+        owner = null;
+    }
+
+    /**
+     * @return Immutable copy of the trie, that the later updates don't affect.
+     */
+    public PrefixTrie<T> snapshot() {
+        if (null == owner) {
+            return this;
+        }
+        //The nodes are shared from now on
+        owner = new Object();
+        return new PrefixTrie<>(this);
+    }
+
+    /**
+     * @return The preferred value of the longest prefix the address is in, or null.
+     */
+    public T lookup(int address) {
+        T found = null;
+        Node<T> node = root;
+        while (null != node && (address & maskOf(node.length)) == node.prefix) {
+            if (null != node.best) {
+                found = node.best;
+            }
+            if (32 == node.length) {
+                break;
+            }
+            node = node.child(bitAt(address, node.length));
+        }
+        return found;
+    }
+
+    /**
+     * @return The preferred value of the longest prefix, no longer than maxLength, the address is in, or null.
+     */
+    public T lookup(int address, int maxLength) {
+        T found = null;
+        Node<T> node = root;
+        while (null != node && node.length <= maxLength && (address & maskOf(node.length)) == node.prefix) {
+            if (null != node.best) {
+                found = node.best;
+            }
+            if (32 == node.length) {
+                break;
+            }
+            node = node.child(bitAt(address, node.length));
+        }
+        return found;
+    }
+
+    /**
+     * Visits the prefixes that have values and lie within the given one (itself included),
+     * every prefix before the longer ones within it.
+     */
+    public void walk(int prefix, int length, Visitor<? super T> visitor) {
+        prefix &= maskOf(length);
+        Node<T> node = root;
+        while (null != node && node.length < length) {
+            if ((prefix & maskOf(node.length)) != node.prefix) {
+                return;
+            }
+            node = node.child(bitAt(prefix, node.length));
+        }
+        if (null != node && (node.prefix & maskOf(length)) == prefix) {
+            walk(node, visitor);
+        }
+    }
+
+    /**
+     * @return Whether a prefix longer than the given one, within it, has values.
+     */
+    public boolean hasLonger(int prefix, int length) {
+        boolean[] found = new boolean[1];
+        walk(prefix, length, (p, l, best) -> found[0] |= l > length);
+        return found[0];
+    }
+
+    /**
+     * @return Values of exactly this prefix.
+     */
+    public List<T> get(int prefix, int length) {
+        Node<T> node = find(prefix & maskOf(length), length);
+        return (null == node) ? new ArrayList<>() : new ArrayList<>(node.values);
+    }
+
+    public void add(int prefix, int length, T value) {
+        checkWritable();
+        root = insert(root, prefix & maskOf(length), length, value);
+        ++size;
+    }
+
+    /**
+     * @return False, if the prefix doesn't hold the value.
+     */
+    public boolean remove(int prefix, int length, T value) {
+        checkWritable();
+        int before = size;
+        root = delete(root, prefix & maskOf(length), length, value);
+        return size != before;
+    }
+
+    public void clear() {
+        checkWritable();
+        root = null;
+        size = 0;
+        nodes = 0;
+    }
+
+    /**
+     * @return Number of nodes, the ones that only branch included.
+     */
+    public int nodeCount() {
+        return nodes;
+    }
+
+    /**
+     * @return Estimate of the bytes the trie takes, the values themselves not counted.
+     */
+    public long getMemoryBytes() {
+        return (long) nodes * NODE_BYTES + 4L * size;
+    }
+
+    /**
+     * @return Number of values in the trie.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void checkWritable() {
+        if (null == owner) {
+            throw new UnsupportedOperationException("Snapshot of a trie can't be changed.");
+        }
+    }
+
+    //The node itself if no snapshot shares it, its copy otherwise
+    private Node<T> editable(Node<T> node) {
+        if (node.owner == owner) {
+            return node;
+        }
+        Node<T> copy = new Node<>(owner, node.prefix, node.length);
+        copy.zero = node.zero;
+        copy.one = node.one;
+        copy.values.addAll(node.values);
+        copy.best = node.best;
+        return copy;
+    }
+
+    private void walk(Node<T> node, Visitor<? super T> visitor) {
+        if (null != node.best) {
+            visitor.visit(node.prefix, node.length, node.best);
+        }
+        if (null != node.zero) {
+            walk(node.zero, visitor);
+        }
+        if (null != node.one) {
+            walk(node.one, visitor);
+        }
+    }
+
+    private Node<T> insert(Node<T> node, int prefix, int length, T value) {
+        if (null == node) {
+            ++nodes;
+            Node<T> leaf = new Node<>(owner, prefix, length);
+            leaf.add(value, preference);
+            return leaf;
+        }
+        int common = Math.min(commonLength(node.prefix, prefix), Math.min(node.length, length));
+        if (common == node.length) {
+            Node<T> changed = editable(node);
+            if (node.length == length) {
+                changed.add(value, preference);
+            } else {
+                int bit = bitAt(prefix, node.length);
+                changed.setChild(bit, insert(node.child(bit), prefix, length, value));
+            }
+            return changed;
+        }
+        //The node's prefix isn't a prefix of the new one: a node of their common part goes above both
+        Node<T> parent = new Node<>(owner, prefix & maskOf(common), common);
+        ++nodes;
+        parent.setChild(bitAt(node.prefix, common), node);
+        if (common == length) {
+            parent.add(value, preference);
+        } else {
+            ++nodes;
+            Node<T> leaf = new Node<>(owner, prefix, length);
+            leaf.add(value, preference);
+            parent.setChild(bitAt(prefix, common), leaf);
+        }
+        return parent;
+    }
+
+    private Node<T> delete(Node<T> node, int prefix, int length, T value) {
+        if (null == node || node.length > length || (prefix & maskOf(node.length)) != node.prefix) {
+            return node;
+        }
+        Node<T> changed;
+        if (node.length < length) {
+            int bit = bitAt(prefix, node.length);
+            Node<T> child = node.child(bit);
+            Node<T> left = delete(child, prefix, length, value);
+            if (left == child) {
+                return node;
+            }
+            changed = editable(node);
+            changed.setChild(bit, left);
+        } else {
+            if (!node.values.contains(value)) {
+                return node;
+            }
+            changed = editable(node);
+            changed.remove(value, preference);
+            --size;
+        }
+        //A node without values is only kept while it branches
+        if (changed.values.isEmpty() && (null == changed.zero || null == changed.one)) {
+            --nodes;
+            return (null == changed.zero) ? changed.one : changed.zero;
+        }
+        return changed;
+    }
+
+    private Node<T> find(int prefix, int length) {
+        Node<T> node = root;
+        while (null != node && node.length <= length && (prefix & maskOf(node.length)) == node.prefix) {
+            if (node.length == length) {
+                return node;
+            }
+            node = node.child(bitAt(prefix, node.length));
+        }
+        return null;
+    }
+
+    static int maskOf(int length) {
+        return (0 == length) ? 0 : -1 << (32 - length);
+    }
+
+    //Bit of the address at the position, counted from the most significant one
+    static int bitAt(int address, int position) {
+        return (address >>> (31 - position)) & 1;
+    }
+
+    private static int commonLength(int a, int b) {
+        return Integer.numberOfLeadingZeros(a ^ b);
+    }
+
+    private static final class Node<T> {
+        final Object owner;
+        final int prefix;
+        final int length;
+        Node<T> zero;
+        Node<T> one;
+        //Mostly a single one
+        final List<T> values = new ArrayList<>(1);
+        T best;
+
+        Node(Object owner, int prefix, int length) {
+            this.owner = owner;
+            this.prefix = prefix;
+            this.length = length;
+        }
+
+        Node<T> child(int bit) {
+            return (0 == bit) ? zero : one;
+        }
+
+        void setChild(int bit, Node<T> child) {
+            if (0 == bit) {
+                zero = child;
+            } else {
+                one = child;
+            }
+        }
+
+        void add(T value, Comparator<? super T> preference) {
+            values.add(value);
+            if (null == best || preference.compare(value, best) < 0) {
+                best = value;
+            }
+        }
+
+        boolean remove(T value, Comparator<? super T> preference) {
+            if (!values.remove(value)) {
+                return false;
+            }
+            best = null;
+            for (T left : values) {
+                if (null == best || preference.compare(left, best) < 0) {
+                    best = left;
+                }
+            }
+            return true;
+        }
+    }
+}
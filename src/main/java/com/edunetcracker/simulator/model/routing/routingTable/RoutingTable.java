@@ -4,7 +4,6 @@ import com.edunetcracker.simulator.model.DBObject;
 import com.edunetcracker.simulator.model.element.Router;
 import com.edunetcracker.simulator.model.routing.RouteSource;
 import com.edunetcracker.simulator.model.routing.routingTableEntry.RoutingTableEntry;
-import com.edunetcracker.simulator.service.routingService.IpService;
 import com.edunetcracker.simulator.service.status.SequenceStatus;
 import lombok.Getter;
 import lombok.Setter;
@@ -12,8 +11,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.persistence.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 @Entity(name="routing_table")
@@ -38,15 +42,40 @@ public class RoutingTable implements DBObject<RoutingTable> {
     @JoinColumn(name="routing_table_id")
     private Set<RoutingTableEntry> routes;
 
-    @Setter
-    @Getter
+    //The RIB: the running routes with their egress ports, and their index, are changed by the control side,
+    //under the table's lock
+    @Transient
+    private Map<RoutingTableEntry, Adjacency> runningRoutes;
+
+    //The running routes by their prefixes, for the longest prefix match
     @Transient
-    private Set<RoutingTableEntry> runningRoutes;
+    private PrefixTrie<Adjacency> runningIndex;
+
+    //Is there for the routers that compile their routes to a forwarding table
+    @Transient
+    private ForwardingTable.Editor<Adjacency> compiler;
+
+    //The FIB: the packet path reads the latest snapshot of the RIB, never locks it
+    @Transient
+    private AtomicReference<FibSnapshot> fib;
+
+    //Changes of a batch are published once it ends
+    @Transient
+    private int batchDepth;
+    @Transient
+    private int generation;
+
+    //Of the routes to the same prefix, the one of the lowest administrative distance, then metric, is used
+    private static final Comparator<Adjacency> PREFERENCE =
+            Comparator.comparingLong((Adjacency adjacency) -> adjacency.getRoute().getAdministrativeDistance())
+                      .thenComparingLong(adjacency -> adjacency.getRoute().getMetric());
 
 
     public RoutingTable() {
         routes = new HashSet<>();
-        runningRoutes = new HashSet<>();
+        runningRoutes = new HashMap<>();
+        runningIndex = new PrefixTrie<>(PREFERENCE);
+        fib = new AtomicReference<>(new FibSnapshot(runningIndex.snapshot(), null, generation));
     }
 
 
@@ -55,6 +84,10 @@ public class RoutingTable implements DBObject<RoutingTable> {
         router = another.router;
         routes = another.routes;
         runningRoutes = another.runningRoutes;
+        runningIndex = another.runningIndex;
+        compiler = another.compiler;
+        fib = another.fib;
+        generation = another.generation;
         return SequenceStatus.OK;
     }
 
@@ -74,34 +107,144 @@ public class RoutingTable implements DBObject<RoutingTable> {
         return SequenceStatus.OK;
     }
 
-    public void addRoute (RoutingTableEntry route) {
-        runningRoutes.add(route);
+    public synchronized void addRoute (RoutingTableEntry route) {
+        addRunning(route);
         if (RouteSource.STATIC.equals(route.getRouteSource())) {
             routes.add(route);
         }
+        publish();
     }
 
-    public void loadSavedRoutesToRunning() {
-        runningRoutes.addAll(routes);
+    public synchronized void removeRoute (RoutingTableEntry route) {
+        removeRunning(route);
+        routes.remove(route);
+        publish();
     }
 
-    public RoutingTableEntry getEntryByIp (Integer ip) {
-        int mask = -1;
-        RoutingTableEntry retEntry = null;
-        for (RoutingTableEntry entry : runningRoutes) {
-            if (IpService.isInSubnet(ip, entry.getIp(), entry.getMask())) {
-                return entry;
-                //TODO: Make IP and Masks LONG again, not INT.
-                //      Let's work with positive numbers.
-                /*
-                int curMask = entry.getMask();
-                if (curMask > mask) {
-                    mask = curMask;
-                    retEntry = entry;
-                }
-                */
+    public synchronized void loadSavedRoutesToRunning() {
+        for (RoutingTableEntry route : routes) {
+            addRunning(route);
+        }
+        publish();
+    }
+
+    /**
+     * Replaces the running routes, e.g. with the ones of a checkpoint.
+     */
+    public synchronized void setRunningRoutes (Set<RoutingTableEntry> runningRoutes) {
+        this.runningRoutes = new HashMap<>();
+        runningIndex.clear();
+        boolean compiled = null != compiler;
+        //Is compiled once, not route by route
+        compiler = null;
+        for (RoutingTableEntry route : runningRoutes) {
+            addRunning(route);
+        }
+        if (compiled) {
+            compiler = ForwardingTable.compile(runningIndex, Adjacency::getPort);
+        }
+        publish();
+    }
+
+    /**
+     * Makes the changes to the routes and publishes them to the packet path at once, when they are all made.
+     * Batches may be nested, the outer one publishes.
+     */
+    public synchronized void batch (Runnable changes) {
+        ++batchDepth;
+        try {
+            changes.run();
+        } finally {
+            --batchDepth;
+        }
+        publish();
+    }
+
+    /**
+     * Resolves the egress ports of the running routes again, once the addresses of the router's ports have changed.
+     * Only the routes whose port has changed are reinstalled.
+     */
+    public synchronized void resolveAdjacencies () {
+        for (Map.Entry<RoutingTableEntry, Adjacency> running : new ArrayList<>(runningRoutes.entrySet())) {
+            RoutingTableEntry route = running.getKey();
+            if (running.getValue().getPort() != egressPortOf(route)) {
+                removeRunning(route);
+                addRunning(route);
             }
         }
-        return retEntry;
+        publish();
+    }
+
+    /**
+     * Compiles the running routes to a forwarding table, that is then updated along with them.
+     */
+    public synchronized void compileForwardingTable () {
+        compiler = ForwardingTable.compile(runningIndex, Adjacency::getPort);
+        publish();
+    }
+
+    public synchronized void dropForwardingTable () {
+        compiler = null;
+        publish();
+    }
+
+    /**
+     * @return Copy of the running routes.
+     */
+    public synchronized Set<RoutingTableEntry> getRunningRoutes () {
+        return new HashSet<>(runningRoutes.keySet());
+    }
+
+    /**
+     * @return The latest published forwarding state. Doesn't lock.
+     */
+    public FibSnapshot getFib () {
+        return fib.get();
+    }
+
+    /**
+     * @return The route of the longest prefix the ip is in, or null if there is none. Doesn't lock.
+     */
+    public RoutingTableEntry getEntryByIp (Integer ip) {
+        return fib.get().lookup(ip);
+    }
+
+    private void addRunning (RoutingTableEntry route) {
+        if (runningRoutes.containsKey(route)) {
+            return;
+        }
+        Adjacency adjacency = new Adjacency(route, egressPortOf(route));
+        runningRoutes.put(route, adjacency);
+        runningIndex.add(route.getIp(), prefixLength(route), adjacency);
+        if (null != compiler) {
+            compiler.update(runningIndex, route.getIp(), prefixLength(route));
+        }
+    }
+
+    private void removeRunning (RoutingTableEntry route) {
+        Adjacency adjacency = runningRoutes.remove(route);
+        if (null == adjacency) {
+            return;
+        }
+        runningIndex.remove(route.getIp(), prefixLength(route), adjacency);
+        if (null != compiler) {
+            compiler.update(runningIndex, route.getIp(), prefixLength(route));
+        }
+    }
+
+    private int egressPortOf (RoutingTableEntry route) {
+        return (null == router) ? ForwardingTable.NO_ROUTE : router.egressPortOf(route);
+    }
+
+    private void publish () {
+        if (batchDepth > 0) {
+            return;
+        }
+        fib.set(new FibSnapshot(runningIndex.snapshot(), (null == compiler) ? null : compiler.publish(), ++generation));
+    }
+
+    //Masks are contiguous (see IpService.isRouteLegal)
+    private static int prefixLength (RoutingTableEntry route) {
+        return Integer.bitCount(route.getMask());
     }
 }
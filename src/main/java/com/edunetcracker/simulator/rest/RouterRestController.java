@@ -83,4 +83,133 @@ public class RouterRestController extends RestControllerImpl {
                                  @RequestParam String mask) {
         return routerService.setAddress(routerId, portNumber, ip, mask);
     }
+
+    /**
+     * Sets the discipline of the port's output queue: TAIL_DROP, RED or CODEL.
+     */
+    @RequestMapping(value = "/setQueueDiscipline", method = RequestMethod.POST)
+    public ResponseEntity setQueueDiscipline (@RequestParam Long routerId,
+                                              @RequestParam Integer portNumber,
+                                              @RequestParam String discipline) {
+        return routerService.setQueueDiscipline(routerId, portNumber, discipline);
+    }
+
+    /**
+     * Returns drop and sojourn-time counters of the router's output queues.
+     */
+    @RequestMapping(value = "/queues", method = RequestMethod.GET)
+    public ResponseEntity getQueueStatistics (@RequestParam Long routerId) {
+        return routerService.getQueueStatistics(routerId);
+    }
+
+    /**
+     * Sets how the traffic classes share the port's link: FIFO, STRICT_PRIORITY, DRR or PRIORITY_DRR.
+     */
+    @RequestMapping(value = "/setEgressScheduling", method = RequestMethod.POST)
+    public ResponseEntity setEgressScheduling (@RequestParam Long routerId,
+                                               @RequestParam Integer portNumber,
+                                               @RequestParam String scheduling) {
+        return routerService.setEgressScheduling(routerId, portNumber, scheduling);
+    }
+
+    /**
+     * Returns sent, dropped and delay counters per traffic class of the router's ports.
+     */
+    @RequestMapping(value = "/trafficClasses", method = RequestMethod.GET)
+    public ResponseEntity getTrafficClassStatistics (@RequestParam Long routerId) {
+        return routerService.getTrafficClassStatistics(routerId);
+    }
+
+    /**
+     * Sets the ingress policer of the port (rate 0 removes it). Exceed action is TRANSMIT, REMARK or DROP (the default).
+     * @param rate Committed rate, bits per simulated second.
+     * @param burst Committed burst, bytes; should hold a tick worth of the rate.
+     */
+    @RequestMapping(value = "/setPolicer", method = RequestMethod.POST)
+    public ResponseEntity setPolicer (@RequestParam Long routerId,
+                                      @RequestParam Integer portNumber,
+                                      @RequestParam Long rate,
+                                      @RequestParam Long burst,
+                                      @RequestParam(required = false, defaultValue = "0") Long excessBurst,
+                                      @RequestParam(required = false) String exceedAction) {
+        return routerService.setPolicer(routerId, portNumber, rate, burst, excessBurst, exceedAction);
+    }
+
+    /**
+     * Adds an ingress policer of the traffic matching the prefixes and the protocol, to one bucket or a bucket per flow.
+     */
+    @RequestMapping(value = "/addFlowPolicer", method = RequestMethod.POST)
+    public ResponseEntity addFlowPolicer (@RequestParam Long routerId,
+                                          @RequestParam Integer portNumber,
+                                          @RequestParam Long rate,
+                                          @RequestParam Long burst,
+                                          @RequestParam(required = false, defaultValue = "0") Long excessBurst,
+                                          @RequestParam(required = false) String exceedAction,
+                                          @RequestParam(required = false) String source,
+                                          @RequestParam(required = false) String destination,
+                                          @RequestParam(required = false) String protocol,
+                                          @RequestParam(required = false, defaultValue = "false") Boolean perFlow,
+                                          @RequestParam(required = false) Integer maxFlows) {
+        return routerService.addFlowPolicer(routerId, portNumber, rate, burst, excessBurst, exceedAction,
+                source, destination, protocol, perFlow, maxFlows);
+    }
+
+    @RequestMapping(value = "/clearFlowPolicers", method = RequestMethod.POST)
+    public ResponseEntity clearFlowPolicers (@RequestParam Long routerId,
+                                             @RequestParam Integer portNumber) {
+        return routerService.clearFlowPolicers(routerId, portNumber);
+    }
+
+    /**
+     * Sets the egress shaper of the port (rate 0 removes it).
+     */
+    @RequestMapping(value = "/setShaper", method = RequestMethod.POST)
+    public ResponseEntity setShaper (@RequestParam Long routerId,
+                                     @RequestParam Integer portNumber,
+                                     @RequestParam Long rate,
+                                     @RequestParam Long burst) {
+        return routerService.setShaper(routerId, portNumber, rate, burst);
+    }
+
+    /**
+     * Returns conform, exceed and violate counters of the router's policers and shapers.
+     */
+    @RequestMapping(value = "/policing", method = RequestMethod.GET)
+    public ResponseEntity getPolicingStatistics (@RequestParam Long routerId) {
+        return routerService.getPolicingStatistics(routerId);
+    }
+
+    /**
+     * Compiles the router's routes to a DIR-24-8 forwarding table (32 MiB), or goes back to the trie.
+     */
+    @RequestMapping(value = "/setCompiledFib", method = RequestMethod.POST)
+    public ResponseEntity setCompiledFib (@RequestParam Long routerId,
+                                          @RequestParam Boolean enabled) {
+        return routerService.setCompiledFib(routerId, enabled);
+    }
+
+    /**
+     * Returns memory of the route lookup structures of the router, of every loaded router without an id.
+     */
+    @RequestMapping(value = "/routingMemory", method = RequestMethod.GET)
+    public ResponseEntity getRoutingMemory (@RequestParam(required = false) Long routerId) {
+        return routerService.getRoutingMemory(routerId);
+    }
+
+    /**
+     * Puts a cache of the ports of the recent destinations in front of the router's route lookup (size 0 removes it).
+     */
+    @RequestMapping(value = "/setFlowCache", method = RequestMethod.POST)
+    public ResponseEntity setFlowCache (@RequestParam Long routerId,
+                                        @RequestParam Integer size) {
+        return routerService.setFlowCache(routerId, size);
+    }
+
+    /**
+     * Returns hit and miss counters of the router's flow cache.
+     */
+    @RequestMapping(value = "/flowCache", method = RequestMethod.GET)
+    public ResponseEntity getFlowCacheStatistics (@RequestParam Long routerId) {
+        return routerService.getFlowCacheStatistics(routerId);
+    }
 }
@@ -2,12 +2,14 @@ package com.edunetcracker.simulator.rest;
 
 import com.edunetcracker.simulator.model.Scene;
 import com.edunetcracker.simulator.service.SceneService;
+import com.edunetcracker.simulator.service.SimulatorService;
 import com.edunetcracker.simulator.service.status.SequenceStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -15,10 +17,12 @@ import org.springframework.web.bind.annotation.RestController;
 public class SceneRestController extends RestControllerImpl {
 
     private final SceneService sceneService;
+    private final SimulatorService simulatorService;
 
     @Autowired
-    public SceneRestController(SceneService sceneService) {
+    public SceneRestController(SceneService sceneService, SimulatorService simulatorService) {
         this.sceneService = sceneService;
+        this.simulatorService = simulatorService;
     }
 
     @RequestMapping(value = "/new", method = RequestMethod.POST)
@@ -33,4 +37,30 @@ public class SceneRestController extends RestControllerImpl {
         Scene scene = sceneService.get(id);
         return ResponseEntity.ok(toJson(scene));
     }
+
+    /**
+     * Sets the length of a tick (simulated ms) of the scene's elements.
+     */
+    @RequestMapping(value = "/tickLength", method = RequestMethod.POST)
+    public ResponseEntity setTickLength (@RequestParam Long sceneId,
+                                         @RequestParam Long tickLength) {
+        SequenceStatus ss = sceneService.setTickLength(sceneId, tickLength);
+        if (SequenceStatus.OK == ss) {
+            simulatorService.reloadSceneSettings(sceneService.get(sceneId));
+        }
+        return ResponseEntity.status(ss.getHttpStatus()).build();
+    }
+
+    /**
+     * Sets how many CPU cores the scene's elements may be ticked on, 0 for all of them.
+     */
+    @RequestMapping(value = "/cpuCores", method = RequestMethod.POST)
+    public ResponseEntity setCpuCores (@RequestParam Long sceneId,
+                                       @RequestParam Integer cpuCores) {
+        SequenceStatus ss = sceneService.setCpuCores(sceneId, cpuCores);
+        if (SequenceStatus.OK == ss) {
+            simulatorService.reloadSceneSettings(sceneService.get(sceneId));
+        }
+        return ResponseEntity.status(ss.getHttpStatus()).build();
+    }
 }
@@ -9,6 +9,8 @@ import com.edunetcracker.simulator.model.element.Router;
 import com.edunetcracker.simulator.service.LinkService;
 import com.edunetcracker.simulator.service.RouterService;
 import com.edunetcracker.simulator.service.SimulatorService;
+import com.edunetcracker.simulator.service.capture.CaptureService;
+import com.edunetcracker.simulator.service.capture.MirrorService;
 import com.edunetcracker.simulator.service.status.SequenceStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,12 +30,18 @@ public class SimulatorRestController extends RestControllerImpl {
     private final RouterService routerService;
     private final LinkService linkService;
     private final SimulatorService simulatorService;
+    private final CaptureService captureService;
+    private final MirrorService mirrorService;
 
     @Autowired
-    public SimulatorRestController(RouterService routerService, SimulatorService simulatorService, LinkService linkService) {
+    public SimulatorRestController(RouterService routerService, SimulatorService simulatorService,
+                                   LinkService linkService, CaptureService captureService,
+                                   MirrorService mirrorService) {
         this.routerService = routerService;
         this.simulatorService = simulatorService;
         this.linkService = linkService;
+        this.captureService = captureService;
+        this.mirrorService = mirrorService;
     }
 
 
@@ -55,6 +63,16 @@ public class SimulatorRestController extends RestControllerImpl {
         return ResponseEntity.status(linkService.delete(link).getHttpStatus()).build();
     }
 
+    /**
+     * Brings the link up or down at the next tick of the simulation.
+     * While it's down, the traffic sent over it is lost.
+     */
+    @RequestMapping(value = "/link/state", method = RequestMethod.POST)
+    public ResponseEntity setLinkState (@RequestParam Long linkId,
+                                        @RequestParam Boolean up) {
+        return simulatorService.setLinkState(linkId, up);
+    }
+
 
 
 
@@ -72,6 +90,67 @@ public class SimulatorRestController extends RestControllerImpl {
         return simulatorService.startAllComponents();
     }
 
+    /**
+     * Runs the started components for the given simulated time (ms) as fast as the CPU allows,
+     * then returns summary counters.
+     */
+    @RequestMapping(value = "/runFor", method = RequestMethod.POST)
+    public ResponseEntity runFor (@RequestParam Long duration,
+                                  @RequestParam(required = false) Long sceneId) {
+        return simulatorService.runFor(duration, sceneId);
+    }
+
+    /**
+     * Sets the pace of the simulation: simulated time per wall clock time (e.g. 0.1, 10), or "max".
+     */
+    @RequestMapping(value = "/dilation", method = RequestMethod.POST)
+    public ResponseEntity setTimeDilation (@RequestParam String factor,
+                                           @RequestParam(required = false) Long sceneId) {
+        return simulatorService.setTimeDilation(factor, sceneId);
+    }
+
+    /**
+     * Starts the loaded elements of one scene in the scene's own runtime.
+     */
+    @RequestMapping(value = "/scene/start", method = RequestMethod.POST)
+    public ResponseEntity startScene (@RequestParam Long sceneId) {
+        return simulatorService.startScene(sceneId);
+    }
+
+    /**
+     * Stops one scene, the others keep running.
+     */
+    @RequestMapping(value = "/scene/stop", method = RequestMethod.POST)
+    public ResponseEntity stopScene (@RequestParam Long sceneId) {
+        return simulatorService.stopScene(sceneId);
+    }
+
+    /**
+     * Returns the state of every scene being simulated.
+     */
+    @RequestMapping(value = "/scenes", method = RequestMethod.GET)
+    public ResponseEntity getSceneRuntimes () {
+        return simulatorService.getSceneRuntimes();
+    }
+
+    /**
+     * Sets what elements do when they fall behind: NONE, SKIP_CONTEXTS, SHED_INPUT or STRETCH_TICK.
+     */
+    @RequestMapping(value = "/overloadPolicy", method = RequestMethod.POST)
+    public ResponseEntity setOverloadPolicy (@RequestParam String policy,
+                                             @RequestParam(required = false) Long sceneId) {
+        return simulatorService.setOverloadPolicy(policy, sceneId);
+    }
+
+    /**
+     * Returns lag of the simulation and the elements that overran their tick budgets the most.
+     */
+    @RequestMapping(value = "/overruns", method = RequestMethod.GET)
+    public ResponseEntity getOverruns (@RequestParam(defaultValue = "10") Integer top,
+                                       @RequestParam(required = false) Long sceneId) {
+        return simulatorService.getOverruns(top, sceneId);
+    }
+
     /**
      * Starts only stated components
      * input int[] id with id of those components which you want to start
@@ -96,6 +175,86 @@ public class SimulatorRestController extends RestControllerImpl {
         return simulatorService.stopComponents(ids);
     }
 
+    /**
+     * Runs the started components for the given simulated time (ms), splitting the scene
+     * into partitions that are simulated in parallel.
+     * Returns speedup and parallel-efficiency counters.
+     */
+    @RequestMapping(value = "/runPartitioned", method = RequestMethod.POST)
+    public ResponseEntity runPartitioned (@RequestParam Integer partitions,
+                                          @RequestParam Long duration,
+                                          @RequestParam(required = false) Long sceneId) {
+        return simulatorService.runPartitioned(partitions, duration, sceneId);
+    }
+
+    /**
+     * Runs the scene together with other simulator processes for the given simulated duration.
+     * Each process is called with its own node index and the same comma separated list
+     * of host:port addresses the nodes listen at.
+     */
+    @RequestMapping(value = "/runDistributed", method = RequestMethod.POST)
+    public ResponseEntity runDistributed (@RequestParam Integer node,
+                                          @RequestParam String nodes,
+                                          @RequestParam Long duration,
+                                          @RequestParam(required = false) Long sceneId) {
+        return simulatorService.runDistributed(node, nodes, duration, sceneId);
+    }
+
+    /**
+     * Writes in-flight traffic, contexts, running routes and link states to a named checkpoint.
+     */
+    @RequestMapping(value = "/checkpoint", method = RequestMethod.POST)
+    public ResponseEntity saveCheckpoint (@RequestParam String name,
+                                          @RequestParam(required = false) Long sceneId) {
+        return simulatorService.saveCheckpoint(name, sceneId);
+    }
+
+    /**
+     * Restores a started scene from a named checkpoint.
+     */
+    @RequestMapping(value = "/restore", method = RequestMethod.POST)
+    public ResponseEntity restoreCheckpoint (@RequestParam String name,
+                                             @RequestParam(required = false) Long sceneId) {
+        return simulatorService.restoreCheckpoint(name, sceneId);
+    }
+
+    /**
+     * Starts capturing the traffic of a port to a pcap file.
+     * @param size Size of the capture file (bytes), the oldest packets are overwritten once it's full.
+     */
+    @RequestMapping(value = "/capture/start", method = RequestMethod.POST)
+    public ResponseEntity startCapture (@RequestParam Long portId,
+                                        @RequestParam(required = false) Long size) {
+        return captureService.start(portId, size);
+    }
+
+    @RequestMapping(value = "/capture/stop", method = RequestMethod.POST)
+    public ResponseEntity stopCapture (@RequestParam Long portId) {
+        return captureService.stop(portId);
+    }
+
+    /**
+     * Starts mirroring the traffic of a port (SPAN).
+     * @param mode INGRESS, EGRESS or BOTH (the default).
+     * @param destinationPortId Port of the same element to repeat the traffic to; without it the traffic is only counted.
+     */
+    @RequestMapping(value = "/mirror/start", method = RequestMethod.POST)
+    public ResponseEntity startMirror (@RequestParam Long portId,
+                                       @RequestParam(required = false) String mode,
+                                       @RequestParam(required = false) Long destinationPortId) {
+        return mirrorService.start(portId, mode, destinationPortId);
+    }
+
+    @RequestMapping(value = "/mirror", method = RequestMethod.GET)
+    public ResponseEntity getMirror (@RequestParam Long portId) {
+        return mirrorService.get(portId);
+    }
+
+    @RequestMapping(value = "/mirror/stop", method = RequestMethod.POST)
+    public ResponseEntity stopMirror (@RequestParam Long portId) {
+        return mirrorService.stop(portId);
+    }
+
     @RequestMapping(value = "/ping", method = RequestMethod.POST)
     public ResponseEntity ping (@RequestBody PingDTO pingDTO) {
         return simulatorService.ping(pingDTO);
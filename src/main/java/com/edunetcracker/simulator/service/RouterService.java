@@ -2,8 +2,30 @@ package com.edunetcracker.simulator.service;
 
 
 import com.edunetcracker.simulator.database.repository.networkElementRepository.RouterRepository;
+import com.edunetcracker.simulator.model.DTO.FlowCacheStatisticsDTO;
+import com.edunetcracker.simulator.model.DTO.PolicingStatisticsDTO;
+import com.edunetcracker.simulator.model.DTO.QueueStatisticsDTO;
+import com.edunetcracker.simulator.model.DTO.RoutingMemoryDTO;
+import com.edunetcracker.simulator.model.DTO.TrafficClassStatisticsDTO;
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import com.edunetcracker.simulator.model.dataUnit.TrafficClass;
+import com.edunetcracker.simulator.model.dataUnit.ip.IP;
 import com.edunetcracker.simulator.model.element.Router;
+import com.edunetcracker.simulator.model.policing.FlowMatch;
+import com.edunetcracker.simulator.model.policing.FlowPolicer;
+import com.edunetcracker.simulator.model.policing.Policer;
+import com.edunetcracker.simulator.model.policing.PolicerAction;
+import com.edunetcracker.simulator.model.policing.Shaper;
+import com.edunetcracker.simulator.model.port.EgressScheduler;
+import com.edunetcracker.simulator.model.port.EgressScheduling;
 import com.edunetcracker.simulator.model.port.RouterPort;
+import com.edunetcracker.simulator.model.queue.DoubleBufferedQueue;
+import com.edunetcracker.simulator.model.queue.QueueDisciplineType;
+import com.edunetcracker.simulator.model.routing.routingTable.Adjacency;
+import com.edunetcracker.simulator.model.routing.routingTable.FibSnapshot;
+import com.edunetcracker.simulator.model.routing.routingTable.FlowCache;
+import com.edunetcracker.simulator.model.routing.routingTable.ForwardingTable;
+import com.edunetcracker.simulator.model.routing.routingTable.RoutingTable;
 import com.edunetcracker.simulator.service.configurers.RouterConfigurer;
 
 import com.edunetcracker.simulator.service.routingService.RoutingTableService;
@@ -17,6 +39,8 @@ import org.springframework.stereotype.Service;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -76,6 +100,7 @@ public class RouterService extends DBService<Router> {
             throw new IllegalArgumentException();
         }
         routerConfigurer.givePortsTo(router);
+        routerConfigurer.giveProcessingProfileTo(router);
         List<RouterPort> routerPorts = router.getPorts();
         for (RouterPort routerPort : routerPorts) {
             portService.addToLoaded(routerPort);
@@ -83,7 +108,7 @@ public class RouterService extends DBService<Router> {
         addToLoaded(router);
         update(router);
 
-        logger.info("Following ports are given to router with id {}:", router.getId());
+        logger.info("Following ports are given to router with id {}:", router.getIdNE());
         for (RouterPort port : router.getPorts()) {
             logger.info("Port with id {}", port.getId());
         }
@@ -156,10 +181,428 @@ public class RouterService extends DBService<Router> {
                     .body(String.format("Port with number %d couldn't have been found.", portNumber));
         }
 
-        port.setAddress(ip, mask);
-        routingTableService.routeDirectConnection(port);
+        RoutingTable table = router.getRoutingTable();
+        table.batch(() -> {
+            port.setAddress(ip, mask);
+            routingTableService.routeDirectConnection(port);
+            //Routes may now leave through other ports
+            table.resolveAdjacencies();
+        });
 
         logger.info("RouterID {}, port {}, ip {}.", routerId, portNumber, router.getPort(portNumber).getIp());
         return ResponseEntity.ok("Ip set successfully.");
     }
+
+    /**
+     * Sets the queue discipline of the port's output queue. Takes effect at once if the port is linked.
+     */
+    public ResponseEntity setQueueDiscipline (Long routerId, int portNumber, String discipline) {
+        Router router = getLoaded(routerId);
+        if (null == router) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Router with id %d couldn't have been found.", routerId));
+        }
+        RouterPort port = router.getPort(portNumber);
+        if (null == port) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Port with number %d couldn't have been found.", portNumber));
+        }
+        QueueDisciplineType type;
+        try {
+            type = QueueDisciplineType.valueOf(discipline.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(String.format("Unknown queue discipline \"%s\".", discipline));
+        }
+
+        port.setQueueDiscipline(type);
+        if (null != port.getOut()) {
+            port.applyQueueDiscipline(port.getOut());
+        }
+        update(router);
+        return ResponseEntity.ok(String.format("Queue discipline of port %d set to %s.", portNumber, type));
+    }
+
+    /**
+     * @return Drop and sojourn counters of the output queues of the router's ports.
+     */
+    public ResponseEntity getQueueStatistics (Long routerId) {
+        Router router = getLoaded(routerId);
+        if (null == router) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Router with id %d couldn't have been found.", routerId));
+        }
+        List<QueueStatisticsDTO> dtos = new ArrayList<>();
+        for (RouterPort port : router.getPorts()) {
+            DoubleBufferedQueue<DataUnit> out = port.getOut();
+            if (null == out) {
+                continue;
+            }
+            QueueStatisticsDTO dto = new QueueStatisticsDTO();
+            dto.setPortId(port.getId());
+            dto.setPortOrder(port.getOrder());
+            dto.setDiscipline(out.getDiscipline().getType().name());
+            dto.setCapacity(out.capacity());
+            dto.setLength(out.size());
+            dto.setTailDrops(out.getTailDrops());
+            dto.setEarlyDrops(out.getEarlyDrops());
+            dto.setDequeueDrops(out.getDequeueDrops());
+            dto.setDequeued(out.getDequeued());
+            dto.setAverageSojourn(0 == out.getDequeued() ? 0 : (double) out.getSojournTotal() / out.getDequeued());
+            dto.setMaxSojourn(out.getSojournMax());
+            dtos.add(dto);
+        }
+        return ResponseEntity.ok(dtos);
+    }
+
+    /**
+     * Sets how the traffic classes share the port's link. Takes effect with the next dataUnit the port sends.
+     */
+    public ResponseEntity setEgressScheduling (Long routerId, int portNumber, String scheduling) {
+        Router router = getLoaded(routerId);
+        if (null == router) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Router with id %d couldn't have been found.", routerId));
+        }
+        RouterPort port = router.getPort(portNumber);
+        if (null == port) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Port with number %d couldn't have been found.", portNumber));
+        }
+        EgressScheduling type;
+        try {
+            type = EgressScheduling.valueOf(scheduling.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(String.format("Unknown egress scheduling \"%s\".", scheduling));
+        }
+
+        port.setEgressScheduling(type);
+        update(router);
+        return ResponseEntity.ok(String.format("Egress scheduling of port %d set to %s.", portNumber, type));
+    }
+
+    /**
+     * @return Counters of the traffic classes of the router's ports that are scheduled by class.
+     */
+    public ResponseEntity getTrafficClassStatistics (Long routerId) {
+        Router router = getLoaded(routerId);
+        if (null == router) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Router with id %d couldn't have been found.", routerId));
+        }
+        List<TrafficClassStatisticsDTO> dtos = new ArrayList<>();
+        for (RouterPort port : router.getPorts()) {
+            EgressScheduler scheduler = port.getEgressScheduler();
+            if (null == scheduler) {
+                continue;
+            }
+            for (TrafficClass trafficClass : TrafficClass.values()) {
+                TrafficClassStatisticsDTO dto = new TrafficClassStatisticsDTO();
+                dto.setPortId(port.getId());
+                dto.setPortOrder(port.getOrder());
+                dto.setScheduling(scheduler.getScheduling().name());
+                dto.setTrafficClass(trafficClass.name());
+                dto.setLength(scheduler.getLength(trafficClass));
+                long sent = scheduler.getSentPackets(trafficClass);
+                dto.setSentPackets(sent);
+                dto.setSentBytes(scheduler.getSentBytes(trafficClass));
+                dto.setDropped(scheduler.getDropped(trafficClass));
+                dto.setAverageDelay(0 == sent ? 0 : (double) scheduler.getDelayTotal(trafficClass) / sent);
+                dto.setMaxDelay(scheduler.getDelayMax(trafficClass));
+                dtos.add(dto);
+            }
+        }
+        return ResponseEntity.ok(dtos);
+    }
+
+    /**
+     * Sets the ingress policer of all the port's traffic, removes it at 0 rate.
+     * @param exceedAction What to do with the traffic over the committed burst but within the excess one.
+     */
+    public ResponseEntity setPolicer (Long routerId, int portNumber, long rate, long burst, long excessBurst, String exceedAction) {
+        Router router = getLoaded(routerId);
+        if (null == router) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Router with id %d couldn't have been found.", routerId));
+        }
+        RouterPort port = router.getPort(portNumber);
+        if (null == port) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Port with number %d couldn't have been found.", portNumber));
+        }
+        if (rate < 0 || burst < 0 || excessBurst < 0) {
+            return ResponseEntity.badRequest().body("Rate and bursts must not be negative.");
+        }
+        PolicerAction action;
+        try {
+            action = (null == exceedAction) ? PolicerAction.DROP : PolicerAction.valueOf(exceedAction.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(String.format("Unknown policer action \"%s\".", exceedAction));
+        }
+
+        port.setPolicing(rate, burst, excessBurst, action);
+        update(router);
+        return ResponseEntity.ok(0 == rate ? String.format("Policer of port %d removed.", portNumber)
+                : String.format("Port %d is policed at %d bit/s.", portNumber, rate));
+    }
+
+    /**
+     * Adds an ingress policer of the port's traffic the classifier matches. Isn't saved with the router.
+     * @param source Source prefix like "10.0.0.0/8", null for any.
+     * @param destination Destination prefix, null for any.
+     * @param protocol ICMP, PING, TCP or UDP, null for any.
+     * @param perFlow Whether every pair of addresses gets a policer of its own.
+     * @param maxFlows Most flows policed at once, null for the default.
+     */
+    public ResponseEntity addFlowPolicer (Long routerId, int portNumber, long rate, long burst, long excessBurst,
+                                          String exceedAction, String source, String destination, String protocol,
+                                          boolean perFlow, Integer maxFlows) {
+        Router router = getLoaded(routerId);
+        if (null == router) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Router with id %d couldn't have been found.", routerId));
+        }
+        RouterPort port = router.getPort(portNumber);
+        if (null == port) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Port with number %d couldn't have been found.", portNumber));
+        }
+        if (rate <= 0 || burst < 0 || excessBurst < 0) {
+            return ResponseEntity.badRequest().body("Rate must be positive, bursts must not be negative.");
+        }
+        int flows = (null == maxFlows) ? FlowPolicer.DEFAULT_MAX_FLOWS : maxFlows;
+        if (flows < 1 || flows > FlowPolicer.MAX_FLOWS) {
+            return ResponseEntity.badRequest()
+                    .body(String.format("Number of flows must be between 1 and %d.", FlowPolicer.MAX_FLOWS));
+        }
+        int[] sourcePrefix = (null == source) ? new int[] {0, 0} : FlowMatch.parsePrefix(source);
+        int[] destinationPrefix = (null == destination) ? new int[] {0, 0} : FlowMatch.parsePrefix(destination);
+        if (null == sourcePrefix || null == destinationPrefix) {
+            return ResponseEntity.badRequest().body(String.format("Wrong prefix \"%s\".", null == sourcePrefix ? source : destination));
+        }
+        PolicerAction action;
+        IP.EncapsulatedType type;
+        try {
+            action = (null == exceedAction) ? PolicerAction.DROP : PolicerAction.valueOf(exceedAction.toUpperCase());
+            type = (null == protocol) ? null : IP.EncapsulatedType.valueOf(protocol.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+
+        FlowMatch match = new FlowMatch(sourcePrefix[0], sourcePrefix[1], destinationPrefix[0], destinationPrefix[1], type);
+        port.addFlowPolicer(new FlowPolicer(match, rate, burst, excessBurst, action, perFlow, flows));
+        return ResponseEntity.ok(String.format("Traffic %s of port %d is policed at %d bit/s%s.",
+                match, portNumber, rate, perFlow ? " per flow" : ""));
+    }
+
+    public ResponseEntity clearFlowPolicers (Long routerId, int portNumber) {
+        Router router = getLoaded(routerId);
+        if (null == router) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Router with id %d couldn't have been found.", routerId));
+        }
+        RouterPort port = router.getPort(portNumber);
+        if (null == port) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Port with number %d couldn't have been found.", portNumber));
+        }
+        port.clearFlowPolicers();
+        return ResponseEntity.ok(String.format("Flow policers of port %d removed.", portNumber));
+    }
+
+    /**
+     * Sets the egress shaper of the port, removes it at 0 rate.
+     */
+    public ResponseEntity setShaper (Long routerId, int portNumber, long rate, long burst) {
+        Router router = getLoaded(routerId);
+        if (null == router) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Router with id %d couldn't have been found.", routerId));
+        }
+        RouterPort port = router.getPort(portNumber);
+        if (null == port) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Port with number %d couldn't have been found.", portNumber));
+        }
+        if (rate < 0 || burst < 0) {
+            return ResponseEntity.badRequest().body("Rate and burst must not be negative.");
+        }
+
+        port.setShaping(rate, burst);
+        update(router);
+        return ResponseEntity.ok(0 == rate ? String.format("Shaper of port %d removed.", portNumber)
+                : String.format("Port %d is shaped to %d bit/s.", portNumber, rate));
+    }
+
+    /**
+     * @return Conform, exceed and violate counters of the policers and shapers of the router's ports.
+     */
+    public ResponseEntity getPolicingStatistics (Long routerId) {
+        Router router = getLoaded(routerId);
+        if (null == router) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Router with id %d couldn't have been found.", routerId));
+        }
+        List<PolicingStatisticsDTO> dtos = new ArrayList<>();
+        for (RouterPort port : router.getPorts()) {
+            Policer policer = port.getPolicer();
+            if (null != policer) {
+                PolicingStatisticsDTO dto = policingStatistics(port, "POLICER", Collections.singletonList(policer));
+                dto.setRate(policer.getRate());
+                dto.setBurst(policer.getBurst());
+                dto.setExcessBurst(policer.getExcessBurst());
+                dtos.add(dto);
+            }
+            for (FlowPolicer flowPolicer : port.getFlowPolicers()) {
+                PolicingStatisticsDTO dto = policingStatistics(port, "FLOW_POLICER", flowPolicer.getPolicers());
+                dto.setMatch(flowPolicer.getMatch().toString());
+                dto.setRate(flowPolicer.getRate());
+                dto.setBurst(flowPolicer.getBurst());
+                dto.setExcessBurst(flowPolicer.getExcessBurst());
+                if (flowPolicer.isPerFlow()) {
+                    dto.setBuckets(flowPolicer.getFlowCount());
+                    dto.setEvictedFlows(flowPolicer.getEvictedFlows());
+                }
+                dtos.add(dto);
+            }
+            Shaper shaper = port.getShaper();
+            if (null != shaper) {
+                PolicingStatisticsDTO dto = new PolicingStatisticsDTO();
+                dto.setPortId(port.getId());
+                dto.setPortOrder(port.getOrder());
+                dto.setKind("SHAPER");
+                dto.setRate(shaper.getRate());
+                dto.setBurst(shaper.getBurst());
+                dto.setBuckets(1);
+                dto.setConformPackets(shaper.getConformPackets());
+                dto.setConformBytes(shaper.getConformBytes());
+                dto.setExceedPackets(shaper.getExceedPackets());
+                dto.setExceedBytes(shaper.getExceedBytes());
+                dto.setViolatePackets(shaper.getViolatePackets());
+                dto.setViolateBytes(shaper.getViolateBytes());
+                dtos.add(dto);
+            }
+        }
+        return ResponseEntity.ok(dtos);
+    }
+
+    /**
+     * Turns the compiled forwarding table of the router on or off.
+     */
+    public ResponseEntity setCompiledFib (Long routerId, boolean enabled) {
+        Router router = getLoaded(routerId);
+        if (null == router) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Router with id %d couldn't have been found.", routerId));
+        }
+        router.setCompiledFib(enabled);
+        try {
+            router.applyCompiledFib();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            router.setCompiledFib(false);
+            router.applyCompiledFib();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
+        }
+        update(router);
+        return ResponseEntity.ok(enabled
+                ? String.format("Routes of router %d are compiled to a forwarding table.", routerId)
+                : String.format("Router %d looks its routes up in the trie.", routerId));
+    }
+
+    /**
+     * @return Memory the route lookup structures of the router take, of all the loaded routers without an id.
+     */
+    public ResponseEntity getRoutingMemory (Long routerId) {
+        List<Router> routers;
+        if (null == routerId) {
+            routers = loadedRouters;
+        } else {
+            Router router = getLoaded(routerId);
+            if (null == router) {
+                return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                        .body(String.format("Router with id %d couldn't have been found.", routerId));
+            }
+            routers = Collections.singletonList(router);
+        }
+        List<RoutingMemoryDTO> dtos = new ArrayList<>();
+        for (Router router : routers) {
+            FibSnapshot fib = router.getRoutingTable().getFib();
+            RoutingMemoryDTO dto = new RoutingMemoryDTO();
+            dto.setRouterId(router.getIdNE());
+            dto.setRunningRoutes(fib.getRoutes().size());
+            dto.setTrieNodes(fib.getRoutes().nodeCount());
+            dto.setTrieBytes(fib.getRoutes().getMemoryBytes());
+            ForwardingTable<Adjacency> forwardingTable = fib.getCompiled();
+            dto.setCompiledFib(null != forwardingTable);
+            if (null != forwardingTable) {
+                dto.setFibBytes(forwardingTable.getMemoryBytes());
+                dto.setFibChunks(forwardingTable.getChunkCount());
+            }
+            dtos.add(dto);
+        }
+        return ResponseEntity.ok(dtos);
+    }
+
+    /**
+     * Puts a flow cache of the given size in front of the router's route lookup, removes it at 0 size.
+     * The counters start over.
+     */
+    public ResponseEntity setFlowCache (Long routerId, int size) {
+        Router router = getLoaded(routerId);
+        if (null == router) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Router with id %d couldn't have been found.", routerId));
+        }
+        if (size < 0 || size > FlowCache.MAX_CAPACITY) {
+            return ResponseEntity.badRequest()
+                    .body(String.format("Flow cache size must be between 0 and %d.", FlowCache.MAX_CAPACITY));
+        }
+        router.setFlowCacheSize(size);
+        router.applyFlowCache();
+        update(router);
+        return ResponseEntity.ok((size > 0)
+                ? String.format("Router %d caches the ports of %d destinations.", routerId, size)
+                : String.format("Flow cache of router %d is removed.", routerId));
+    }
+
+    /**
+     * @return Hit and miss counters of the router's flow cache.
+     */
+    public ResponseEntity getFlowCacheStatistics (Long routerId) {
+        Router router = getLoaded(routerId);
+        if (null == router) {
+            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                    .body(String.format("Router with id %d couldn't have been found.", routerId));
+        }
+        FlowCache cache = router.getFlowCache();
+        if (null == cache) {
+            return ResponseEntity.badRequest().body(String.format("Router %d has no flow cache.", routerId));
+        }
+        FlowCacheStatisticsDTO dto = new FlowCacheStatisticsDTO();
+        dto.setRouterId(routerId);
+        dto.setCapacity(cache.getCapacity());
+        dto.setSize(cache.getSize());
+        dto.setHits(cache.getHits());
+        dto.setMisses(cache.getMisses());
+        dto.setStaleMisses(cache.getStaleMisses());
+        dto.setEvictions(cache.getEvictions());
+        dto.setHitRatio(cache.getHitRatio());
+        return ResponseEntity.ok(dto);
+    }
+
+    private static PolicingStatisticsDTO policingStatistics (RouterPort port, String kind, Collection<Policer> policers) {
+        PolicingStatisticsDTO dto = new PolicingStatisticsDTO();
+        dto.setPortId(port.getId());
+        dto.setPortOrder(port.getOrder());
+        dto.setKind(kind);
+        dto.setBuckets(policers.size());
+        for (Policer policer : policers) {
+            dto.setConformPackets(dto.getConformPackets() + policer.getConformPackets());
+            dto.setConformBytes(dto.getConformBytes() + policer.getConformBytes());
+            dto.setExceedPackets(dto.getExceedPackets() + policer.getExceedPackets());
+            dto.setExceedBytes(dto.getExceedBytes() + policer.getExceedBytes());
+            dto.setViolatePackets(dto.getViolatePackets() + policer.getViolatePackets());
+            dto.setViolateBytes(dto.getViolateBytes() + policer.getViolateBytes());
+        }
+        return dto;
+    }
 }
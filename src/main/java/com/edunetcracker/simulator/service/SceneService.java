@@ -95,6 +95,34 @@ public class SceneService extends DBService<Scene> {
         return SequenceStatus.OK;
     }
 
+    public SequenceStatus setTickLength(long id, long tickLength) {
+        if (tickLength <= 0) {
+            SequenceStatus.UNEXPECTED_FIELD_VALUE.logError("Positive value", "tickLength", "setTickLength");
+            return SequenceStatus.UNEXPECTED_FIELD_VALUE;
+        }
+        Scene scene = get(id);
+        if (null == scene) {
+            return SequenceStatus.NOT_FOUND_IN_DATABASE;
+        }
+        scene.setTickLength(tickLength);
+        update(scene);
+        return SequenceStatus.OK;
+    }
+
+    public SequenceStatus setCpuCores(long id, int cpuCores) {
+        if (cpuCores < 0) {
+            SequenceStatus.UNEXPECTED_FIELD_VALUE.logError("Non-negative value", "cpuCores", "setCpuCores");
+            return SequenceStatus.UNEXPECTED_FIELD_VALUE;
+        }
+        Scene scene = get(id);
+        if (null == scene) {
+            return SequenceStatus.NOT_FOUND_IN_DATABASE;
+        }
+        scene.setCpuCores(cpuCores);
+        update(scene);
+        return SequenceStatus.OK;
+    }
+
     @Override
     public Scene update(Scene scene) {
         if (null == scene) {
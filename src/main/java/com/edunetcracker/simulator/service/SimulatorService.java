@@ -1,7 +1,14 @@
 package com.edunetcracker.simulator.service;
 
 import com.edunetcracker.simulator.database.repository.LinkRepository;
+import com.edunetcracker.simulator.model.Link;
+import com.edunetcracker.simulator.model.Scene;
+import com.edunetcracker.simulator.model.DTO.CheckpointSummaryDTO;
+import com.edunetcracker.simulator.model.DTO.ElementOverrunDTO;
+import com.edunetcracker.simulator.model.DTO.OverrunReportDTO;
 import com.edunetcracker.simulator.model.DTO.PingDTO;
+import com.edunetcracker.simulator.model.DTO.SceneRuntimeDTO;
+import com.edunetcracker.simulator.model.DTO.SimulationSummaryDTO;
 import com.edunetcracker.simulator.model.DTO.TrafficDTO;
 import com.edunetcracker.simulator.model.context.GeneratedConfig;
 import com.edunetcracker.simulator.model.context.NEContext;
@@ -9,18 +16,42 @@ import com.edunetcracker.simulator.model.context.TrafficContext;
 import com.edunetcracker.simulator.model.element.NetworkElement;
 import com.edunetcracker.simulator.model.element.Router;
 import com.edunetcracker.simulator.model.element.Switch;
+import com.edunetcracker.simulator.service.checkpoint.CheckpointService;
 import com.edunetcracker.simulator.service.context.ContextService;
+import com.edunetcracker.simulator.service.distributed.DistributedSimulation;
+import com.edunetcracker.simulator.service.distributed.DistributedStatistics;
 import com.edunetcracker.simulator.service.routingService.IpService;
+import com.edunetcracker.simulator.service.simulation.LinkStateEvent;
+import com.edunetcracker.simulator.service.simulation.OverloadPolicy;
+import com.edunetcracker.simulator.service.simulation.PartitionStatistics;
+import com.edunetcracker.simulator.service.simulation.PartitionedSimulation;
+import com.edunetcracker.simulator.service.simulation.SceneRuntime;
+import com.edunetcracker.simulator.service.simulation.SimulationEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.edunetcracker.simulator.model.context.TrafficContext.TrafficType.SIMPLE;
 
@@ -32,13 +63,23 @@ public class SimulatorService {
     private final RouterService routerService;
     private final SwitchService switchService;
     private final ContextService contextService;
+    private final LinkService linkService;
+    private final CheckpointService checkpointService;
+
+    @Value("${nc_project.checkpoint-dir}")
+    private String checkpointDir;
+
+    //Every scene is simulated by its own runtime, so scenes don't share clocks, lifecycles or threads
+    private final Map<Long, SceneRuntime> runtimes = new ConcurrentHashMap<>();
 
     @Autowired
-    public SimulatorService(LinkRepository linkRepository, RouterService routerService, SwitchService switchService, ContextService contextService) {
+    public SimulatorService(LinkRepository linkRepository, RouterService routerService, SwitchService switchService, ContextService contextService, LinkService linkService, CheckpointService checkpointService) {
         this.linkRepository = linkRepository;
         this.routerService = routerService;
         this.switchService = switchService;
         this.contextService = contextService;
+        this.linkService = linkService;
+        this.checkpointService = checkpointService;
     }
 
 
@@ -54,14 +95,143 @@ public class SimulatorService {
 
 
     private void startSwitch (Switch switchNE) {
-        switchNE.setWorking(true);
-        switchNE.start();
+        startElement(switchNE);
     }
 
     private void startRouter (Router router) {
-        router.setWorking(true);
-        router.start();
         router.initializeRunningRoutes();
+        startElement(router);
+    }
+
+    /**
+     * Attaches the element to the runtime of its scene, configured as the scene says.
+     */
+    private void startElement (NetworkElement ne) {
+        SceneRuntime runtime = runtimeOf(SceneRuntime.sceneIdOf(ne));
+        runtime.configure(ne.getScene());
+        runtime.getEngine().register(ne);
+        runtime.start();
+    }
+
+    private void stopElement (NetworkElement ne) {
+        SimulationEngine engine = ne.getEngine();
+        if (null != engine) {
+            engine.unregister(ne);
+        }
+    }
+
+    //Creates the runtime of the scene if there's none yet. Only starting an element may do so
+    private SceneRuntime runtimeOf (long sceneId) {
+        return runtimes.computeIfAbsent(sceneId,
+                id -> new SceneRuntime(id, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param sceneId Scene to find the runtime of. May be null if there is only one runtime.
+     * @return Runtime of the scene, or null if there is no such (or the scene is ambiguous).
+     */
+    private SceneRuntime resolveRuntime (Long sceneId) {
+        if (null != sceneId) {
+            return runtimes.get(sceneId);
+        }
+        if (1 == runtimes.size()) {
+            return runtimes.values().iterator().next();
+        }
+        return null;
+    }
+
+    private ResponseEntity noRuntime (Long sceneId) {
+        if (null == sceneId) {
+            return ResponseEntity.badRequest().body("Several scenes (or none) are simulated, the scene must be stated.");
+        }
+        return ResponseEntity.badRequest().body(String.format("Scene %d isn't simulated.", sceneId));
+    }
+
+    /**
+     * @return Loaded elements attached to the engine.
+     */
+    private List<NetworkElement> elementsOf (SimulationEngine engine) {
+        List<NetworkElement> elements = new ArrayList<>();
+        for (Router router : routerService.getLoadedRouters()) {
+            if (router.getEngine() == engine) {
+                elements.add(router);
+            }
+        }
+        for (Switch switchNE : switchService.getLoadedSwitches()) {
+            if (switchNE.getEngine() == engine) {
+                elements.add(switchNE);
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Applies changed settings of the scene to its runtime, if it is simulated.
+     */
+    public void reloadSceneSettings (Scene scene) {
+        if (null == scene) {
+            return;
+        }
+        SceneRuntime runtime = runtimes.get(scene.getId());
+        if (null != runtime) {
+            runtime.configure(scene);
+        }
+    }
+
+    /**
+     * Starts all the loaded elements of the scene in the scene's runtime.
+     */
+    public ResponseEntity startScene (long sceneId) {
+        int started = 0;
+        for (Router router : routerService.getLoadedRouters()) {
+            if (SceneRuntime.sceneIdOf(router) == sceneId) {
+                startRouter(router);
+                ++started;
+            }
+        }
+        for (Switch switchNE : switchService.getLoadedSwitches()) {
+            if (SceneRuntime.sceneIdOf(switchNE) == sceneId) {
+                startSwitch(switchNE);
+                ++started;
+            }
+        }
+        if (0 == started) {
+            return ResponseEntity.badRequest().body(String.format("Scene %d has no loaded elements.", sceneId));
+        }
+        return ResponseEntity.ok(String.format("Started %d elements of scene %d.", started, sceneId));
+    }
+
+    /**
+     * Stops the scene's runtime and detaches its elements. Other scenes keep running.
+     */
+    public ResponseEntity stopScene (long sceneId) {
+        SceneRuntime runtime = runtimes.remove(sceneId);
+        if (null == runtime) {
+            return noRuntime(sceneId);
+        }
+        runtime.stop();
+        for (NetworkElement ne : elementsOf(runtime.getEngine())) {
+            stopElement(ne);
+        }
+        runtime.shutdown();
+        return ResponseEntity.ok(String.format("Scene %d has been stopped.", sceneId));
+    }
+
+    public ResponseEntity<List<SceneRuntimeDTO>> getSceneRuntimes () {
+        List<SceneRuntimeDTO> dtos = new ArrayList<>();
+        for (SceneRuntime runtime : runtimes.values()) {
+            SceneRuntimeDTO dto = new SceneRuntimeDTO();
+            dto.setSceneId(runtime.getSceneId());
+            dto.setRunning(runtime.isRunning());
+            dto.setCpuCores(runtime.getCpuCores());
+            dto.setElements(elementsOf(runtime.getEngine()).size());
+            dto.setSimulatedTime(runtime.getEngine().getNow());
+            dto.setTickLength(runtime.getEngine().getTickLength());
+            dto.setPendingEvents(runtime.getEngine().getPendingEvents());
+            dto.setLag(runtime.getEngine().getLag());
+            dtos.add(dto);
+        }
+        return ResponseEntity.ok(dtos);
     }
 
     public ResponseEntity startComponent(Integer id) {
@@ -105,16 +275,407 @@ public class SimulatorService {
     }
 
     public ResponseEntity stopComponents () {
-
-
+        for (SceneRuntime runtime : runtimes.values()) {
+            runtime.stop();
+        }
+        for (Router router : routerService.getLoadedRouters()) {
+            stopElement(router);
+        }
+        for (Switch switchNE : switchService.getLoadedSwitches()) {
+            stopElement(switchNE);
+        }
         return ResponseEntity.status(HttpStatus.OK).body("All components have been stopped");
     }
 
     public ResponseEntity stopComponents (List<Integer> ids) {
-
+        for (Integer id : ids) {
+            NetworkElement ne = switchService.getLoaded(id);
+            if (null == ne) {
+                ne = routerService.getLoaded(id);
+            }
+            if (null == ne) {
+                logger.error("Tried to stop nonexisting NetworkElement with id {}", id);
+                continue;
+            }
+            stopElement(ne);
+        }
         return ResponseEntity.status(HttpStatus.OK).body("Request components have been stopped");
     }
 
+    /**
+     * Brings the link up or down at the next tick of the simulation.
+     */
+    public ResponseEntity setLinkState (long linkId, boolean up) {
+        Link link = linkService.getLoaded(linkId);
+        if (null == link) {
+            return ResponseEntity.badRequest()
+                    .body(String.format("Link with id %d couldn't have been found.", linkId));
+        }
+        SceneRuntime runtime = runtimes.get(SceneRuntime.sceneIdOf(link));
+        if (null == runtime) {
+            return noRuntime(SceneRuntime.sceneIdOf(link));
+        }
+        SimulationEngine engine = runtime.getEngine();
+        engine.schedule(new LinkStateEvent(engine.getNow() + engine.getTickLength(), link, up));
+        return ResponseEntity.ok(String.format("Link %d will be brought %s.", linkId, up ? "up" : "down"));
+    }
+
+    /**
+     * Runs the started elements for the given simulated duration as fast as the CPU allows,
+     * without waiting for the wall clock.
+     * @param duration Simulated milliseconds.
+     * @return Summary counters of the run.
+     */
+    public ResponseEntity runFor (long duration, Long sceneId) {
+        if (duration <= 0) {
+            return ResponseEntity.badRequest().body("Duration must be positive.");
+        }
+        SceneRuntime runtime = resolveRuntime(sceneId);
+        if (null == runtime) {
+            return noRuntime(sceneId);
+        }
+        SimulationEngine engine = runtime.getEngine();
+        SimulationSummaryDTO summary = new SimulationSummaryDTO();
+        long ticksBefore = engine.getElementTicks();
+        long wakeUpsBefore = engine.getWakeUps();
+        long processedBefore = countProcessedDataUnits();
+        long wallBefore = System.currentTimeMillis();
+        summary.setSimulatedFrom(engine.getNow());
+
+        summary.setEvents(engine.runFor(duration));
+
+        summary.setSimulatedTo(summary.getSimulatedFrom() + duration);
+        summary.setWallMillis(System.currentTimeMillis() - wallBefore);
+        summary.setElementTicks(engine.getElementTicks() - ticksBefore);
+        summary.setWakeUps(engine.getWakeUps() - wakeUpsBefore);
+        summary.setProcessedDataUnits(countProcessedDataUnits() - processedBefore);
+        logger.info("Simulated {} ms in {} ms of wall time.", duration, summary.getWallMillis());
+        return ResponseEntity.ok(summary);
+    }
+
+    private long countProcessedDataUnits () {
+        long processed = 0;
+        for (Router router : routerService.getLoadedRouters()) {
+            processed += router.getProcessedDataUnits();
+        }
+        return processed;
+    }
+
+    /**
+     * Changes the pace of the simulation driven in real time.
+     * @param factor Simulated time per wall clock time (e.g. "0.1", "10"), or "max".
+     * @param sceneId Scene to change the pace of, null for all of them.
+     */
+    public ResponseEntity setTimeDilation (String factor, Long sceneId) {
+        double dilation;
+        if ("max".equalsIgnoreCase(factor)) {
+            dilation = Double.POSITIVE_INFINITY;
+        } else {
+            try {
+                dilation = Double.parseDouble(factor);
+            } catch (NumberFormatException e) {
+                return ResponseEntity.badRequest().body(String.format("Can't parse time dilation \"%s\".", factor));
+            }
+        }
+        if (Double.isNaN(dilation) || dilation <= 0) {
+            return ResponseEntity.badRequest().body("Time dilation must be positive.");
+        }
+        Collection<SceneRuntime> toChange = runtimesToChange(sceneId);
+        if (null == toChange) {
+            return noRuntime(sceneId);
+        }
+        for (SceneRuntime runtime : toChange) {
+            runtime.getEngine().setTimeDilation(dilation);
+        }
+        return ResponseEntity.ok(String.format("Time dilation set to %s.", factor));
+    }
+
+    /**
+     * Sets what elements do when they can't keep up: NONE, SKIP_CONTEXTS, SHED_INPUT or STRETCH_TICK.
+     */
+    public ResponseEntity setOverloadPolicy (String policy, Long sceneId) {
+        OverloadPolicy overloadPolicy;
+        try {
+            overloadPolicy = OverloadPolicy.valueOf(policy.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(String.format("Unknown overload policy \"%s\".", policy));
+        }
+        Collection<SceneRuntime> toChange = runtimesToChange(sceneId);
+        if (null == toChange) {
+            return noRuntime(sceneId);
+        }
+        for (SceneRuntime runtime : toChange) {
+            runtime.getEngine().setOverloadPolicy(overloadPolicy);
+        }
+        return ResponseEntity.ok(String.format("Overload policy set to %s.", overloadPolicy));
+    }
+
+    /**
+     * @param top How many of the worst elements to report.
+     * @return Lag of the engine and the elements that overran their budgets the most.
+     */
+    public ResponseEntity getOverruns (int top, Long sceneId) {
+        SceneRuntime runtime = resolveRuntime(sceneId);
+        if (null == runtime) {
+            return noRuntime(sceneId);
+        }
+        SimulationEngine engine = runtime.getEngine();
+        List<NetworkElement> elements = elementsOf(engine);
+        elements.sort(Comparator.comparingLong(NetworkElement::getOverrunNanos).reversed());
+
+        OverrunReportDTO report = new OverrunReportDTO();
+        report.setOverloadPolicy(engine.getOverloadPolicy().name());
+        report.setLag(engine.getLag());
+        report.setMaxLag(engine.getMaxLag());
+        report.setLateBatches(engine.getLateBatches());
+        report.setStretchedMillis(engine.getStretchedMillis());
+        report.setCumulativeSlip(engine.getCumulativeSlip());
+        List<ElementOverrunDTO> offenders = new ArrayList<>();
+        for (NetworkElement element : elements.subList(0, Math.min(Math.max(0, top), elements.size()))) {
+            ElementOverrunDTO dto = new ElementOverrunDTO();
+            dto.setId(element.getIdNE());
+            dto.setPhaseOverruns(element.getPhaseOverruns());
+            dto.setOverrunMillis(element.getOverrunNanos() / 1_000_000);
+            dto.setShedDataUnits(element.getShedDataUnits());
+            dto.setFailures(element.getFailures());
+            offenders.add(dto);
+        }
+        report.setWorstElements(offenders);
+        return ResponseEntity.ok(report);
+    }
+
+    /**
+     * Runs the started elements for the given simulated duration as fast as possible,
+     * with the scene split into partitions that are simulated in parallel.
+     * @return Speedup and parallel-efficiency counters of the run.
+     */
+    public ResponseEntity runPartitioned (int partitions, long duration, Long sceneId) {
+        if (partitions <= 0 || duration <= 0) {
+            return ResponseEntity.badRequest().body("Number of partitions and duration must be positive.");
+        }
+        SceneRuntime runtime = resolveRuntime(sceneId);
+        if (null == runtime) {
+            return noRuntime(sceneId);
+        }
+        SimulationEngine engine = runtime.getEngine();
+        boolean wasRunning = engine.isRunning();
+        engine.stop();
+
+        List<NetworkElement> elements = elementsOf(engine);
+        List<Link> links = new ArrayList<>();
+        for (Link link : linkService.getLoadedLinks()) {
+            if (runtime.owns(link)) {
+                links.add(link);
+            }
+        }
+
+        long endTime = engine.getNow() + duration;
+        PartitionedSimulation simulation = new PartitionedSimulation(elements, links,
+                partitions, engine.getTickLength(), engine.getNow());
+        PartitionStatistics statistics;
+        try {
+            statistics = simulation.runUntil(endTime);
+        } finally {
+            simulation.close();
+            engine.advanceTo(endTime);
+            for (NetworkElement element : elements) {
+                engine.register(element);
+            }
+        }
+        logger.info("Partitioned run: speedup {}, parallel efficiency {}.",
+                statistics.getSpeedup(), statistics.getParallelEfficiency());
+        if (wasRunning) {
+            engine.start();
+        }
+        return ResponseEntity.ok(statistics);
+    }
+
+    /**
+     * Runs the scene together with other simulator processes, each of which ticks its own part of it.
+     * Every process has to be called with the same nodes list and duration, and its own node index.
+     * Elements hosted by other nodes are detached from this one's runtime while the run lasts.
+     * @param node Index of this process in the nodes list.
+     * @param nodes Comma separated host:port addresses the nodes listen at.
+     * @param duration Simulated milliseconds.
+     */
+    public ResponseEntity runDistributed (int node, String nodes, long duration, Long sceneId) {
+        if (duration <= 0) {
+            return ResponseEntity.badRequest().body("Duration must be positive.");
+        }
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String address : nodes.split(",")) {
+            String trimmed = address.trim();
+            int colon = trimmed.lastIndexOf(':');
+            try {
+                addresses.add(new InetSocketAddress(trimmed.substring(0, colon),
+                        Integer.parseInt(trimmed.substring(colon + 1))));
+            } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(String.format("Bad node address \"%s\".", trimmed));
+            }
+        }
+        SceneRuntime runtime = resolveRuntime(sceneId);
+        if (null == runtime) {
+            return noRuntime(sceneId);
+        }
+        SimulationEngine engine = runtime.getEngine();
+        boolean wasRunning = engine.isRunning();
+        engine.stop();
+
+        List<NetworkElement> elements = new ArrayList<>();
+        for (Router router : routerService.getLoadedRouters()) {
+            if (runtime.owns(router)) {
+                elements.add(router);
+            }
+        }
+        for (Switch switchNE : switchService.getLoadedSwitches()) {
+            if (runtime.owns(switchNE)) {
+                elements.add(switchNE);
+            }
+        }
+        List<Link> links = new ArrayList<>();
+        for (Link link : linkService.getLoadedLinks()) {
+            if (runtime.owns(link)) {
+                links.add(link);
+            }
+        }
+        DistributedStatistics statistics;
+        DistributedSimulation simulation;
+        try {
+            simulation = new DistributedSimulation(engine, elements, links, node, addresses);
+        } catch (IllegalArgumentException e) {
+            if (wasRunning) {
+                engine.start();
+            }
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        //Elements hosted by other nodes are detached for the run only
+        Set<NetworkElement> local = Collections.newSetFromMap(new IdentityHashMap<>());
+        local.addAll(simulation.getLocalElements());
+        List<NetworkElement> detached = new ArrayList<>();
+        for (NetworkElement element : elements) {
+            if (!local.contains(element) && null != element.getEngine()) {
+                stopElement(element);
+                detached.add(element);
+            }
+        }
+        try {
+            simulation.connect();
+            statistics = simulation.runFor(duration);
+        } catch (IOException e) {
+            logger.error("Distributed run of node {} failed.", node, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(String.format("Distributed run failed: %s", e.getMessage()));
+        } finally {
+            simulation.close();
+            for (NetworkElement element : detached) {
+                engine.register(element);
+            }
+            if (wasRunning) {
+                engine.start();
+            }
+        }
+        logger.info("Node {} simulated {} ms in {} windows, {} ms of {} spent at barriers.", node, duration,
+                statistics.getWindows(), statistics.getWaitNanos() / 1_000_000, statistics.getWallNanos() / 1_000_000);
+        return ResponseEntity.ok(statistics);
+    }
+
+    /**
+     * Writes the runtime state of the simulation to a checkpoint file.
+     * The engine is paused while the checkpoint is written.
+     * @param name Name of the checkpoint in the checkpoint directory.
+     * @param sceneId Scene to checkpoint. May be null if only one scene is simulated.
+     */
+    public ResponseEntity saveCheckpoint (String name, Long sceneId) {
+        Path path = checkpointPath(name);
+        if (null == path) {
+            return ResponseEntity.badRequest().body(String.format("Bad checkpoint name \"%s\".", name));
+        }
+        SceneRuntime runtime = resolveRuntime(sceneId);
+        if (null == runtime) {
+            return noRuntime(sceneId);
+        }
+        SimulationEngine engine = runtime.getEngine();
+        boolean wasRunning = engine.isRunning();
+        engine.stop();
+        long wallBefore = System.currentTimeMillis();
+        try {
+            Files.createDirectories(path.getParent());
+            CheckpointSummaryDTO summary;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                summary = checkpointService.write(channel, runtime);
+            }
+            summary.setName(name);
+            summary.setWallMillis(System.currentTimeMillis() - wallBefore);
+            logger.info("Checkpoint {} written: {} bytes in {} ms.", name, summary.getBytes(), summary.getWallMillis());
+            return ResponseEntity.ok(summary);
+        } catch (IOException e) {
+            logger.error("Failed to write checkpoint {}.", name, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(String.format("Failed to write checkpoint: %s", e.getMessage()));
+        } finally {
+            if (wasRunning) {
+                engine.start();
+            }
+        }
+    }
+
+    /**
+     * Restores the runtime state of the loaded scene from a checkpoint file.
+     * @param name Name of the checkpoint in the checkpoint directory.
+     * @param sceneId Scene to restore. May be null if only one scene is simulated.
+     */
+    public ResponseEntity restoreCheckpoint (String name, Long sceneId) {
+        Path path = checkpointPath(name);
+        if (null == path || !Files.isRegularFile(path)) {
+            return ResponseEntity.badRequest().body(String.format("Checkpoint \"%s\" couldn't have been found.", name));
+        }
+        //The scene has to be started (may be stopped again) first, e.g. on another machine
+        SceneRuntime runtime = resolveRuntime(sceneId);
+        if (null == runtime) {
+            return noRuntime(sceneId);
+        }
+        SimulationEngine engine = runtime.getEngine();
+        boolean wasRunning = engine.isRunning();
+        engine.stop();
+        long wallBefore = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            CheckpointSummaryDTO summary = checkpointService.read(channel, runtime);
+            summary.setName(name);
+            summary.setBytes(channel.size());
+            summary.setWallMillis(System.currentTimeMillis() - wallBefore);
+            logger.info("Checkpoint {} restored at simulated time {} in {} ms.",
+                    name, summary.getSimulatedTime(), summary.getWallMillis());
+            return ResponseEntity.ok(summary);
+        } catch (IOException e) {
+            logger.error("Failed to restore checkpoint {}.", name, e);
+            return ResponseEntity.badRequest().body(String.format("Failed to restore checkpoint: %s", e.getMessage()));
+        } finally {
+            if (wasRunning) {
+                engine.start();
+            }
+        }
+    }
+
+    //Null if the scene isn't simulated
+    private Collection<SceneRuntime> runtimesToChange (Long sceneId) {
+        if (null == sceneId) {
+            return runtimes.values();
+        }
+        SceneRuntime runtime = runtimes.get(sceneId);
+        return (null == runtime) ? null : Collections.singletonList(runtime);
+    }
+
+    /**
+     * @return Path of the checkpoint file, or null if the name would lead out of the checkpoint directory.
+     */
+    private Path checkpointPath (String name) {
+        if (null == name || !name.matches("[\\w.-]+") || name.startsWith(".")) {
+            return null;
+        }
+        return Paths.get(checkpointDir, name + ".ckpt");
+    }
+
     /**
      * Creates a ping context for a router.
      * (All the work of finding necessary port is on context's shoulders).
@@ -125,7 +686,7 @@ public class SimulatorService {
         Router router = routerService.getLoaded(pingDTO.getRouterId());
         logger.trace("Requested router id: {}. Found: {}", pingDTO.getRouterId(), router);
         NEContext ping = ContextService.ping(null, IpService.intFromString(pingDTO.getDestIp()));
-        router.getContexts().add(ping);
+        router.addContext(ping);
 
         return ResponseEntity.ok("Context initiated successfully!");
     }
@@ -139,17 +700,25 @@ public class SimulatorService {
         logger.trace("Requested router 1 id: {}. Found: {}", trafficDTO.getRouterId1(), router1);
         logger.trace("Requested router 2 id: {}. Found: {}", trafficDTO.getRouterId2(), router2);
 
+        TrafficContext.FlowMode flowMode;
+        try {
+            flowMode = (null == trafficDTO.getFlowMode()) ? TrafficContext.FlowMode.OPEN_LOOP
+                    : TrafficContext.FlowMode.valueOf(trafficDTO.getFlowMode().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(String.format("Unknown flow mode %s.", trafficDTO.getFlowMode()));
+        }
+
         long id = new Random().nextLong();
         GeneratedConfig gc1 = new GeneratedConfig(id,true, IpService.intFromString(trafficDTO.getDestIp1()), 10,
-                SIMPLE);
+                SIMPLE, flowMode);
         GeneratedConfig gc2 = new GeneratedConfig(id,true, IpService.intFromString(trafficDTO.getDestIp2()), 10,
-                SIMPLE);
+                SIMPLE, flowMode);
         NEContext traffic1 = ContextService.traffic(gc1);
         NEContext traffic2 = ContextService.traffic(gc2);
         logger.error("Traffic1 has id {} and is alive {}", traffic1.getId(), traffic1.isAlive());
         logger.error("Router1 is null {}", router1 == null);
-        router1.getContexts().add(traffic1);
-        //router2.getContexts().add(traffic2);
+        router1.addContext(traffic1);
+        //router2.addContext(traffic2);
 
         return ResponseEntity.ok("Traffic context initiated successfully!");
     }
@@ -0,0 +1,126 @@
+package com.edunetcracker.simulator.service.capture;
+
+import com.edunetcracker.simulator.model.DTO.CaptureSummaryDTO;
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import com.edunetcracker.simulator.model.port.Port;
+import com.edunetcracker.simulator.model.port.PortTap;
+import com.edunetcracker.simulator.service.RouterService;
+import com.edunetcracker.simulator.service.SwitchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Captures the traffic of loaded ports (both directions) to pcap files, one per port.
+ */
+@Service
+public class CaptureService {
+    private static Logger logger = LoggerFactory.getLogger(CaptureService.class);
+
+    public static final long DEFAULT_SIZE = 16 * 1024 * 1024;
+
+    private final RouterService routerService;
+    private final SwitchService switchService;
+
+    @Value("${nc_project.capture-dir}")
+    private String captureDir;
+
+    private final Map<Long, Capture> captures = new ConcurrentHashMap<>();
+
+    public CaptureService(RouterService routerService, SwitchService switchService) {
+        this.routerService = routerService;
+        this.switchService = switchService;
+    }
+
+    /**
+     * Starts capturing the port's traffic to a file named after the port.
+     * @param size Size of the ring file, bytes, or null for the default.
+     */
+    public ResponseEntity start (long portId, Long size) {
+        Port port = LoadedPorts.find(routerService, switchService, portId);
+        if (null == port) {
+            return ResponseEntity.badRequest().body(String.format("Port with id %d couldn't have been found.", portId));
+        }
+        if (captures.containsKey(portId)) {
+            return ResponseEntity.badRequest().body(String.format("Port %d is already captured.", portId));
+        }
+        Path path = Paths.get(captureDir, String.format("port-%d-%d.pcap", portId, System.currentTimeMillis()));
+        PcapRingWriter writer;
+        try {
+            Files.createDirectories(path.getParent());
+            writer = new PcapRingWriter(path, null == size ? DEFAULT_SIZE : size);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            logger.error("Failed to create capture file {}.", path, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(String.format("Failed to create capture file: %s", e.getMessage()));
+        }
+        Capture capture = new Capture(port, writer);
+        if (null != captures.putIfAbsent(portId, capture)) {
+            closeQuietly(writer);
+            return ResponseEntity.badRequest().body(String.format("Port %d is already captured.", portId));
+        }
+        port.addTap(capture);
+        logger.info("Capturing port {} to {}.", portId, path);
+        return ResponseEntity.ok(String.format("Capturing port %d to %s.", portId, path));
+    }
+
+    /**
+     * Stops the capture of the port and finishes its file.
+     */
+    public ResponseEntity stop (long portId) {
+        Capture capture = captures.remove(portId);
+        if (null == capture) {
+            return ResponseEntity.badRequest().body(String.format("Port %d isn't captured.", portId));
+        }
+        capture.port.removeTap(capture);
+        PcapRingWriter writer = capture.writer;
+        CaptureSummaryDTO summary = new CaptureSummaryDTO();
+        summary.setPortId(portId);
+        summary.setFile(writer.getPath().toString());
+        summary.setRecords(writer.getRecords());
+        summary.setPackets(writer.getWritten());
+        summary.setSkipped(writer.getSkipped());
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.error("Failed to finish capture file {}.", writer.getPath(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(String.format("Failed to finish capture file: %s", e.getMessage()));
+        }
+        logger.info("Capture of port {} stopped: {} packets.", portId, summary.getPackets());
+        return ResponseEntity.ok(summary);
+    }
+
+    private static void closeQuietly (PcapRingWriter writer) {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close capture file {}.", writer.getPath(), e);
+        }
+    }
+
+    private static class Capture implements PortTap {
+        final Port port;
+        final PcapRingWriter writer;
+
+        Capture(Port port, PcapRingWriter writer) {
+            this.port = port;
+            this.writer = writer;
+        }
+
+        @Override
+        public void tap(Port port, DataUnit dataUnit, Direction direction, long time) {
+            writer.write(dataUnit, time);
+        }
+    }
+}
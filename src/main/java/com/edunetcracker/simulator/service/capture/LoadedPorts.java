@@ -0,0 +1,39 @@
+package com.edunetcracker.simulator.service.capture;
+
+import com.edunetcracker.simulator.model.element.Router;
+import com.edunetcracker.simulator.model.element.Switch;
+import com.edunetcracker.simulator.model.port.Port;
+import com.edunetcracker.simulator.model.port.RouterPort;
+import com.edunetcracker.simulator.model.port.SwitchPort;
+import com.edunetcracker.simulator.service.RouterService;
+import com.edunetcracker.simulator.service.SwitchService;
+
+/**
+ * Looks ports up among the ones of the loaded elements, which are the instances the simulation uses.
+ */
+class LoadedPorts {
+
+    private LoadedPorts() {
+    }
+
+    static Port find (RouterService routerService, SwitchService switchService, long portId) {
+        for (Router router : routerService.getLoadedRouters()) {
+            for (RouterPort port : router.getPorts()) {
+                if (port.getId() == portId) {
+                    return port;
+                }
+            }
+        }
+        for (Switch switchNE : switchService.getLoadedSwitches()) {
+            if (null == switchNE.getPorts()) {
+                continue;
+            }
+            for (SwitchPort port : switchNE.getPorts()) {
+                if (port.getId() == portId) {
+                    return port;
+                }
+            }
+        }
+        return null;
+    }
+}
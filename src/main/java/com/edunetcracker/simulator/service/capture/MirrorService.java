@@ -0,0 +1,124 @@
+package com.edunetcracker.simulator.service.capture;
+
+import com.edunetcracker.simulator.model.DTO.MirrorSummaryDTO;
+import com.edunetcracker.simulator.model.port.Port;
+import com.edunetcracker.simulator.model.port.PortMirror;
+import com.edunetcracker.simulator.model.port.PortTap;
+import com.edunetcracker.simulator.service.RouterService;
+import com.edunetcracker.simulator.service.SwitchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mirrors the traffic of loaded ports (SPAN), at most one mirror per port.
+ * Every mirror counts the traffic it sees, and may repeat it to another port of the same element.
+ */
+@Service
+public class MirrorService {
+    private static Logger logger = LoggerFactory.getLogger(MirrorService.class);
+
+    private final RouterService routerService;
+    private final SwitchService switchService;
+
+    private final Map<Long, Mirror> mirrors = new ConcurrentHashMap<>();
+
+    public MirrorService(RouterService routerService, SwitchService switchService) {
+        this.routerService = routerService;
+        this.switchService = switchService;
+    }
+
+    /**
+     * Starts mirroring the port.
+     * @param mode INGRESS, EGRESS or BOTH, null for BOTH.
+     * @param destinationPortId Port to repeat the traffic to, or null to only analyze it.
+     */
+    public ResponseEntity start (long portId, String mode, Long destinationPortId) {
+        Port port = LoadedPorts.find(routerService, switchService, portId);
+        if (null == port) {
+            return ResponseEntity.badRequest().body(String.format("Port with id %d couldn't have been found.", portId));
+        }
+        PortMirror.Mode mirrorMode;
+        try {
+            mirrorMode = (null == mode) ? PortMirror.Mode.BOTH : PortMirror.Mode.valueOf(mode.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(String.format("Unknown mirror mode %s.", mode));
+        }
+        Port destination = null;
+        if (null != destinationPortId) {
+            destination = LoadedPorts.find(routerService, switchService, destinationPortId);
+            if (null == destination) {
+                return ResponseEntity.badRequest().body(String.format("Port with id %d couldn't have been found.", destinationPortId));
+            }
+            if (destination == port) {
+                return ResponseEntity.badRequest().body("Port can't be mirrored to itself.");
+            }
+            //The destination's output queue has a single producer: the element that owns it
+            if (destination.checkForOwner() != port.checkForOwner()) {
+                return ResponseEntity.badRequest().body(String.format("Ports %d and %d belong to different elements.", portId, destinationPortId));
+            }
+        }
+        TrafficStatistics statistics = new TrafficStatistics();
+        Mirror mirror = new Mirror(port, new PortMirror(mirrorMode, destination, statistics), statistics);
+        if (null != mirrors.putIfAbsent(portId, mirror)) {
+            return ResponseEntity.badRequest().body(String.format("Port %d is already mirrored.", portId));
+        }
+        port.addTap(mirror.portMirror);
+        logger.info("Mirroring {} of port {} to {}.", mirrorMode, portId, null == destination ? "the analysis sink" : "port " + destinationPortId);
+        return ResponseEntity.ok(String.format("Mirroring port %d.", portId));
+    }
+
+    /**
+     * @return What the port's mirror has seen so far.
+     */
+    public ResponseEntity get (long portId) {
+        Mirror mirror = mirrors.get(portId);
+        if (null == mirror) {
+            return ResponseEntity.badRequest().body(String.format("Port %d isn't mirrored.", portId));
+        }
+        return ResponseEntity.ok(summary(portId, mirror));
+    }
+
+    public ResponseEntity stop (long portId) {
+        Mirror mirror = mirrors.remove(portId);
+        if (null == mirror) {
+            return ResponseEntity.badRequest().body(String.format("Port %d isn't mirrored.", portId));
+        }
+        mirror.port.removeTap(mirror.portMirror);
+        logger.info("Mirror of port {} stopped: {} dataUnits.", portId, mirror.portMirror.getMirrored());
+        return ResponseEntity.ok(summary(portId, mirror));
+    }
+
+    private static MirrorSummaryDTO summary (long portId, Mirror mirror) {
+        PortMirror portMirror = mirror.portMirror;
+        TrafficStatistics statistics = mirror.statistics;
+        MirrorSummaryDTO summary = new MirrorSummaryDTO();
+        summary.setPortId(portId);
+        summary.setDestinationPortId(null == portMirror.getDestination() ? null : portMirror.getDestination().getId());
+        summary.setMode(portMirror.getMode().name());
+        summary.setMirrored(portMirror.getMirrored());
+        summary.setDropped(portMirror.getDropped());
+        summary.setIngressPackets(statistics.getPackets(PortTap.Direction.INGRESS));
+        summary.setIngressBytes(statistics.getBytes(PortTap.Direction.INGRESS));
+        summary.setEgressPackets(statistics.getPackets(PortTap.Direction.EGRESS));
+        summary.setEgressBytes(statistics.getBytes(PortTap.Direction.EGRESS));
+        summary.setPacketsByType(statistics.getPacketsByType());
+        return summary;
+    }
+
+    private static class Mirror {
+        final Port port;
+        final PortMirror portMirror;
+        final TrafficStatistics statistics;
+
+        Mirror(Port port, PortMirror portMirror, TrafficStatistics statistics) {
+            this.port = port;
+            this.portMirror = portMirror;
+            this.statistics = statistics;
+        }
+    }
+}
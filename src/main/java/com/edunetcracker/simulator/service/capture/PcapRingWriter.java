@@ -0,0 +1,239 @@
+package com.edunetcracker.simulator.service.capture;
+
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import com.edunetcracker.simulator.model.dataUnit.ICMP.ICMP;
+import com.edunetcracker.simulator.model.dataUnit.ip.IP;
+import com.edunetcracker.simulator.model.dataUnit.packet.IcmpHeader;
+import com.edunetcracker.simulator.model.dataUnit.packet.Ipv4Header;
+import com.edunetcracker.simulator.model.dataUnit.packet.Packet;
+import com.edunetcracker.simulator.model.dataUnit.packet.UdpHeader;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes IP packets to a pcap file (LINKTYPE_RAW: every record is an IPv4 packet) of a fixed size.
+ * The file is memory-mapped and is used as a ring of fixed-size record slots, so a write is a copy
+ * of a few dozens of bytes to memory, and the oldest records are overwritten once the file is full.
+ * Only the headers are captured, the original length of a record is the packet's size.
+ *
+ * While capturing, the slots are not a valid pcap file yet: {@link #close()} puts the records
+ * in order, packs them after the file header and cuts the file to their length.
+ */
+public class PcapRingWriter implements Closeable {
+
+    private static final int MAGIC = 0xA1B2C3D4;
+    private static final short VERSION_MAJOR = 2;
+    private static final short VERSION_MINOR = 4;
+    private static final int LINKTYPE_RAW = 101;
+
+    private static final int FILE_HEADER = 24;
+    private static final int RECORD_HEADER = 16;
+    //IPv4 and an ICMP or UDP header
+    private static final int SNAP_LENGTH = Packet.HEADERS_LENGTH;
+    private static final int SLOT = RECORD_HEADER + SNAP_LENGTH;
+
+    //"Use for experimentation and testing" (RFC 3692), for IP packets of no particular protocol
+    private static final int PROTOCOL_UNKNOWN = 253;
+
+    private final FileChannel channel;
+    private MappedByteBuffer map;
+    private final int slots;
+    //Headers of on-heap dataUnits are built here
+    private final ByteBuffer scratch = ByteBuffer.allocate(SNAP_LENGTH);
+
+    @Getter
+    private final Path path;
+    //Records written so far, the overwritten ones included
+    @Getter
+    private long written = 0;
+    //DataUnits that had no IP header to capture
+    @Getter
+    private long skipped = 0;
+
+    /**
+     * @param size Size of the file, bytes. At least one record has to fit.
+     */
+    public PcapRingWriter(Path path, long size) throws IOException {
+        if (size < FILE_HEADER + SLOT || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Capture size must be between %d and %d bytes.",
+                    FILE_HEADER + SLOT, Integer.MAX_VALUE));
+        }
+        this.path = path;
+        slots = (int) ((size - FILE_HEADER) / SLOT);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER + (long) slots * SLOT);
+        map.putInt(0, MAGIC);
+        map.putShort(4, VERSION_MAJOR);
+        map.putShort(6, VERSION_MINOR);
+        //Time zone offset and timestamp accuracy
+        map.putInt(8, 0);
+        map.putInt(12, 0);
+        map.putInt(16, SNAP_LENGTH);
+        map.putInt(20, LINKTYPE_RAW);
+    }
+
+    /**
+     * @param time Simulated time, ms.
+     */
+    public synchronized void write(DataUnit dataUnit, long time) {
+        if (null == map) {
+            return;
+        }
+        int captured = encode(dataUnit);
+        if (0 == captured) {
+            ++skipped;
+            return;
+        }
+        int at = FILE_HEADER + (int) (written % slots) * SLOT;
+        map.putInt(at, (int) (time / 1000));
+        map.putInt(at + 4, (int) (time % 1000) * 1000);
+        map.putInt(at + 8, captured);
+        map.putInt(at + 12, Math.max(captured, dataUnit.getSize()));
+        for (int i = 0; i < captured; i++) {
+            map.put(at + RECORD_HEADER + i, scratch.get(i));
+        }
+        ++written;
+    }
+
+    /**
+     * @return Number of records in the file, the overwritten ones not counted.
+     */
+    public synchronized long getRecords() {
+        return Math.min(written, slots);
+    }
+
+    /**
+     * Puts the headers of the dataUnit to the scratch buffer.
+     * @return Number of bytes to capture, 0 if the dataUnit isn't an IP packet.
+     */
+    private int encode(DataUnit dataUnit) {
+        if (dataUnit instanceof Packet) {
+            Packet packet = (Packet) dataUnit;
+            ByteBuffer buffer = packet.getBuffer();
+            int length = Ipv4Header.LENGTH + transportHeaderLength(packet.getProtocol());
+            for (int i = 0; i < length; i++) {
+                scratch.put(i, buffer.get(packet.getOffset() + i));
+            }
+            return length;
+        }
+        if (dataUnit instanceof ICMP) {
+            //The kind of the message isn't known, so only its IP header is captured
+            IP ipHeader = ((ICMP) dataUnit).getIpHeader();
+            if (null == ipHeader) {
+                return 0;
+            }
+            Ipv4Header.init(scratch, 0, Ipv4Header.PROTOCOL_ICMP, addressOf(ipHeader.getSourceIp()),
+                    addressOf(ipHeader.getDestinationIp()), dataUnit.getSize());
+            return Ipv4Header.LENGTH;
+        }
+        if (!(dataUnit instanceof IP)) {
+            return 0;
+        }
+        IP ip = (IP) dataUnit;
+        int source = addressOf(ip.getSourceIp());
+        int destination = addressOf(ip.getDestinationIp());
+        IP.EncapsulatedType type = ip.getEncapsulatedType();
+        int length;
+        if (IP.EncapsulatedType.PING == type) {
+            Ipv4Header.init(scratch, 0, Ipv4Header.PROTOCOL_ICMP, source, destination, ip.getSize());
+            IcmpHeader.init(scratch, Ipv4Header.LENGTH, IcmpHeader.ECHO_REQUEST, 0, 0);
+            length = Ipv4Header.LENGTH + IcmpHeader.LENGTH;
+        } else if (IP.EncapsulatedType.UDP == type) {
+            Ipv4Header.init(scratch, 0, Ipv4Header.PROTOCOL_UDP, source, destination, ip.getSize());
+            UdpHeader.init(scratch, Ipv4Header.LENGTH, 0, 0, Math.max(UdpHeader.LENGTH, ip.getSize() - Ipv4Header.LENGTH));
+            length = Ipv4Header.LENGTH + UdpHeader.LENGTH;
+        } else {
+            int protocol = (IP.EncapsulatedType.TCP == type) ? Ipv4Header.PROTOCOL_TCP :
+                           (IP.EncapsulatedType.ICMP == type) ? Ipv4Header.PROTOCOL_ICMP : PROTOCOL_UNKNOWN;
+            Ipv4Header.init(scratch, 0, protocol, source, destination, ip.getSize());
+            length = Ipv4Header.LENGTH;
+        }
+        if (0 != ip.getDscp()) {
+            Ipv4Header.setTypeOfService(scratch, 0, (ip.getDscp() & 0x3F) << 2);
+            Ipv4Header.updateChecksum(scratch, 0);
+        }
+        return length;
+    }
+
+    //Moves the slot at the given index to the first one, keeping their order, each slot once
+    private void rotateSlots(int by, byte[] held, byte[] moved) {
+        int cycles = gcd(slots, by);
+        for (int start = 0; start < cycles; start++) {
+            read(FILE_HEADER + start * SLOT, held, SLOT);
+            int to = start;
+            while (true) {
+                int from = (to + by) % slots;
+                if (from == start) {
+                    break;
+                }
+                read(FILE_HEADER + from * SLOT, moved, SLOT);
+                write(FILE_HEADER + to * SLOT, moved, SLOT);
+                to = from;
+            }
+            write(FILE_HEADER + to * SLOT, held, SLOT);
+        }
+    }
+
+    private void read(int at, byte[] into, int length) {
+        ByteBuffer view = map.duplicate();
+        view.position(at);
+        view.get(into, 0, length);
+    }
+
+    private void write(int at, byte[] from, int length) {
+        ByteBuffer view = map.duplicate();
+        view.position(at);
+        view.put(from, 0, length);
+    }
+
+    private static int gcd(int a, int b) {
+        return (0 == b) ? a : gcd(b, a % b);
+    }
+
+    private static int transportHeaderLength(int protocol) {
+        return (Ipv4Header.PROTOCOL_UDP == protocol) ? UdpHeader.LENGTH :
+               (Ipv4Header.PROTOCOL_ICMP == protocol) ? IcmpHeader.LENGTH : 0;
+    }
+
+    private static int addressOf(Integer ip) {
+        return (null == ip) ? 0 : ip;
+    }
+
+    /**
+     * Puts the records in order right after the file header, and cuts the file to their length.
+     * Is done in place, through a buffer of a slot, so the size of the capture doesn't matter.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (null == map) {
+            return;
+        }
+        int records = (int) getRecords();
+        int first = (written > slots) ? (int) (written % slots) : 0;
+        byte[] record = new byte[SLOT];
+        if (0 != first) {
+            rotateSlots(first, record, new byte[SLOT]);
+        }
+        //A record never grows, so it's never written past the slots not read yet
+        int length = 0;
+        for (int k = 0; k < records; k++) {
+            int at = FILE_HEADER + k * SLOT;
+            int recordLength = RECORD_HEADER + map.getInt(at + 8);
+            read(at, record, recordLength);
+            write(FILE_HEADER + length, record, recordLength);
+            length += recordLength;
+        }
+        map.force();
+        map = null;
+        channel.truncate(FILE_HEADER + length);
+        channel.close();
+    }
+}
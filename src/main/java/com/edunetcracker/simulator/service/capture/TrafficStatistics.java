@@ -0,0 +1,52 @@
+package com.edunetcracker.simulator.service.capture;
+
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import com.edunetcracker.simulator.model.port.Port;
+import com.edunetcracker.simulator.model.port.PortTap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Analysis sink of a mirror: counts dataUnits and bytes per direction and per dataUnit type.
+ * Counts into plain arrays, so that it costs next to nothing per dataUnit;
+ * only the owner of the mirrored port writes them.
+ */
+class TrafficStatistics implements PortTap {
+
+    private static final DataUnit.Type[] TYPES = DataUnit.Type.values();
+
+    private final long[] packets = new long[Direction.values().length];
+    private final long[] bytes = new long[Direction.values().length];
+    private final long[] packetsByType = new long[TYPES.length];
+
+    @Override
+    public void tap(Port port, DataUnit dataUnit, Direction direction, long time) {
+        ++packets[direction.ordinal()];
+        bytes[direction.ordinal()] += dataUnit.getSize();
+        DataUnit.Type type = dataUnit.getType();
+        ++packetsByType[(null == type) ? 0 : type.ordinal()];
+    }
+
+    long getPackets(Direction direction) {
+        return packets[direction.ordinal()];
+    }
+
+    long getBytes(Direction direction) {
+        return bytes[direction.ordinal()];
+    }
+
+    /**
+     * @return Number of dataUnits of every type seen at least once.
+     */
+    Map<String, Long> getPacketsByType() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (DataUnit.Type type : TYPES) {
+            long count = packetsByType[type.ordinal()];
+            if (count > 0) {
+                result.put(type.name(), count);
+            }
+        }
+        return result;
+    }
+}
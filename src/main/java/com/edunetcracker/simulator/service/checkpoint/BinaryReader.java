@@ -0,0 +1,111 @@
+package com.edunetcracker.simulator.service.checkpoint;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffered reader of what {@link BinaryWriter} wrote.
+ */
+public class BinaryReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    public BinaryReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer.limit(0);
+    }
+
+    public byte readByte() throws IOException {
+        ensure(1);
+        return buffer.get();
+    }
+
+    public boolean readBoolean() throws IOException {
+        return 0 != readByte();
+    }
+
+    public char readChar() throws IOException {
+        ensure(2);
+        return buffer.getChar();
+    }
+
+    public int readInt() throws IOException {
+        ensure(4);
+        return buffer.getInt();
+    }
+
+    public long readLong() throws IOException {
+        ensure(8);
+        return buffer.getLong();
+    }
+
+    public Integer readNullableInt() throws IOException {
+        return readBoolean() ? readInt() : null;
+    }
+
+    public <E extends Enum<E>> E readEnum(E[] values) throws IOException {
+        int ordinal = readByte();
+        if (ordinal < 0) {
+            return null;
+        }
+        if (ordinal >= values.length) {
+            throw new IOException(String.format("Unknown enum ordinal %d.", ordinal));
+        }
+        return values[ordinal];
+    }
+
+    public String readString() throws IOException {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            if (!buffer.hasRemaining()) {
+                fill(1);
+            }
+            int chunk = Math.min(buffer.remaining(), length - offset);
+            buffer.get(bytes, offset, chunk);
+            offset += chunk;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Whether there is nothing more to read.
+     */
+    public boolean isAtEnd() throws IOException {
+        if (buffer.hasRemaining()) {
+            return false;
+        }
+        buffer.clear();
+        int read;
+        while (0 == (read = channel.read(buffer))) {
+            Thread.yield();
+        }
+        buffer.flip();
+        return read < 0;
+    }
+
+        private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            fill(bytes);
+        }
+    }
+
+    private void fill(int bytes) throws IOException {
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of the checkpoint.");
+            }
+        }
+        buffer.flip();
+    }
+}
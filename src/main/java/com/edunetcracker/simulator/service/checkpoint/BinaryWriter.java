@@ -0,0 +1,108 @@
+package com.edunetcracker.simulator.service.checkpoint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffered big-endian writer on top of a NIO channel.
+ * Nothing reaches the channel until the buffer is full or {@link #flush()} is called.
+ */
+public class BinaryWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long written = 0;
+
+    public BinaryWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    public void writeByte(int value) throws IOException {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        writeByte(value ? 1 : 0);
+    }
+
+    public void writeChar(char value) throws IOException {
+        ensure(2);
+        buffer.putChar(value);
+    }
+
+    public void writeInt(int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    public void writeLong(long value) throws IOException {
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    /**
+     * Writes a presence flag, followed by the value if there is one.
+     */
+    public void writeNullableInt(Integer value) throws IOException {
+        writeBoolean(null != value);
+        if (null != value) {
+            writeInt(value);
+        }
+    }
+
+    /**
+     * Writes an enum constant as its ordinal, -1 for null.
+     */
+    public void writeEnum(Enum<?> value) throws IOException {
+        writeByte(null == value ? -1 : value.ordinal());
+    }
+
+    /**
+     * Writes UTF-8 bytes prefixed with their length, -1 for null.
+     */
+    public void writeString(String value) throws IOException {
+        if (null == value) {
+            writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    /**
+     * Pushes everything buffered to the channel.
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return Number of bytes that reached the channel.
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package com.edunetcracker.simulator.service.checkpoint;
+
+import com.edunetcracker.simulator.model.DTO.CheckpointSummaryDTO;
+import com.edunetcracker.simulator.model.Link;
+import com.edunetcracker.simulator.model.context.GeneratedConfig;
+import com.edunetcracker.simulator.model.context.NEContext;
+import com.edunetcracker.simulator.model.context.PingContext;
+import com.edunetcracker.simulator.model.context.TrafficContext;
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import com.edunetcracker.simulator.model.element.Router;
+import com.edunetcracker.simulator.model.port.RouterPort;
+import com.edunetcracker.simulator.model.queue.DoubleBufferedQueue;
+import com.edunetcracker.simulator.model.routing.routingTableEntry.RoutingTableEntry;
+import com.edunetcracker.simulator.service.LinkService;
+import com.edunetcracker.simulator.service.RouterService;
+import com.edunetcracker.simulator.service.simulation.SceneRuntime;
+import com.edunetcracker.simulator.service.simulation.SimulationEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+
+/**
+ * Writes the runtime state of a loaded scene to a compact binary checkpoint and reads it back:
+ * the DataUnits in flight in every link queue, link up/down state, and each router's
+ * contexts and running routes. Persistent configuration stays in the database,
+ * so a checkpoint can only be restored over the same (loaded) scene.
+ *
+ * Layout: header (magic, version, simulated time, tick length), then links, then routers,
+ * each section being a count followed by the records. All numbers are big-endian.
+ */
+@Service
+public class CheckpointService {
+    private static Logger logger = LoggerFactory.getLogger(CheckpointService.class);
+
+    //"NSCP"
+    private static final int MAGIC = 0x4E534350;
+    private static final short VERSION = 4;
+
+    private static final byte PING_CONTEXT = 1;
+    private static final byte TRAFFIC_CONTEXT = 2;
+
+    private final RouterService routerService;
+    private final LinkService linkService;
+
+    public CheckpointService(RouterService routerService, LinkService linkService) {
+        this.routerService = routerService;
+        this.linkService = linkService;
+    }
+
+    /**
+     * Writes the checkpoint of the runtime's scene. The engine must be stopped, so that nothing changes meanwhile.
+     */
+    public CheckpointSummaryDTO write(WritableByteChannel channel, SceneRuntime runtime) throws IOException {
+        SimulationEngine engine = runtime.getEngine();
+        CheckpointSummaryDTO summary = new CheckpointSummaryDTO();
+        BinaryWriter out = new BinaryWriter(channel);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(engine.getNow());
+        out.writeLong(engine.getTickLength());
+        summary.setSimulatedTime(engine.getNow());
+
+        List<Link> links = linksOf(runtime);
+        out.writeInt(links.size());
+        for (Link link : links) {
+            out.writeLong(link.getId());
+            out.writeBoolean(link.isUp());
+            //Link's two directions are connA.out and connZ.out, connection's "in" is the opposite "out"
+            summary.setDataUnits(summary.getDataUnits()
+                    + writeQueue(out, null == link.getConnA() ? null : link.getConnA().getOut())
+                    + writeQueue(out, null == link.getConnZ() ? null : link.getConnZ().getOut()));
+        }
+        summary.setLinks(links.size());
+
+        List<Router> routers = routersOf(runtime);
+        out.writeInt(routers.size());
+        for (Router router : routers) {
+            out.writeLong(router.getIdNE());
+
+            Set<RoutingTableEntry> routes = (null == router.getRoutingTable()) ? null
+                    : router.getRoutingTable().getRunningRoutes();
+            out.writeInt(null == routes ? 0 : routes.size());
+            if (null != routes) {
+                for (RoutingTableEntry route : routes) {
+                    writeRoute(out, route);
+                }
+                summary.setRoutes(summary.getRoutes() + routes.size());
+            }
+
+            List<NEContext> contexts = new ArrayList<>();
+            for (NEContext context : router.getContexts()) {
+                if (context instanceof PingContext || context instanceof TrafficContext) {
+                    contexts.add(context);
+                } else {
+                    logger.warn("Context {} of router {} can't be checkpointed and is skipped.",
+                            context.getId(), router.getIdNE());
+                }
+            }
+            out.writeInt(contexts.size());
+            for (NEContext context : contexts) {
+                writeContext(out, context);
+            }
+            summary.setContexts(summary.getContexts() + contexts.size());
+
+            //DataUnits the egress schedulers hold back from the links
+            List<RouterPort> scheduled = new ArrayList<>();
+            for (RouterPort port : router.getPorts()) {
+                if (null != port.getEgressScheduler() && !port.getEgressScheduler().isEmpty()) {
+                    scheduled.add(port);
+                }
+            }
+            out.writeInt(scheduled.size());
+            for (RouterPort port : scheduled) {
+                out.writeLong(port.getId());
+                List<DoubleBufferedQueue.Timed<DataUnit>> items = port.getEgressScheduler().snapshot();
+                out.writeInt(items.size());
+                for (DoubleBufferedQueue.Timed<DataUnit> item : items) {
+                    out.writeLong(item.getStamp());
+                    DataUnitCodec.write(out, item.getItem());
+                }
+                summary.setDataUnits(summary.getDataUnits() + items.size());
+            }
+        }
+        summary.setRouters(routers.size());
+
+        out.flush();
+        summary.setBytes(out.getWritten());
+        return summary;
+    }
+
+    /**
+     * Reads the checkpoint over the runtime's loaded scene and moves the engine's clock to its time.
+     * Links and routers that are not loaded any more are skipped. The engine must be stopped.
+     * The whole checkpoint is read before anything is restored, so a broken one leaves the scene as it was.
+     */
+    public CheckpointSummaryDTO read(ReadableByteChannel channel, SceneRuntime runtime) throws IOException {
+        Checkpoint checkpoint = new Checkpoint();
+        try {
+            parse(new BinaryReader(channel), runtime, checkpoint);
+        } catch (IOException | RuntimeException e) {
+            checkpoint.release();
+            throw e;
+        }
+        return apply(checkpoint, runtime);
+    }
+
+    private void parse(BinaryReader in, SceneRuntime runtime, Checkpoint checkpoint) throws IOException {
+        if (MAGIC != in.readInt()) {
+            throw new IOException("Not a simulation checkpoint.");
+        }
+        int version = in.readInt();
+        if (VERSION != version) {
+            throw new IOException(String.format("Unsupported checkpoint version %d.", version));
+        }
+        checkpoint.time = in.readLong();
+        checkpoint.tickLength = in.readLong();
+        if (checkpoint.tickLength <= 0) {
+            throw new IOException(String.format("Bad tick length %d.", checkpoint.tickLength));
+        }
+
+        Map<Long, Link> linksById = new HashMap<>();
+        for (Link link : linksOf(runtime)) {
+            linksById.put(link.getId(), link);
+        }
+        int linkCount = readCount(in);
+        for (int i = 0; i < linkCount; i++) {
+            LinkState state = new LinkState();
+            checkpoint.links.add(state);
+            state.link = linksById.get(in.readLong());
+            state.up = in.readBoolean();
+            //Link's two directions are connA.out and connZ.out
+            readQueue(in, state.queueA);
+            readQueue(in, state.queueZ);
+        }
+
+        Map<Long, Router> routersById = new HashMap<>();
+        for (Router router : routersOf(runtime)) {
+            routersById.put(router.getIdNE(), router);
+        }
+        int routerCount = readCount(in);
+        for (int i = 0; i < routerCount; i++) {
+            RouterState state = new RouterState();
+            checkpoint.routers.add(state);
+            state.router = routersById.get(in.readLong());
+
+            int routeCount = readCount(in);
+            for (int j = 0; j < routeCount; j++) {
+                state.routes.add(readRoute(in));
+            }
+            int contextCount = readCount(in);
+            for (int j = 0; j < contextCount; j++) {
+                state.contexts.add(readContext(in));
+            }
+            int scheduledCount = readCount(in);
+            for (int j = 0; j < scheduledCount; j++) {
+                long portId = in.readLong();
+                int count = readCount(in);
+                if (state.egress.containsKey(portId)) {
+                    throw new IOException(String.format("Port %d is listed twice.", portId));
+                }
+                List<DoubleBufferedQueue.Timed<DataUnit>> items = new ArrayList<>();
+                state.egress.put(portId, items);
+                for (int k = 0; k < count; k++) {
+                    long stamp = in.readLong();
+                    DataUnit dataUnit = DataUnitCodec.read(in);
+                    if (null != dataUnit) {
+                        items.add(new DoubleBufferedQueue.Timed<>(dataUnit, stamp, DoubleBufferedQueue.NO_TIME));
+                    }
+                }
+            }
+        }
+        if (!in.isAtEnd()) {
+            throw new IOException("Checkpoint has data after its end.");
+        }
+    }
+
+    private CheckpointSummaryDTO apply(Checkpoint checkpoint, SceneRuntime runtime) {
+        SimulationEngine engine = runtime.getEngine();
+        CheckpointSummaryDTO summary = new CheckpointSummaryDTO();
+        summary.setSimulatedTime(checkpoint.time);
+
+        for (LinkState state : checkpoint.links) {
+            summary.setDataUnits(summary.getDataUnits() + state.queueA.size() + state.queueZ.size());
+            Link link = state.link;
+            if (null == link) {
+                state.release();
+                continue;
+            }
+            //A link that goes down discards its queues, so the state goes first
+            if (state.up) {
+                link.start();
+            } else {
+                link.stop();
+            }
+            restoreQueue(link.getConnA(), state.queueA);
+            restoreQueue(link.getConnZ(), state.queueZ);
+            summary.setLinks(summary.getLinks() + 1);
+        }
+
+        List<Router> restored = new ArrayList<>();
+        for (RouterState state : checkpoint.routers) {
+            for (List<DoubleBufferedQueue.Timed<DataUnit>> items : state.egress.values()) {
+                summary.setDataUnits(summary.getDataUnits() + items.size());
+            }
+            Router router = state.router;
+            if (null == router) {
+                state.release();
+                continue;
+            }
+            for (RouterPort port : router.getPorts()) {
+                List<DoubleBufferedQueue.Timed<DataUnit>> items = state.egress.remove(port.getId());
+                port.restoreEgress(null == items ? Collections.emptyList() : items);
+            }
+            //Scheduled at ports the router doesn't have any more
+            state.release();
+            if (null != router.getRoutingTable()) {
+                router.getRoutingTable().setRunningRoutes(state.routes);
+            }
+            router.getContexts().clear();
+            router.getContexts().addAll(state.contexts);
+            restored.add(router);
+            summary.setRoutes(summary.getRoutes() + state.routes.size());
+            summary.setContexts(summary.getContexts() + state.contexts.size());
+        }
+        summary.setRouters(restored.size());
+
+        engine.setTickLength(checkpoint.tickLength);
+        engine.restoreClock(checkpoint.time);
+        //Restored queues and contexts are work the elements don't know about yet
+        for (Router router : restored) {
+            router.wake();
+        }
+        for (LinkState state : checkpoint.links) {
+            if (null != state.link) {
+                wakeOwner(state.link.getConnA());
+                wakeOwner(state.link.getConnZ());
+            }
+        }
+        return summary;
+    }
+
+    private List<Link> linksOf(SceneRuntime runtime) {
+        List<Link> links = new ArrayList<>();
+        for (Link link : linkService.getLoadedLinks()) {
+            if (runtime.owns(link)) {
+                links.add(link);
+            }
+        }
+        return links;
+    }
+
+    private List<Router> routersOf(SceneRuntime runtime) {
+        List<Router> routers = new ArrayList<>();
+        for (Router router : routerService.getLoadedRouters()) {
+            if (runtime.owns(router)) {
+                routers.add(router);
+            }
+        }
+        return routers;
+    }
+
+    private static void wakeOwner(Link.Connection connection) {
+        if (null != connection && null != connection.getPort() && null != connection.getPort().checkForOwner()) {
+            connection.getPort().checkForOwner().wake();
+        }
+    }
+
+    private static long writeQueue(BinaryWriter out, DoubleBufferedQueue<DataUnit> queue) throws IOException {
+        if (null == queue) {
+            out.writeInt(0);
+            out.writeInt(0);
+            return 0;
+        }
+        long count = 0;
+        //Whether a DataUnit is already readable or still on the way is part of the state
+        for (boolean readable : new boolean[] {true, false}) {
+            List<DoubleBufferedQueue.Timed<DataUnit>> items = queue.snapshot(readable);
+            out.writeInt(items.size());
+            for (DoubleBufferedQueue.Timed<DataUnit> item : items) {
+                out.writeLong(item.getStamp());
+                out.writeLong(item.getArrival());
+                DataUnitCodec.write(out, item.getItem());
+            }
+            count += items.size();
+        }
+        return count;
+    }
+
+    private static void readQueue(BinaryReader in, QueueState queue) throws IOException {
+        readDataUnits(in, queue.readable);
+        readDataUnits(in, queue.pending);
+    }
+
+    private static void readDataUnits(BinaryReader in, List<DoubleBufferedQueue.Timed<DataUnit>> dataUnits) throws IOException {
+        int count = readCount(in);
+        for (int i = 0; i < count; i++) {
+            long stamp = in.readLong();
+            long arrival = in.readLong();
+            DataUnit dataUnit = DataUnitCodec.read(in);
+            if (null != dataUnit) {
+                dataUnits.add(new DoubleBufferedQueue.Timed<>(dataUnit, stamp, arrival));
+            }
+        }
+    }
+
+    private static int readCount(BinaryReader in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException(String.format("Bad record count %d.", count));
+        }
+        return count;
+    }
+
+    private static void restoreQueue(Link.Connection connection, QueueState queue) {
+        if (null == connection || null == connection.getOut()) {
+            queue.release();
+            return;
+        }
+        connection.getOut().restore(queue.readable, queue.pending);
+    }
+
+    private static void releaseAll(Collection<DoubleBufferedQueue.Timed<DataUnit>> dataUnits) {
+        for (DoubleBufferedQueue.Timed<DataUnit> dataUnit : dataUnits) {
+            if (null != dataUnit.getItem()) {
+                dataUnit.getItem().release();
+            }
+        }
+        dataUnits.clear();
+    }
+
+    private static void writeRoute(BinaryWriter out, RoutingTableEntry route) throws IOException {
+        out.writeLong(route.getId());
+        out.writeInt(route.getIp());
+        out.writeInt(route.getMask());
+        out.writeInt(route.getNextHop());
+        out.writeChar(route.getRouteSource());
+        out.writeLong(route.getAdministrativeDistance());
+        out.writeLong(route.getMetric());
+    }
+
+    private static RoutingTableEntry readRoute(BinaryReader in) throws IOException {
+        RoutingTableEntry route = new RoutingTableEntry();
+        route.setId(in.readLong());
+        route.setIp(in.readInt());
+        route.setMask(in.readInt());
+        route.setNextHop(in.readInt());
+        route.setRouteSource(in.readChar());
+        route.setAdministrativeDistance(in.readLong());
+        route.setMetric(in.readLong());
+        return route;
+    }
+
+    private static void writeContext(BinaryWriter out, NEContext context) throws IOException {
+        if (context instanceof PingContext) {
+            PingContext ping = (PingContext) context;
+            out.writeByte(PING_CONTEXT);
+            out.writeLong(ping.getId());
+            out.writeBoolean(ping.isAlive());
+            out.writeNullableInt(ping.getSourceIp());
+            out.writeNullableInt(ping.getDestinationIp());
+            out.writeInt(ping.getCountdown());
+        } else {
+            TrafficContext traffic = (TrafficContext) context;
+            GeneratedConfig config = traffic.getTrafficConfig();
+            out.writeByte(TRAFFIC_CONTEXT);
+            out.writeLong(config.getId());
+            out.writeBoolean(config.isAlive());
+            out.writeNullableInt(config.getDestinationIP());
+            out.writeLong(config.getTimeBetPack());
+            out.writeEnum(config.getTrafficType());
+            out.writeEnum(config.getFlowMode());
+            out.writeLong(traffic.getSend());
+            out.writeLong(traffic.getWithheld());
+        }
+    }
+
+    private static NEContext readContext(BinaryReader in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case PING_CONTEXT:
+                PingContext ping = new PingContext();
+                ping.setId(in.readLong());
+                ping.setAlive(in.readBoolean());
+                ping.setSourceIp(in.readNullableInt());
+                ping.setDestinationIp(in.readNullableInt());
+                ping.setCountdown(in.readInt());
+                return ping;
+            case TRAFFIC_CONTEXT:
+                GeneratedConfig config = new GeneratedConfig(in.readLong(), in.readBoolean(), in.readNullableInt(),
+                        in.readLong(), in.readEnum(TrafficContext.TrafficType.values()),
+                        in.readEnum(TrafficContext.FlowMode.values()));
+                TrafficContext traffic = new TrafficContext(config);
+                traffic.setSend(in.readLong());
+                traffic.setWithheld(in.readLong());
+                return traffic;
+            default:
+                throw new IOException(String.format("Unknown context tag %d.", tag));
+        }
+    }
+
+    //Checkpoint as read, before any of it is applied to the scene
+
+    private static class Checkpoint {
+        long time;
+        long tickLength;
+        final List<LinkState> links = new ArrayList<>();
+        final List<RouterState> routers = new ArrayList<>();
+
+        void release() {
+            for (LinkState link : links) {
+                link.release();
+            }
+            for (RouterState router : routers) {
+                router.release();
+            }
+        }
+    }
+
+    private static class QueueState {
+        final List<DoubleBufferedQueue.Timed<DataUnit>> readable = new ArrayList<>();
+        final List<DoubleBufferedQueue.Timed<DataUnit>> pending = new ArrayList<>();
+
+        int size() {
+            return readable.size() + pending.size();
+        }
+
+        void release() {
+            releaseAll(readable);
+            releaseAll(pending);
+        }
+    }
+
+    private static class LinkState {
+        //Null if the link isn't loaded any more
+        Link link;
+        boolean up;
+        final QueueState queueA = new QueueState();
+        final QueueState queueZ = new QueueState();
+
+        void release() {
+            queueA.release();
+            queueZ.release();
+        }
+    }
+
+    private static class RouterState {
+        //Null if the router isn't loaded any more
+        Router router;
+        final Set<RoutingTableEntry> routes = new HashSet<>();
+        final List<NEContext> contexts = new ArrayList<>();
+        final Map<Long, List<DoubleBufferedQueue.Timed<DataUnit>>> egress = new HashMap<>();
+
+        void release() {
+            for (List<DoubleBufferedQueue.Timed<DataUnit>> items : egress.values()) {
+                releaseAll(items);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.edunetcracker.simulator.service.checkpoint;
+
+import com.edunetcracker.simulator.model.context.TrafficContext;
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import com.edunetcracker.simulator.model.dataUnit.IDataUnit;
+import com.edunetcracker.simulator.model.dataUnit.ICMP.ICMP;
+import com.edunetcracker.simulator.model.dataUnit.ip.IP;
+import com.edunetcracker.simulator.model.dataUnit.packet.Packet;
+
+import java.io.IOException;
+
+/**
+ * Binary form of DataUnits: a tag of the class, common fields, fields of the class,
+ * then the encapsulated DataUnit (if any) the same way.
+ */
+public class DataUnitCodec {
+    private static final byte NULL = 0;
+    private static final byte GENERIC = 1;
+    private static final byte IP_PACKET = 2;
+    private static final byte ICMP_PACKET = 3;
+    //Off-heap packet, its headers are written as they are
+    private static final byte POOLED_PACKET = 4;
+
+    public static void write(BinaryWriter out, IDataUnit iDataUnit) throws IOException {
+        if (!(iDataUnit instanceof DataUnit)) {
+            out.writeByte(NULL);
+            return;
+        }
+        DataUnit dataUnit = (DataUnit) iDataUnit;
+        if (dataUnit instanceof Packet) {
+            out.writeByte(POOLED_PACKET);
+            byte[] headers = new byte[Packet.HEADERS_LENGTH];
+            ((Packet) dataUnit).copyHeaders(headers);
+            for (byte value : headers) {
+                out.writeByte(value);
+            }
+            return;
+        }
+        if (dataUnit instanceof IP) {
+            out.writeByte(IP_PACKET);
+        } else if (dataUnit instanceof ICMP) {
+            out.writeByte(ICMP_PACKET);
+        } else {
+            out.writeByte(GENERIC);
+        }
+        out.writeEnum(dataUnit.getType());
+        out.writeString(dataUnit.getExtraData());
+        out.writeInt(dataUnit.getSize());
+
+        if (dataUnit instanceof IP) {
+            IP ip = (IP) dataUnit;
+            out.writeNullableInt(ip.getSourceIp());
+            out.writeNullableInt(ip.getDestinationIp());
+            out.writeEnum(ip.getEncapsulatedType());
+            out.writeByte(ip.getDscp());
+        } else if (dataUnit instanceof ICMP) {
+            write(out, ((ICMP) dataUnit).getIpHeader());
+        }
+        write(out, dataUnit.getEncapsulated().orElse(null));
+    }
+
+    public static DataUnit read(BinaryReader in) throws IOException {
+        byte tag = in.readByte();
+        DataUnit dataUnit;
+        switch (tag) {
+            case NULL:
+                return null;
+            case GENERIC:
+                dataUnit = TrafficContext.contextBuilder(DataUnit.Type.None, null);
+                break;
+            case IP_PACKET:
+                dataUnit = new IP();
+                break;
+            case ICMP_PACKET:
+                dataUnit = new ICMP();
+                break;
+            case POOLED_PACKET:
+                byte[] headers = new byte[Packet.HEADERS_LENGTH];
+                for (int i = 0; i < headers.length; i++) {
+                    headers[i] = in.readByte();
+                }
+                return Packet.fromHeaders(headers);
+            default:
+                throw new IOException(String.format("Unknown DataUnit tag %d.", tag));
+        }
+        dataUnit.setType(in.readEnum(DataUnit.Type.values()));
+        dataUnit.setExtraData(in.readString());
+        dataUnit.setSize(in.readInt());
+
+        if (dataUnit instanceof IP) {
+            IP ip = (IP) dataUnit;
+            ip.setSourceIp(in.readNullableInt());
+            ip.setDestinationIp(in.readNullableInt());
+            ip.setEncapsulatedType(in.readEnum(IP.EncapsulatedType.values()));
+            ip.setDscp(in.readByte());
+        } else if (dataUnit instanceof ICMP) {
+            DataUnit ipHeader = read(in);
+            if (ipHeader instanceof IP) {
+                ((ICMP) dataUnit).setIpHeader((IP) ipHeader);
+            }
+        }
+        DataUnit encapsulated = read(in);
+        if (null != encapsulated) {
+            dataUnit.encapsulate(encapsulated);
+        }
+        return dataUnit;
+    }
+}
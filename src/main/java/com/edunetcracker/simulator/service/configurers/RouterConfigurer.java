@@ -1,5 +1,6 @@
 package com.edunetcracker.simulator.service.configurers;
 
+import com.edunetcracker.simulator.model.element.ProcessingProfile;
 import com.edunetcracker.simulator.model.element.Router;
 import com.edunetcracker.simulator.model.port.RouterPort;
 import com.edunetcracker.simulator.service.NetworkService;
@@ -31,6 +32,19 @@ public class RouterConfigurer {
         giveLazyPortsTo(router);
     }
 
+    /**
+     * Sets forwarding rate and phase budgets of the router's model (physConfigType).
+     * @param router Router to configure.
+     */
+    public void giveProcessingProfileTo (Router router) {
+        assert router != null;
+
+        ProcessingProfile profile = ProcessingProfile.forPhysConfigType(router.getPhysConfigType());
+        router.applyProfile(profile);
+        logger.info("Router with id \"{}\" processes up to {} packets per second.",
+                router.getIdNE(), profile.getForwardingRate());
+    }
+
     /**
      * Gives 4 ports to router.
      * @param router Router to give ports to.
@@ -1,21 +1,20 @@
 package com.edunetcracker.simulator.service.dataUnit.IP;
 
-import com.edunetcracker.simulator.model.dataUnit.DataUnit;
 import com.edunetcracker.simulator.model.dataUnit.ip.IP;
+import com.edunetcracker.simulator.model.dataUnit.packet.Packet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class IpBuilder {
     private static Logger logger = LoggerFactory.getLogger(IpBuilder.class);
 
-    public static IP ping (Integer sourceIp, Integer destinationIp) {
-        IP newPacket = new IP();
-        newPacket.setSourceIp(sourceIp);
-        newPacket.setDestinationIp(destinationIp);
-        newPacket.setEncapsulatedType(IP.EncapsulatedType.PING);
-        newPacket.setType(DataUnit.Type.IP);
+    //Payload of a ping, as the ping utility sends by default
+    public static final int PING_PAYLOAD = 56;
 
-        return newPacket;
+    public static IP ping (Integer sourceIp, Integer destinationIp) {
+        return Packet.echoRequest(null == sourceIp ? 0 : sourceIp,
+                                  null == destinationIp ? 0 : destinationIp,
+                                  0, 0, PING_PAYLOAD);
     }
 
     /**
@@ -0,0 +1,500 @@
+package com.edunetcracker.simulator.service.distributed;
+
+import com.edunetcracker.simulator.model.Link;
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import com.edunetcracker.simulator.model.element.NetworkElement;
+import com.edunetcracker.simulator.model.queue.DoubleBufferedQueue;
+import com.edunetcracker.simulator.service.checkpoint.BinaryReader;
+import com.edunetcracker.simulator.service.checkpoint.BinaryWriter;
+import com.edunetcracker.simulator.service.checkpoint.DataUnitCodec;
+import com.edunetcracker.simulator.service.simulation.PartitionedSimulation;
+import com.edunetcracker.simulator.service.simulation.ScenePartitioner;
+import com.edunetcracker.simulator.service.simulation.SimulationEngine;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * One node of a scene simulated by several processes.
+ * Every node loads the whole scene, splits it the same way (see {@link ScenePartitioner})
+ * and ticks only its own part. Traffic on links to the elements of other nodes is
+ * collected during a time window and sent to them in one batch at the end of it.
+ *
+ * Time is synchronized conservatively, the same way {@link PartitionedSimulation} does it:
+ * all the nodes run windows no longer than the lookahead, and exchange the traffic
+ * and the time of their next event at the barrier between windows. Every node then
+ * computes the same start of the next window, so idle periods are skipped by all of them.
+ */
+public class DistributedSimulation {
+    private static Logger logger = LoggerFactory.getLogger(DistributedSimulation.class);
+
+    //"NSDS"
+    private static final int MAGIC = 0x4E534453;
+    private static final int VERSION = 3;
+    private static final long CONNECT_TIMEOUT = 30_000;
+    private static final long CONNECT_RETRY = 100;
+    //A peer that doesn't get to a barrier in this time fails the run, instead of blocking it forever
+    private static final long BARRIER_TIMEOUT = 60_000;
+
+    private static final byte A_TO_Z = 0;
+    private static final byte Z_TO_A = 1;
+
+    private final SimulationEngine engine;
+    private final int node;
+    private final List<InetSocketAddress> nodes;
+    private final List<NetworkElement> localElements;
+    private final Map<Long, Link> linksById = new HashMap<>();
+    private final List<RemoteQueue> outgoing = new ArrayList<>();
+    private final PeerConnection[] peers;
+    private final ExecutorService senders;
+    //Disconnects the peers once a barrier takes too long, which breaks the reads blocked on them
+    private final ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1);
+    private volatile boolean timedOut = false;
+    private ServerSocketChannel server;
+
+    @Getter
+    private final long lookahead;
+
+    @Getter
+    private final DistributedStatistics statistics;
+
+    /**
+     * @param engine Engine of this node. Must be stopped.
+     * @param elements All the elements of the scene, the same on every node.
+     * @param links All the links of the scene.
+     * @param node Index of this node in the nodes list.
+     * @param nodes Addresses the nodes listen at, the same list on every node.
+     */
+    public DistributedSimulation(SimulationEngine engine, List<? extends NetworkElement> elements, List<Link> links,
+                                 int node, List<InetSocketAddress> nodes) {
+        if (nodes.size() < 2) {
+            throw new IllegalArgumentException("A distributed simulation needs at least two nodes.");
+        }
+        if (node < 0 || node >= nodes.size()) {
+            throw new IllegalArgumentException(String.format("Node index %d is out of the nodes list.", node));
+        }
+        this.engine = engine;
+        this.node = node;
+        this.nodes = nodes;
+
+        //Every node must come up with the same partitioning, so the order mustn't depend on loading
+        List<NetworkElement> ordered = new ArrayList<>(elements);
+        ordered.sort(Comparator.comparingLong(NetworkElement::getIdNE));
+        List<List<NetworkElement>> partitions = ScenePartitioner.partition(ordered, links, nodes.size());
+        if (partitions.size() < nodes.size()) {
+            throw new IllegalArgumentException("The scene has fewer elements than there are nodes.");
+        }
+        Map<NetworkElement, Integer> nodeOf = new IdentityHashMap<>();
+        for (int i = 0; i < partitions.size(); i++) {
+            for (NetworkElement element : partitions.get(i)) {
+                nodeOf.put(element, i);
+            }
+        }
+        localElements = partitions.get(node);
+
+        long minimalDelay = Long.MAX_VALUE;
+        int remoteLinks = 0;
+        for (Link link : links) {
+            Integer nodeA = nodeOf.get(ScenePartitioner.ownerOf(link.getConnA()));
+            Integer nodeZ = nodeOf.get(ScenePartitioner.ownerOf(link.getConnZ()));
+            if (null == nodeA || null == nodeZ) {
+                continue;
+            }
+            linksById.put(link.getId(), link);
+            if (nodeA.equals(nodeZ)) {
+                continue;
+            }
+            //Every node sees all the links, so they all come up with the same lookahead
+            minimalDelay = Math.min(minimalDelay, PartitionedSimulation.minimalDelay(link, engine.getTickLength()));
+            if (node != nodeA && node != nodeZ) {
+                continue;
+            }
+            if (node == nodeA) {
+                outgoing.add(new RemoteQueue(link.getId(), A_TO_Z, link.getConnA().getOut(), nodeZ));
+            } else {
+                outgoing.add(new RemoteQueue(link.getId(), Z_TO_A, link.getConnZ().getOut(), nodeA));
+            }
+            ++remoteLinks;
+        }
+        //Without links between nodes they are independent and may run to the end in one window
+        lookahead = (Long.MAX_VALUE == minimalDelay) ? Long.MAX_VALUE / 2 : minimalDelay;
+
+        for (RemoteQueue remoteQueue : outgoing) {
+            remoteQueue.queue.setDeferred(true);
+        }
+        for (NetworkElement element : localElements) {
+            engine.register(element);
+        }
+        peers = new PeerConnection[nodes.size()];
+        senders = Executors.newFixedThreadPool(nodes.size() - 1);
+        watchdog.setRemoveOnCancelPolicy(true);
+        statistics = new DistributedStatistics(node, nodes.size(), localElements.size(), remoteLinks, lookahead);
+        logger.info("Node {} of {} hosts {} elements with {} remote links.",
+                node, nodes.size(), localElements.size(), remoteLinks);
+    }
+
+    public List<NetworkElement> getLocalElements() {
+        return Collections.unmodifiableList(localElements);
+    }
+
+    /**
+     * Connects to every other node: this node dials the ones before it in the list
+     * and accepts the ones after it.
+     */
+    public void connect() throws IOException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+        if (node < nodes.size() - 1) {
+            server = ServerSocketChannel.open();
+            server.bind(nodes.get(node));
+            server.configureBlocking(false);
+        }
+        for (int peer = 0; peer < node; peer++) {
+            SocketChannel channel = dial(nodes.get(peer), deadline);
+            PeerConnection connection = new PeerConnection(peer, channel, new BinaryReader(channel));
+            connection.getOut().writeInt(MAGIC);
+            connection.getOut().writeInt(VERSION);
+            connection.getOut().writeInt(node);
+            connection.getOut().flush();
+            peers[peer] = connection;
+        }
+        for (int accepted = node + 1; accepted < nodes.size(); accepted++) {
+            SocketChannel channel = accept(deadline);
+            BinaryReader in = new BinaryReader(channel);
+            //A peer that connects but never says hello is cut off as well
+            int peer = atBarrier(() -> {
+                if (MAGIC != in.readInt() || VERSION != in.readInt()) {
+                    channel.close();
+                    throw new IOException("A peer speaks another protocol.");
+                }
+                return in.readInt();
+            }, channel);
+            if (peer <= node || peer >= nodes.size() || null != peers[peer]) {
+                channel.close();
+                throw new IOException(String.format("Unexpected peer %d.", peer));
+            }
+            //The reader may have buffered what the peer sent after the hello, so it is kept
+            peers[peer] = new PeerConnection(peer, channel, in);
+        }
+        logger.info("Node {} is connected to {} peers.", node, nodes.size() - 1);
+    }
+
+    private static SocketChannel dial(InetSocketAddress address, long deadline) throws IOException {
+        while (true) {
+            try {
+                return SocketChannel.open(address);
+            } catch (IOException e) {
+                //The peer may not be listening yet
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                sleep(CONNECT_RETRY);
+            }
+        }
+    }
+
+    private SocketChannel accept(long deadline) throws IOException {
+        while (true) {
+            SocketChannel channel = server.accept();
+            if (null != channel) {
+                channel.configureBlocking(true);
+                return channel;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Timed out waiting for peers to connect.");
+            }
+            sleep(CONNECT_RETRY);
+        }
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while connecting to peers.", ie);
+        }
+    }
+
+    /**
+     * Runs the scene together with the other nodes for the given simulated duration.
+     * The nodes start at the latest of their clocks.
+     */
+    public DistributedStatistics runFor(long duration) throws IOException {
+        long tickLength = engine.getTickLength();
+        long start = engine.getNow();
+        long next = engine.getNextEventTime();
+        for (PeerConnection peer : peers) {
+            if (null == peer) {
+                continue;
+            }
+            peer.getOut().writeLong(tickLength);
+            peer.getOut().writeLong(duration);
+            peer.getOut().writeLong(engine.getNow());
+            peer.getOut().writeLong(engine.getNextEventTime());
+            peer.getOut().flush();
+        }
+        long[] range = {start, next};
+        atBarrier(() -> {
+            for (PeerConnection peer : peers) {
+                if (null == peer) {
+                    continue;
+                }
+                if (tickLength != peer.getIn().readLong() || duration != peer.getIn().readLong()) {
+                    throw new IOException(String.format("Node %d runs with another tick length or duration.", peer.getNode()));
+                }
+                range[0] = Math.max(range[0], peer.getIn().readLong());
+                range[1] = Math.min(range[1], peer.getIn().readLong());
+            }
+            return null;
+        });
+        start = range[0];
+        next = range[1];
+        engine.advanceTo(start);
+        long endTime = start + duration;
+        statistics.setRange(start, endTime);
+
+        next = Math.max(next, start);
+        while (next <= endTime) {
+            next = runWindow(next, Math.min(endTime, next + lookahead - 1));
+        }
+        engine.advanceTo(endTime);
+
+        long sentBytes = 0;
+        for (PeerConnection peer : peers) {
+            if (null != peer) {
+                sentBytes += peer.getOut().getWritten();
+            }
+        }
+        statistics.setSentBytes(sentBytes);
+        return statistics;
+    }
+
+    /**
+     * Runs one window and the barrier after it.
+     * @return Start of the next window, the same on every node.
+     */
+    private long runWindow(long windowStart, long windowEnd) throws IOException {
+        long started = System.nanoTime();
+        long fired = engine.runUntil(windowEnd);
+        long ownNext = engine.getNextEventTime();
+
+        //Traffic of the window, grouped by the node it goes to
+        List<List<Batch>> batches = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            batches.add(new ArrayList<>());
+        }
+        long sent = 0;
+        for (RemoteQueue remoteQueue : outgoing) {
+            List<DoubleBufferedQueue.Timed<DataUnit>> dataUnits = new ArrayList<>();
+            if (remoteQueue.queue.drainDeferred(dataUnits) > 0) {
+                batches.get(remoteQueue.node).add(new Batch(remoteQueue, dataUnits));
+                sent += dataUnits.size();
+            }
+        }
+
+        long barrierStarted = System.nanoTime();
+        //Sending on other threads, so that two nodes sending big batches to each other don't block
+        List<Future<Void>> sending = new ArrayList<>();
+        final long totalSent = sent;
+        for (PeerConnection peer : peers) {
+            if (null == peer) {
+                continue;
+            }
+            List<Batch> peerBatches = batches.get(peer.getNode());
+            sending.add(senders.submit(() -> {
+                sendWindow(peer.getOut(), windowEnd, ownNext, totalSent, peerBatches);
+                return null;
+            }));
+        }
+
+        //Received, whether any node sent traffic, and the earliest next event of all the nodes
+        long[] barrier = {0, (sent > 0) ? 1 : 0, ownNext};
+        atBarrier(() -> {
+            for (PeerConnection peer : peers) {
+                if (null == peer) {
+                    continue;
+                }
+                BinaryReader in = peer.getIn();
+                long peerWindowEnd = in.readLong();
+                if (peerWindowEnd != windowEnd) {
+                    throw new IOException(String.format("Node %d is at window %d instead of %d.",
+                            peer.getNode(), peerWindowEnd, windowEnd));
+                }
+                barrier[2] = Math.min(barrier[2], in.readLong());
+                if (in.readLong() > 0) {
+                    barrier[1] = 1;
+                }
+                barrier[0] += receiveWindow(in);
+            }
+            //A peer that doesn't read blocks the sending, so it's waited for under the same deadline
+            for (Future<Void> result : sending) {
+                try {
+                    result.get();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while sending a window.", ie);
+                } catch (ExecutionException ee) {
+                    throw new IOException("Failed to send a window.", ee.getCause());
+                }
+            }
+            return null;
+        });
+        long received = barrier[0];
+        boolean anyTraffic = 0 != barrier[1];
+        long globalNext = barrier[2];
+        long finished = System.nanoTime();
+        statistics.addWindow(fired, sent, received, finished - started, finished - barrierStarted);
+
+        //Traffic sent anywhere wakes its receivers right after the window
+        return anyTraffic ? Math.min(globalNext, windowEnd + 1) : globalNext;
+    }
+
+    private interface BarrierStep<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Runs the step, disconnecting the given channel (all the peers if none is given)
+     * if it doesn't finish within the barrier timeout.
+     */
+    private <T> T atBarrier(BarrierStep<T> step, SocketChannel... channels) throws IOException {
+        ScheduledFuture<?> alarm = watchdog.schedule(() -> {
+            timedOut = true;
+            if (channels.length > 0) {
+                for (SocketChannel channel : channels) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                        //Closed is what it has to be anyway
+                    }
+                }
+            } else {
+                for (PeerConnection peer : peers) {
+                    if (null != peer) {
+                        peer.close();
+                    }
+                }
+            }
+        }, BARRIER_TIMEOUT, TimeUnit.MILLISECONDS);
+        try {
+            return step.run();
+        } catch (IOException e) {
+            if (timedOut) {
+                throw new IOException(String.format("Peers haven't reached the barrier in %d ms.", BARRIER_TIMEOUT), e);
+            }
+            throw e;
+        } finally {
+            alarm.cancel(false);
+        }
+    }
+
+    private static void sendWindow(BinaryWriter out, long windowEnd, long next, long totalSent,
+                                   List<Batch> batches) throws IOException {
+        out.writeLong(windowEnd);
+        out.writeLong(next);
+        out.writeLong(totalSent);
+        out.writeInt(batches.size());
+        for (Batch batch : batches) {
+            out.writeLong(batch.remoteQueue.linkId);
+            out.writeByte(batch.remoteQueue.direction);
+            out.writeInt(batch.dataUnits.size());
+            //Arrivals were computed by the sending node, the clocks of the nodes are the same
+            for (DoubleBufferedQueue.Timed<DataUnit> dataUnit : batch.dataUnits) {
+                out.writeLong(dataUnit.getStamp());
+                out.writeLong(dataUnit.getArrival());
+                DataUnitCodec.write(out, dataUnit.getItem());
+                //It lives on at the receiving node
+                dataUnit.getItem().release();
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Puts the traffic a peer sent to the queues local elements read, and wakes them.
+     * @return Number of received DataUnits.
+     */
+    private long receiveWindow(BinaryReader in) throws IOException {
+        long received = 0;
+        int batchCount = in.readInt();
+        for (int i = 0; i < batchCount; i++) {
+            Link link = linksById.get(in.readLong());
+            byte direction = in.readByte();
+            int count = in.readInt();
+            Link.Connection from = (null == link) ? null : (A_TO_Z == direction ? link.getConnA() : link.getConnZ());
+            long firstArrival = Long.MAX_VALUE;
+            for (int j = 0; j < count; j++) {
+                long stamp = in.readLong();
+                long arrival = in.readLong();
+                DataUnit dataUnit = DataUnitCodec.read(in);
+                //A link that is down here loses the traffic the peer sent before it learned of that
+                if (null != from && null != dataUnit && from.isUp()
+                        && from.getOut().offerTimed(new DoubleBufferedQueue.Timed<>(dataUnit, stamp, arrival))) {
+                    firstArrival = Math.min(firstArrival, arrival);
+                }
+            }
+            received += count;
+            NetworkElement receiver = (null == from) ? null : ScenePartitioner.ownerOf(from.getOppositeConn());
+            if (Long.MAX_VALUE != firstArrival && null != receiver) {
+                receiver.wakeAt(firstArrival);
+            }
+        }
+        return received;
+    }
+
+    /**
+     * Disconnects from the peers and switches the remote links back to normal mode.
+     * Local elements stay registered at the engine.
+     */
+    public void close() {
+        senders.shutdown();
+        watchdog.shutdownNow();
+        for (PeerConnection peer : peers) {
+            if (null != peer) {
+                peer.close();
+            }
+        }
+        if (null != server) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close the server socket: {}", e.getMessage());
+            }
+        }
+        for (RemoteQueue remoteQueue : outgoing) {
+            remoteQueue.queue.setDeferred(false);
+        }
+    }
+
+    private static class RemoteQueue {
+        final long linkId;
+        final byte direction;
+        final DoubleBufferedQueue<DataUnit> queue;
+        //Node the traffic goes to
+        final int node;
+
+        RemoteQueue(long linkId, byte direction, DoubleBufferedQueue<DataUnit> queue, int node) {
+            this.linkId = linkId;
+            this.direction = direction;
+            this.queue = queue;
+            this.node = node;
+        }
+    }
+
+    private static class Batch {
+        final RemoteQueue remoteQueue;
+        final List<DoubleBufferedQueue.Timed<DataUnit>> dataUnits;
+
+        Batch(RemoteQueue remoteQueue, List<DoubleBufferedQueue.Timed<DataUnit>> dataUnits) {
+            this.remoteQueue = remoteQueue;
+            this.dataUnits = dataUnits;
+        }
+    }
+}
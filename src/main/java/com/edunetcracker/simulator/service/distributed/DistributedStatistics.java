@@ -0,0 +1,52 @@
+package com.edunetcracker.simulator.service.distributed;
+
+import lombok.Getter;
+
+/**
+ * Counters of a distributed simulation run, as seen by one of the nodes.
+ */
+@Getter
+public class DistributedStatistics {
+    private final int node;
+    private final int nodes;
+    private final int localElements;
+    private final int remoteLinks;
+    private final long lookahead;
+
+    private long simulatedFrom;
+    private long simulatedTo;
+    private long windows;
+    private long events;
+    private long sentDataUnits;
+    private long receivedDataUnits;
+    private long sentBytes;
+    private long wallNanos;
+    //Time spent waiting for the other nodes at the barriers
+    private long waitNanos;
+
+    DistributedStatistics(int node, int nodes, int localElements, int remoteLinks, long lookahead) {
+        this.node = node;
+        this.nodes = nodes;
+        this.localElements = localElements;
+        this.remoteLinks = remoteLinks;
+        this.lookahead = lookahead;
+    }
+
+    void setRange(long simulatedFrom, long simulatedTo) {
+        this.simulatedFrom = simulatedFrom;
+        this.simulatedTo = simulatedTo;
+    }
+
+    void addWindow(long windowEvents, long sent, long received, long windowWallNanos, long windowWaitNanos) {
+        windows++;
+        events += windowEvents;
+        sentDataUnits += sent;
+        receivedDataUnits += received;
+        wallNanos += windowWallNanos;
+        waitNanos += windowWaitNanos;
+    }
+
+    void setSentBytes(long sentBytes) {
+        this.sentBytes = sentBytes;
+    }
+}
@@ -0,0 +1,38 @@
+package com.edunetcracker.simulator.service.distributed;
+
+import com.edunetcracker.simulator.service.checkpoint.BinaryReader;
+import com.edunetcracker.simulator.service.checkpoint.BinaryWriter;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking socket connection to another simulator process.
+ * Writes are buffered until {@link BinaryWriter#flush()}, so a whole window is sent in one batch.
+ */
+class PeerConnection {
+    @Getter
+    private final int node;
+    private final SocketChannel channel;
+    @Getter
+    private final BinaryWriter out;
+    @Getter
+    private final BinaryReader in;
+
+    PeerConnection(int node, SocketChannel channel, BinaryReader in) throws IOException {
+        this.node = node;
+        this.channel = channel;
+        channel.socket().setTcpNoDelay(true);
+        out = new BinaryWriter(channel);
+        this.in = in;
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            //Nothing to do about it, the peer is gone anyway
+        }
+    }
+}
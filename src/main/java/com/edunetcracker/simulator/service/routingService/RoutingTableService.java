@@ -131,8 +131,10 @@ public class RoutingTableService extends DBService<RoutingTable> {
 
         RoutingTableEntry[] entries = constructDirectConnection(port);
 
-        table.addRoute(entries[0]);
-        table.addRoute(entries[1]);
+        table.batch(() -> {
+            table.addRoute(entries[0]);
+            table.addRoute(entries[1]);
+        });
 
         return SequenceStatus.OK;
     }
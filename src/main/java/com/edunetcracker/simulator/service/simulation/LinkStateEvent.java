@@ -0,0 +1,41 @@
+package com.edunetcracker.simulator.service.simulation;
+
+import com.edunetcracker.simulator.model.Link;
+import com.edunetcracker.simulator.model.element.NetworkElement;
+
+/**
+ * Brings a Link up or down, and wakes both of its ends so that
+ * they could react on the change. A down link loses whatever is on the way and is sent to it.
+ */
+public class LinkStateEvent extends SimulationEvent {
+
+    private final Link link;
+    private final boolean up;
+
+    public LinkStateEvent(long time, Link link, boolean up) {
+        super(time);
+        this.link = link;
+        this.up = up;
+    }
+
+    @Override
+    public void fire(SimulationEngine engine) {
+        if (up) {
+            link.start();
+        } else {
+            link.stop();
+        }
+        wakeOwner(engine, link.getConnA());
+        wakeOwner(engine, link.getConnZ());
+    }
+
+    private void wakeOwner(SimulationEngine engine, Link.Connection connection) {
+        if (null == connection || null == connection.getPort()) {
+            return;
+        }
+        NetworkElement owner = connection.getPort().checkForOwner();
+        if (null != owner) {
+            engine.wake(owner);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.edunetcracker.simulator.service.simulation;
+
+/**
+ * What an element (or the engine) does when it can't keep up with the simulated time.
+ */
+public enum OverloadPolicy {
+    //Keep doing everything and let the lag grow
+    NONE,
+    //Overloaded elements don't run their contexts, so no new traffic is generated
+    SKIP_CONTEXTS,
+    //Overloaded elements drop the input they had no budget to process
+    SHED_INPUT,
+    //The engine slows simulated time down instead of trying to catch up with the wall clock
+    STRETCH_TICK
+}
@@ -0,0 +1,104 @@
+package com.edunetcracker.simulator.service.simulation;
+
+import com.edunetcracker.simulator.model.element.NetworkElement;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Ticks a batch of NetworkElements due at the same simulated time on a ForkJoinPool.
+ * The tick is split into phases, and every phase has to be finished by all the
+ * elements before the next one begins:
+ *   1) flipping of input queues (sequential, it's cheap);
+ *   2) commands and input traffic;
+ *   3) contexts.
+ * Link queues are double-buffered, so the result doesn't depend on the number of threads.
+ */
+public class ParallelTickExecutor {
+
+    //Batches smaller than this are not worth forking
+    private static final int SEQUENTIAL_THRESHOLD = 8;
+
+    @Getter
+    private final ForkJoinPool pool;
+
+    public ParallelTickExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelTickExecutor(int parallelism) {
+        pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public void tick(List<NetworkElement> elements) {
+        for (NetworkElement element : elements) {
+            element.flipInput();
+        }
+        runPhase(elements, ParallelTickExecutor::safeTickInput);
+        runPhase(elements, ParallelTickExecutor::safeTickContexts);
+    }
+
+    //An exception in one element must neither kill the phase nor other elements' ticks
+    private static void safeTickInput(NetworkElement element) {
+        try {
+            element.tickInput();
+        } catch (RuntimeException e) {
+            element.recordFailure(e);
+        }
+    }
+
+    private static void safeTickContexts(NetworkElement element) {
+        try {
+            element.tickContexts();
+        } catch (RuntimeException e) {
+            element.recordFailure(e);
+        }
+    }
+
+    private void runPhase(List<NetworkElement> elements, Consumer<NetworkElement> phase) {
+        if (elements.size() <= SEQUENTIAL_THRESHOLD || pool.getParallelism() == 1) {
+            elements.forEach(phase);
+            return;
+        }
+        //invoke(...) returns when every element is done, which is the barrier between phases
+        pool.invoke(new PhaseTask(elements, 0, elements.size(), phase));
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static class PhaseTask extends RecursiveAction {
+        private final List<NetworkElement> elements;
+        private final int from;
+        private final int to;
+        private final Consumer<NetworkElement> phase;
+
+        PhaseTask(List<NetworkElement> elements, int from, int to, Consumer<NetworkElement> phase) {
+            this.elements = elements;
+            this.from = from;
+            this.to = to;
+            this.phase = phase;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    phase.accept(elements.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PhaseTask(elements, from, middle, phase),
+                      new PhaseTask(elements, middle, to, phase));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.edunetcracker.simulator.service.simulation;
+
+import lombok.Getter;
+
+/**
+ * Counters of a partitioned simulation run, to see how well a partitioning scales.
+ */
+@Getter
+public class PartitionStatistics {
+    private final int partitions;
+    private final int cutLinks;
+    private final long lookahead;
+
+    private long windows;
+    private long wallNanos;
+    private final long[] busyNanos;
+    private final long[] events;
+
+    PartitionStatistics(int partitions, int cutLinks, long lookahead) {
+        this.partitions = partitions;
+        this.cutLinks = cutLinks;
+        this.lookahead = lookahead;
+        busyNanos = new long[partitions];
+        events = new long[partitions];
+    }
+
+    void addWindow(long windowWallNanos, long[] windowBusyNanos, long[] windowEvents) {
+        windows++;
+        wallNanos += windowWallNanos;
+        for (int i = 0; i < partitions; i++) {
+            busyNanos[i] += windowBusyNanos[i];
+            events[i] += windowEvents[i];
+        }
+    }
+
+    /**
+     * @return How many times faster the run was than running all the partitions one after another.
+     */
+    public double getSpeedup() {
+        if (0 == wallNanos) {
+            return 0;
+        }
+        long totalBusy = 0;
+        for (long busy : busyNanos) {
+            totalBusy += busy;
+        }
+        return (double) totalBusy / wallNanos;
+    }
+
+    /**
+     * @return Speedup per partition, 1.0 being perfect.
+     */
+    public double getParallelEfficiency() {
+        return getSpeedup() / partitions;
+    }
+}
@@ -0,0 +1,177 @@
+package com.edunetcracker.simulator.service.simulation;
+
+import com.edunetcracker.simulator.model.Link;
+import com.edunetcracker.simulator.model.dataUnit.DataUnit;
+import com.edunetcracker.simulator.model.element.NetworkElement;
+import com.edunetcracker.simulator.model.queue.DoubleBufferedQueue;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Conservative parallel discrete-event simulation.
+ * The scene is split into partitions, each of which has its own SimulationEngine (and event list).
+ * Partitions run in parallel in time windows no longer than the lookahead: the minimal time
+ * a packet needs to cross a cut link. Nothing sent inside a window can therefore affect
+ * another partition before the window ends. Traffic on cut links is buffered and handed
+ * over at the barrier between windows.
+ */
+public class PartitionedSimulation {
+    private static Logger logger = LoggerFactory.getLogger(PartitionedSimulation.class);
+
+    private final List<SimulationEngine> engines = new ArrayList<>();
+    private final List<List<NetworkElement>> partitions;
+    private final List<CutQueue> cutQueues = new ArrayList<>();
+    private final ExecutorService executor;
+
+    @Getter
+    private final long lookahead;
+
+    @Getter
+    private final PartitionStatistics statistics;
+
+    public PartitionedSimulation(List<? extends NetworkElement> elements, List<Link> links,
+                                 int partitionCount, long tickLength, long startTime) {
+        partitions = ScenePartitioner.partition(elements, links, partitionCount);
+
+        Map<NetworkElement, Integer> partitionOf = new IdentityHashMap<>();
+        for (int i = 0; i < partitions.size(); i++) {
+            SimulationEngine engine = new SimulationEngine(tickLength, 1);
+            engine.advanceTo(startTime);
+            engines.add(engine);
+            for (NetworkElement element : partitions.get(i)) {
+                partitionOf.put(element, i);
+            }
+        }
+
+        long minimalDelay = Long.MAX_VALUE;
+        int cutLinks = 0;
+        for (Link link : links) {
+            NetworkElement a = ScenePartitioner.ownerOf(link.getConnA());
+            NetworkElement z = ScenePartitioner.ownerOf(link.getConnZ());
+            Integer partitionA = partitionOf.get(a);
+            Integer partitionZ = partitionOf.get(z);
+            if (null == partitionA || null == partitionZ || partitionA.equals(partitionZ)) {
+                continue;
+            }
+            cutQueues.add(new CutQueue(link.getConnA().getOut(), z));
+            cutQueues.add(new CutQueue(link.getConnZ().getOut(), a));
+            minimalDelay = Math.min(minimalDelay, minimalDelay(link, tickLength));
+            ++cutLinks;
+        }
+        //Without cut links partitions are independent and may run to the end in one window
+        lookahead = (Long.MAX_VALUE == minimalDelay) ? Long.MAX_VALUE / 2 : minimalDelay;
+
+        for (CutQueue cutQueue : cutQueues) {
+            cutQueue.queue.setDeferred(true);
+        }
+        for (int i = 0; i < partitions.size(); i++) {
+            for (NetworkElement element : partitions.get(i)) {
+                engines.get(i).register(element);
+            }
+        }
+
+        statistics = new PartitionStatistics(partitions.size(), cutLinks, lookahead);
+        executor = Executors.newFixedThreadPool(partitions.size());
+        logger.info("Scene split into {} partitions with {} cut links, lookahead is {} ms.",
+                partitions.size(), cutLinks, lookahead);
+    }
+
+    /**
+     * A packet pushed at time t is readable on the other side after the propagation delay,
+     * and not before the next tick boundary.
+     */
+    public static long minimalDelay(Link link, long tickLength) {
+        return Math.max(tickLength, link.getDelay());
+    }
+
+    /**
+     * Runs all the partitions up to the given simulated time.
+     */
+    public PartitionStatistics runUntil(long time) {
+        while (true) {
+            publishCutTraffic();
+            long windowStart = Long.MAX_VALUE;
+            for (SimulationEngine engine : engines) {
+                windowStart = Math.min(windowStart, engine.getNextEventTime());
+            }
+            if (windowStart > time) {
+                break;
+            }
+            runWindow(Math.min(time, windowStart + lookahead - 1));
+        }
+        for (SimulationEngine engine : engines) {
+            engine.advanceTo(time);
+        }
+        return statistics;
+    }
+
+    private void runWindow(long windowEnd) {
+        int count = engines.size();
+        long[] busy = new long[count];
+        long[] fired = new long[count];
+        List<Callable<Void>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            tasks.add(() -> {
+                long started = System.nanoTime();
+                fired[index] = engines.get(index).runUntil(windowEnd);
+                busy[index] = System.nanoTime() - started;
+                return null;
+            });
+        }
+        long started = System.nanoTime();
+        try {
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Partitioned simulation was interrupted.", ie);
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException("Partition failed to run a window.", ee.getCause());
+        }
+        statistics.addWindow(System.nanoTime() - started, busy, fired);
+    }
+
+    /**
+     * Hands the traffic sent over cut links during the last window to the receivers.
+     * Is run at the barrier, while no partition is running.
+     */
+    private void publishCutTraffic() {
+        for (CutQueue cutQueue : cutQueues) {
+            if (cutQueue.queue.publishDeferred() > 0 && null != cutQueue.receiver) {
+                cutQueue.receiver.wakeAt(cutQueue.queue.nextVisibleTime());
+            }
+        }
+    }
+
+    /**
+     * Switches the cut links back to normal mode and detaches the elements from the partitions.
+     */
+    public void close() {
+        executor.shutdown();
+        for (CutQueue cutQueue : cutQueues) {
+            cutQueue.queue.setDeferred(false);
+        }
+        for (int i = 0; i < partitions.size(); i++) {
+            for (NetworkElement element : partitions.get(i)) {
+                engines.get(i).unregister(element);
+            }
+            engines.get(i).getTickExecutor().shutdown();
+        }
+    }
+
+    private static class CutQueue {
+        final DoubleBufferedQueue<DataUnit> queue;
+        final NetworkElement receiver;
+
+        CutQueue(DoubleBufferedQueue<DataUnit> queue, NetworkElement receiver) {
+            this.queue = queue;
+            this.receiver = receiver;
+        }
+    }
+}
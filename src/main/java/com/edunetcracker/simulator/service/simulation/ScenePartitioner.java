@@ -0,0 +1,71 @@
+package com.edunetcracker.simulator.service.simulation;
+
+import com.edunetcracker.simulator.model.Link;
+import com.edunetcracker.simulator.model.element.NetworkElement;
+
+import java.util.*;
+
+/**
+ * Splits the graph of a scene into partitions of (almost) equal size.
+ * Elements are laid out in breadth-first order and then cut into slices,
+ * so that neighbours mostly end up in the same partition and few links are cut.
+ */
+public class ScenePartitioner {
+
+    public static List<List<NetworkElement>> partition(List<? extends NetworkElement> elements,
+                                                       List<Link> links,
+                                                       int partitions) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("Number of partitions must be positive.");
+        }
+        Map<NetworkElement, List<NetworkElement>> neighbours = new IdentityHashMap<>();
+        for (NetworkElement element : elements) {
+            neighbours.put(element, new ArrayList<>());
+        }
+        for (Link link : links) {
+            NetworkElement a = ownerOf(link.getConnA());
+            NetworkElement z = ownerOf(link.getConnZ());
+            if (null == a || null == z || !neighbours.containsKey(a) || !neighbours.containsKey(z)) {
+                continue;
+            }
+            neighbours.get(a).add(z);
+            neighbours.get(z).add(a);
+        }
+
+        List<NetworkElement> order = new ArrayList<>(elements.size());
+        Set<NetworkElement> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<NetworkElement> queue = new ArrayDeque<>();
+        for (NetworkElement root : elements) {
+            if (!visited.add(root)) {
+                continue;
+            }
+            queue.add(root);
+            while (!queue.isEmpty()) {
+                NetworkElement current = queue.poll();
+                order.add(current);
+                for (NetworkElement next : neighbours.get(current)) {
+                    if (visited.add(next)) {
+                        queue.add(next);
+                    }
+                }
+            }
+        }
+
+        int count = Math.min(partitions, Math.max(1, order.size()));
+        int sliceSize = (order.size() + count - 1) / count;
+        List<List<NetworkElement>> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int from = Math.min(order.size(), i * sliceSize);
+            int to = Math.min(order.size(), from + sliceSize);
+            result.add(new ArrayList<>(order.subList(from, to)));
+        }
+        return result;
+    }
+
+    public static NetworkElement ownerOf(Link.Connection connection) {
+        if (null == connection || null == connection.getPort()) {
+            return null;
+        }
+        return connection.getPort().checkForOwner();
+    }
+}
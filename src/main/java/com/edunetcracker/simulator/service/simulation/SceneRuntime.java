@@ -0,0 +1,88 @@
+package com.edunetcracker.simulator.service.simulation;
+
+import com.edunetcracker.simulator.model.Link;
+import com.edunetcracker.simulator.model.Scene;
+import com.edunetcracker.simulator.model.element.NetworkElement;
+import lombok.Getter;
+
+/**
+ * Isolated runtime of one scene: its own engine with its own clock, lifecycle
+ * and tick threads. The number of threads is the scene's share of CPU cores,
+ * so a heavy scene can't take the cores of the others.
+ */
+public class SceneRuntime {
+
+    //Runtime of the elements and links that don't belong to any scene
+    public static final long NO_SCENE = 0;
+
+    @Getter
+    private final long sceneId;
+
+    @Getter
+    private final SimulationEngine engine;
+
+    public SceneRuntime(long sceneId, int cpuCores) {
+        this.sceneId = sceneId;
+        engine = new SimulationEngine(SimulationEngine.DEFAULT_TICK_LENGTH, coresToUse(cpuCores));
+        engine.setName("scene-" + sceneId);
+    }
+
+    public static long sceneIdOf(NetworkElement element) {
+        return (null == element.getScene()) ? NO_SCENE : element.getScene().getId();
+    }
+
+    public static long sceneIdOf(Link link) {
+        return (null == link.getScene()) ? NO_SCENE : link.getScene().getId();
+    }
+
+    public boolean owns(NetworkElement element) {
+        return sceneIdOf(element) == sceneId;
+    }
+
+    public boolean owns(Link link) {
+        return sceneIdOf(link) == sceneId;
+    }
+
+    /**
+     * Applies the scene's timing, overload policy and CPU share.
+     */
+    public void configure(Scene scene) {
+        if (null == scene) {
+            return;
+        }
+        engine.setTickLength(scene.getTickLength());
+        if (null != scene.getOverloadPolicy()) {
+            engine.setOverloadPolicy(scene.getOverloadPolicy());
+        }
+        engine.setParallelism(coresToUse(scene.getCpuCores()));
+    }
+
+    public int getCpuCores() {
+        return engine.getTickExecutor().getParallelism();
+    }
+
+    public boolean isRunning() {
+        return engine.isRunning();
+    }
+
+    public void start() {
+        engine.start();
+    }
+
+    public void stop() {
+        engine.stop();
+    }
+
+    public void shutdown() {
+        engine.stop();
+        engine.getTickExecutor().shutdown();
+    }
+
+    /**
+     * @param cpuCores Share of the scene, 0 (or less) meaning all the cores.
+     */
+    private static int coresToUse(int cpuCores) {
+        int available = Runtime.getRuntime().availableProcessors();
+        return (cpuCores <= 0) ? available : Math.min(cpuCores, available);
+    }
+}
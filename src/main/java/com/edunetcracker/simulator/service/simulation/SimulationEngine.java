@@ -0,0 +1,537 @@
+package com.edunetcracker.simulator.service.simulation;
+
+import com.edunetcracker.simulator.model.element.NetworkElement;
+import lombok.Getter;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Discrete-event simulation engine.
+ * Keeps a queue of timestamped events and a simulated clock (in milliseconds).
+ * NetworkElements are ticked only when they have work to do: when a packet pushed
+ * to one of their ports arrives, when a context was added, or while they still have live contexts.
+ * Element ticks, which are by far the most numerous events, are kept in a {@link TimingWheel}
+ * keyed by simulated milliseconds, so scheduling one doesn't depend on how many are pending.
+ *
+ * All the ticks due at the same simulated time are run as one batch by the
+ * {@link ParallelTickExecutor}, so a scene uses all the cores without a thread per element.
+ *
+ * The engine can either be driven by a background thread that paces simulated time
+ * against the wall clock ({@link #start()}), optionally dilated ({@link #setTimeDilation(double)}),
+ * or be run synchronously as fast as the CPU allows ({@link #runUntil(long)}, {@link #runFor(long)}).
+ */
+public class SimulationEngine {
+    private static Logger logger = LoggerFactory.getLogger(SimulationEngine.class);
+
+    public static final long DEFAULT_TICK_LENGTH = 100;
+
+    private final PriorityQueue<SimulationEvent> events = new PriorityQueue<>();
+    private long sequence = 0;
+
+    //Element ticks by their time, an element may have stale entries after it was woken earlier
+    private final TimingWheel<NetworkElement> ticks = new TimingWheel<>();
+
+    @Getter
+    private volatile long tickLength;
+
+    @Getter
+    private volatile ParallelTickExecutor tickExecutor;
+
+    //Name of the real-time driver thread
+    @Getter
+    @Setter
+    private String name = "simulation-engine";
+
+    //Simulated time of the last fired event
+    private volatile long now = 0;
+
+    //Wall clock and simulated time at the moment the real-time driver was started
+    private long wallOrigin;
+    private long simOrigin;
+    //The origins and the dilation as one snapshot, so that the time is read without the lock
+    private volatile Pace pace = new Pace(0, 0, 1.0);
+
+    private Thread driver;
+    private volatile boolean running = false;
+
+    //Simulated milliseconds per wall clock millisecond of the real-time driver, infinity means "max"
+    @Getter
+    private double timeDilation = 1.0;
+
+    private final Object manualRunLock = new Object();
+
+    @Getter
+    private volatile OverloadPolicy overloadPolicy = OverloadPolicy.NONE;
+
+    //How late (wall ms) the real-time driver fired the last batch
+    @Getter
+    private volatile long lag = 0;
+    @Getter
+    private volatile long maxLag = 0;
+    //Number of batches fired later than a tick after their time
+    @Getter
+    private volatile long lateBatches = 0;
+    //Wall time given up by stretching ticks under the STRETCH_TICK policy
+    @Getter
+    private volatile long stretchedMillis = 0;
+
+    @Getter
+    private volatile long eventsProcessed = 0;
+    @Getter
+    private volatile long elementTicks = 0;
+
+    //How many times a parked element was woken up
+    private final LongAdder wakeUps = new LongAdder();
+
+    public SimulationEngine() {
+        this(DEFAULT_TICK_LENGTH, Runtime.getRuntime().availableProcessors());
+    }
+
+    public SimulationEngine(long tickLength, int parallelism) {
+        if (tickLength <= 0) {
+            throw new IllegalArgumentException("Tick length must be positive.");
+        }
+        this.tickLength = tickLength;
+        this.tickExecutor = new ParallelTickExecutor(parallelism);
+    }
+
+    /**
+     * @return Current simulated time. While the real-time driver is running, simulated
+     *         time keeps up with the wall clock even if there are no events to fire.
+     */
+    public long getNow() {
+        if (!running) {
+            return now;
+        }
+        Pace current = pace;
+        if (Double.isInfinite(current.timeDilation)) {
+            return now;
+        }
+        long wallElapsed = System.currentTimeMillis() - current.wallOrigin;
+        return Math.max(now, current.simOrigin + (long) (wallElapsed * current.timeDilation));
+    }
+
+    //Must be called under the lock, whenever the origins or the dilation change
+    private void publishPace() {
+        pace = new Pace(wallOrigin, simOrigin, timeDilation);
+    }
+
+    /**
+     * Changes the pace of the real-time driver.
+     * @param timeDilation Simulated time per wall clock time: 0.1 is ten times slower than
+     *                     real time, 10 is ten times faster, infinity runs as fast as possible.
+     */
+    public synchronized void setTimeDilation(double timeDilation) {
+        if (Double.isNaN(timeDilation) || timeDilation <= 0) {
+            throw new IllegalArgumentException("Time dilation must be positive.");
+        }
+        if (running) {
+            //Rebase, so that the time passed so far keeps the old pace
+            now = getNow();
+            simOrigin = now;
+            wallOrigin = System.currentTimeMillis();
+        }
+        this.timeDilation = timeDilation;
+        publishPace();
+        notifyAll();
+        logger.info("Time dilation set to {}.", timeDilation);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public synchronized int getPendingEvents() {
+        return events.size() + ticks.size();
+    }
+
+    public void setOverloadPolicy(OverloadPolicy overloadPolicy) {
+        if (null == overloadPolicy) {
+            throw new NullPointerException();
+        }
+        this.overloadPolicy = overloadPolicy;
+    }
+
+    /**
+     * @return Whether the real-time driver is more than a tick behind the wall clock.
+     */
+    public boolean isBehind() {
+        return running && lag > tickLength;
+    }
+
+    /**
+     * @return Wall time the simulation has slipped by: stretched ticks and the current lag.
+     */
+    public long getCumulativeSlip() {
+        return stretchedMillis + lag;
+    }
+
+    /**
+     * Changes the number of threads the element ticks are run on.
+     * A batch being ticked at the moment finishes on the old threads.
+     */
+    public void setParallelism(int parallelism) {
+        ParallelTickExecutor oldExecutor;
+        synchronized (this) {
+            if (tickExecutor.getParallelism() == Math.max(1, parallelism)) {
+                return;
+            }
+            oldExecutor = tickExecutor;
+            tickExecutor = new ParallelTickExecutor(parallelism);
+        }
+        oldExecutor.shutdown();
+        logger.info("Engine {} now ticks on {} threads.", name, tickExecutor.getParallelism());
+    }
+
+    /**
+     * Changes the tick length. Ticks that are already scheduled keep their time.
+     */
+    public void setTickLength(long tickLength) {
+        if (tickLength <= 0) {
+            throw new IllegalArgumentException("Tick length must be positive.");
+        }
+        if (this.tickLength != tickLength) {
+            logger.info("Tick length changed from {} to {} ms.", this.tickLength, tickLength);
+        }
+        this.tickLength = tickLength;
+    }
+
+    /**
+     * @return Time of the earliest event or tick, or Long.MAX_VALUE if there are none.
+     */
+    public synchronized long getNextEventTime() {
+        SimulationEvent event = events.peek();
+        return Math.min((null == event) ? Long.MAX_VALUE : event.getTime(), ticks.nextTick());
+    }
+
+    /**
+     * Moves the clock of a stopped engine forward, without firing anything.
+     */
+    public synchronized void advanceTo(long time) {
+        if (running) {
+            throw new IllegalStateException("Engine is driven in real time and can't be moved manually.");
+        }
+        now = Math.max(now, time);
+    }
+
+    /**
+     * Sets the clock of a stopped engine to the given time, e.g. when a checkpoint is restored.
+     * Pending ticks are rescheduled relative to the new time, other events belong
+     * to the abandoned timeline and are dropped.
+     */
+    public synchronized void restoreClock(long time) {
+        if (running) {
+            throw new IllegalStateException("Engine is driven in real time and can't be moved manually.");
+        }
+        List<NetworkElement> ticking = new ArrayList<>();
+        ticks.drain((tick, element) -> {
+            if (element.isTickScheduledAt(tick)) {
+                ticking.add(element);
+            }
+        });
+        int dropped = events.size();
+        events.clear();
+        now = time;
+        for (NetworkElement element : ticking) {
+            element.releaseTick();
+            wake(element);
+        }
+        if (dropped > 0) {
+            logger.warn("{} pending events were dropped while the clock was restored to {}.", dropped, time);
+        }
+    }
+
+    /**
+     * Puts the event to the queue. Events from the past are fired as soon as possible.
+     * May be called from any thread.
+     */
+    public synchronized void schedule(SimulationEvent event) {
+        if (null == event) {
+            throw new NullPointerException();
+        }
+        event.sequence = sequence++;
+        events.add(event);
+        notifyAll();
+    }
+
+    /**
+     * Attaches the element to the engine and gives it the first tick.
+     */
+    public void register(NetworkElement element) {
+        synchronized (this) {
+            element.setEngine(this);
+            element.setWorking(true);
+            //A tick the element might have had at another engine doesn't count here
+            element.releaseTick();
+        }
+        wake(element);
+    }
+
+    public void unregister(NetworkElement element) {
+        element.setWorking(false);
+        element.setEngine(null);
+    }
+
+    /**
+     * Schedules a tick of the element at the next tick boundary, unless it already has one.
+     * May be called from any thread.
+     */
+    public void wake(NetworkElement element) {
+        wakeAt(element, 0);
+    }
+
+    /**
+     * Schedules a tick of the element at the first tick boundary not earlier than the given time
+     * (and after the current one), unless it already has a tick by then. May be called from any thread.
+     * Only the call that moves the element's tick takes the engine's lock, so pushing a burst
+     * of packets to an awake element costs nothing.
+     */
+    public void wakeAt(NetworkElement element, long time) {
+        long currentTickLength = tickLength;
+        long boundary = (time + currentTickLength - 1) / currentTickLength * currentTickLength;
+        //The element has a tick by then already, the clock isn't even read
+        if (element.hasTickBy(boundary)) {
+            return;
+        }
+        long tickTime = Math.max((getNow() / currentTickLength + 1) * currentTickLength, boundary);
+        if (!element.claimTick(tickTime)) {
+            return;
+        }
+        wakeUps.increment();
+        synchronized (this) {
+            ticks.add(tickTime, element);
+            notifyAll();
+        }
+    }
+
+    public long getWakeUps() {
+        return wakeUps.sum();
+    }
+
+    private void tickElements(List<NetworkElement> elements) {
+        List<NetworkElement> active = new ArrayList<>(elements.size());
+        for (NetworkElement element : elements) {
+            //Parked before the tick, so that input received during it schedules the next one
+            element.releaseTick();
+            if (element.isWorking() && element.getEngine() == this) {
+                element.setTickTime(now);
+                active.add(element);
+            }
+        }
+        if (active.isEmpty()) {
+            return;
+        }
+        tickExecutor.tick(active);
+        elementTicks += active.size();
+        for (NetworkElement element : active) {
+            //Elements with nothing to do stay parked until a packet or a context arrives
+            long workTime = element.nextWorkTime();
+            if (Long.MAX_VALUE != workTime) {
+                wakeAt(element, workTime);
+            }
+        }
+    }
+
+    /**
+     * Fires all the events up to the given simulated time as fast as possible, on the calling thread.
+     * @param time Simulated time to stop at.
+     * @return Number of fired events.
+     */
+    public long runUntil(long time) {
+        if (running) {
+            throw new IllegalStateException("Engine is driven in real time and can't be run manually.");
+        }
+        long fired = 0;
+        while (true) {
+            Batch batch;
+            synchronized (this) {
+                if (getNextEventTime() > time) {
+                    now = Math.max(now, time);
+                    return fired;
+                }
+                batch = pollBatch();
+            }
+            fireBatch(batch);
+            fired += batch.size();
+        }
+    }
+
+    /**
+     * Pauses the real-time driver (if it runs), fires everything within the given
+     * simulated duration as fast as possible, and resumes the driver.
+     * @param duration Simulated milliseconds to run for.
+     * @return Number of fired events.
+     */
+    public long runFor(long duration) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Duration must not be negative.");
+        }
+        synchronized (manualRunLock) {
+            boolean wasRunning = running;
+            stop();
+            long fired = runUntil(now + duration);
+            if (wasRunning) {
+                start();
+            }
+            return fired;
+        }
+    }
+
+    /**
+     * Starts a background thread which fires the events when the (dilated) wall clock reaches their time.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        wallOrigin = System.currentTimeMillis();
+        simOrigin = now;
+        publishPace();
+        running = true;
+        driver = new Thread(this::runRealTime, name);
+        driver.setDaemon(true);
+        driver.start();
+        logger.info("Simulation engine started at simulated time {}.", now);
+    }
+
+    /**
+     * Stops the real-time driver. Pending events stay in the queue.
+     */
+    public void stop() {
+        Thread stoppedDriver;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            now = getNow();
+            running = false;
+            stoppedDriver = driver;
+            driver = null;
+            notifyAll();
+        }
+        if (stoppedDriver != Thread.currentThread()) {
+            try {
+                stoppedDriver.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        logger.info("Simulation engine stopped at simulated time {}.", now);
+    }
+
+    private void runRealTime() {
+        while (running) {
+            Batch batch;
+            synchronized (this) {
+                long nextTime = getNextEventTime();
+                try {
+                    if (Long.MAX_VALUE == nextTime) {
+                        wait();
+                        continue;
+                    }
+                    long delay = Double.isInfinite(timeDilation) ? 0 :
+                            wallOrigin + (long) ((nextTime - simOrigin) / timeDilation)
+                                    - System.currentTimeMillis();
+                    if (delay > 0) {
+                        //New events may arrive earlier, so the queue is rechecked after waking
+                        wait(delay);
+                        continue;
+                    }
+                    accountLateness(-delay);
+                } catch (InterruptedException ie) {
+                    logger.error(ie.getMessage());
+                    continue;
+                }
+                if (!running) {
+                    return;
+                }
+                batch = pollBatch();
+            }
+            try {
+                fireBatch(batch);
+            } catch (RuntimeException e) {
+                //A broken event must not stop the whole simulation
+                logger.error("Failed to fire a batch of {} events at {}.", batch.size(), now, e);
+            }
+        }
+    }
+
+    /**
+     * Tracks how far behind the wall clock the driver is. Must be called under the lock.
+     * @param lateness Wall ms the batch about to be fired is late by.
+     */
+    private void accountLateness(long lateness) {
+        lag = lateness;
+        maxLag = Math.max(maxLag, lateness);
+        if (lateness <= tickLength) {
+            return;
+        }
+        ++lateBatches;
+        if (OverloadPolicy.STRETCH_TICK == overloadPolicy) {
+            //Pretend the batch is on time: simulated time falls behind instead of rushing to catch up
+            wallOrigin += lateness;
+            publishPace();
+            stretchedMillis += lateness;
+            lag = 0;
+        }
+    }
+
+    /**
+     * Takes all the events and ticks due at the time of the earliest one. Must be called under the lock.
+     */
+    private Batch pollBatch() {
+        Batch batch = new Batch();
+        long time = getNextEventTime();
+        while (!events.isEmpty() && events.peek().getTime() == time) {
+            batch.events.add(events.poll());
+        }
+        if (ticks.nextTick() == time) {
+            ticks.poll((tick, element) -> {
+                //Stale entries of elements woken earlier (or parked) don't count
+                if (element.isTickScheduledAt(tick)) {
+                    batch.elements.add(element);
+                }
+            });
+        }
+        now = Math.max(now, time);
+        return batch;
+    }
+
+    /**
+     * Fires the events in the order they were scheduled, then ticks the elements all together.
+     */
+    private void fireBatch(Batch batch) {
+        for (SimulationEvent event : batch.events) {
+            event.fire(this);
+        }
+        tickElements(batch.elements);
+        eventsProcessed += batch.size();
+    }
+
+    private static class Batch {
+        final List<SimulationEvent> events = new ArrayList<>();
+        final List<NetworkElement> elements = new ArrayList<>();
+
+        int size() {
+            return events.size() + elements.size();
+        }
+    }
+
+    private static final class Pace {
+        final long wallOrigin;
+        final long simOrigin;
+        final double timeDilation;
+
+        Pace(long wallOrigin, long simOrigin, double timeDilation) {
+            this.wallOrigin = wallOrigin;
+            this.simOrigin = simOrigin;
+            this.timeDilation = timeDilation;
+        }
+    }
+}
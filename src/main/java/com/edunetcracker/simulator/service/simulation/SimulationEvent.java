@@ -0,0 +1,34 @@
+package com.edunetcracker.simulator.service.simulation;
+
+import lombok.Getter;
+
+/**
+ * Something that has to happen at a certain moment of simulated time.
+ * Events with equal time are fired in the order they were scheduled.
+ */
+public abstract class SimulationEvent implements Comparable<SimulationEvent> {
+
+    @Getter
+    private final long time;
+
+    //Assigned by the engine when the event is put to the queue
+    long sequence;
+
+    protected SimulationEvent(long time) {
+        this.time = time;
+    }
+
+    /**
+     * Is called by the engine when the simulated clock reaches event's time.
+     * @param engine Engine the event was scheduled at.
+     */
+    public abstract void fire(SimulationEngine engine);
+
+    @Override
+    public int compareTo(SimulationEvent other) {
+        if (time != other.time) {
+            return Long.compare(time, other.time);
+        }
+        return Long.compare(sequence, other.sequence);
+    }
+}
@@ -0,0 +1,230 @@
+package com.edunetcracker.simulator.service.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel: a priority queue of items keyed by a long tick,
+ * whose add, and take of the earliest, cost O(1) (amortized) regardless of the number of items.
+ *
+ * There are 8 levels of 256 slots, one level per byte of the tick. An item is put to the level
+ * of the highest byte its tick differs from the current tick in, and to the slot of that byte's value.
+ * Level 0 therefore holds items of exactly one tick per slot. When level 0 is empty, the earliest
+ * occupied slot of the lowest non-empty level is cascaded: the current tick jumps to that slot's
+ * start, and its items are spread over the lower levels. An item is cascaded at most 7 times.
+ *
+ * Items added with ticks before the current one (the current tick moves ahead whenever the earliest
+ * tick is looked up) can't be placed anymore; they are kept aside with their own ticks and come out first.
+ * Is not thread-safe.
+ */
+public class TimingWheel<T> {
+
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = Long.SIZE / SLOT_BITS;
+
+    private final Slot[][] slots = new Slot[LEVELS][SLOTS];
+    //Bit per slot, set while the slot has items
+    private final long[][] occupied = new long[LEVELS][SLOTS / Long.SIZE];
+    private final int[] levelSizes = new int[LEVELS];
+    //Items whose ticks are before the current one
+    private final Slot overdue = new Slot();
+
+    //No item is earlier than this
+    private long current = 0;
+    private int size = 0;
+
+    public interface EntryConsumer<T> {
+        void accept(long tick, T item);
+    }
+
+    public void add(long tick, T item) {
+        if (0 == size) {
+            current = tick;
+        } else if (tick < current) {
+            overdue.add(tick, item);
+            ++size;
+            return;
+        }
+        place(tick, item);
+        ++size;
+    }
+
+    /**
+     * @return The earliest tick that has items, or Long.MAX_VALUE if the wheel is empty.
+     */
+    public long nextTick() {
+        if (0 == size) {
+            return Long.MAX_VALUE;
+        }
+        if (overdue.size > 0) {
+            return overdue.earliest();
+        }
+        while (true) {
+            int level = 0;
+            while (0 == levelSizes[level]) {
+                ++level;
+            }
+            int index = firstOccupied(level);
+            if (0 == level) {
+                return (current & ~(long) (SLOTS - 1)) | index;
+            }
+            cascade(level, index);
+        }
+    }
+
+    /**
+     * Takes all the items of the earliest tick.
+     * @return That tick, or Long.MAX_VALUE if the wheel is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public long poll(EntryConsumer<? super T> consumer) {
+        long tick = nextTick();
+        if (Long.MAX_VALUE == tick) {
+            return tick;
+        }
+        if (overdue.size > 0) {
+            size -= overdue.removeAt(tick, consumer);
+            return tick;
+        }
+        int index = (int) tick & (SLOTS - 1);
+        Slot slot = take(0, index);
+        current = tick;
+        size -= slot.size;
+        for (int i = 0; i < slot.size; i++) {
+            consumer.accept(tick, (T) slot.items[i]);
+        }
+        slot.clear();
+        return tick;
+    }
+
+    /**
+     * Takes all the items out of the wheel, in no particular order.
+     */
+    @SuppressWarnings("unchecked")
+    public void drain(EntryConsumer<? super T> consumer) {
+        for (int i = 0; i < overdue.size; i++) {
+            consumer.accept(overdue.ticks[i], (T) overdue.items[i]);
+        }
+        overdue.clear();
+        for (int level = 0; level < LEVELS; level++) {
+            for (int index = 0; index < SLOTS && levelSizes[level] > 0; index++) {
+                if (!isOccupied(level, index)) {
+                    continue;
+                }
+                Slot slot = take(level, index);
+                for (int i = 0; i < slot.size; i++) {
+                    consumer.accept(slot.ticks[i], (T) slot.items[i]);
+                }
+                slot.clear();
+            }
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    private void place(long tick, Object item) {
+        long difference = tick ^ current;
+        int level = (0 == difference) ? 0 : (63 - Long.numberOfLeadingZeros(difference)) / SLOT_BITS;
+        int index = (int) (tick >>> (level * SLOT_BITS)) & (SLOTS - 1);
+        Slot slot = slots[level][index];
+        if (null == slot) {
+            slot = new Slot();
+            slots[level][index] = slot;
+        }
+        slot.add(tick, item);
+        occupied[level][index >>> 6] |= 1L << index;
+        ++levelSizes[level];
+    }
+
+    /**
+     * Moves the current tick to the start of the slot and spreads its items over the lower levels.
+     * The slot must be the earliest one, and every lower level must be empty.
+     */
+    private void cascade(int level, int index) {
+        int shift = level * SLOT_BITS;
+        long higher = (LEVELS - 1 == level) ? 0 : (current >>> (shift + SLOT_BITS)) << (shift + SLOT_BITS);
+        current = higher | ((long) index << shift);
+        Slot slot = take(level, index);
+        for (int i = 0; i < slot.size; i++) {
+            place(slot.ticks[i], slot.items[i]);
+        }
+        slot.clear();
+    }
+
+    private Slot take(int level, int index) {
+        Slot slot = slots[level][index];
+        occupied[level][index >>> 6] &= ~(1L << index);
+        levelSizes[level] -= slot.size;
+        return slot;
+    }
+
+    private boolean isOccupied(int level, int index) {
+        return 0 != (occupied[level][index >>> 6] & (1L << index));
+    }
+
+    private int firstOccupied(int level) {
+        long[] words = occupied[level];
+        for (int word = 0; word < words.length; word++) {
+            if (0 != words[word]) {
+                return word * Long.SIZE + Long.numberOfTrailingZeros(words[word]);
+            }
+        }
+        throw new IllegalStateException("Level has no occupied slots.");
+    }
+
+    //Items of a slot, in parallel arrays so that adding an item allocates nothing (most of the time)
+    private static class Slot {
+        long[] ticks = new long[4];
+        Object[] items = new Object[4];
+        int size = 0;
+
+        void add(long tick, Object item) {
+            if (size == ticks.length) {
+                ticks = Arrays.copyOf(ticks, size * 2);
+                items = Arrays.copyOf(items, size * 2);
+            }
+            ticks[size] = tick;
+            items[size] = item;
+            ++size;
+        }
+
+        long earliest() {
+            long earliest = Long.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                earliest = Math.min(earliest, ticks[i]);
+            }
+            return earliest;
+        }
+
+        //Gives the items of the tick to the consumer and keeps the rest, in order
+        @SuppressWarnings("unchecked")
+        <T> int removeAt(long tick, EntryConsumer<? super T> consumer) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (ticks[i] == tick) {
+                    consumer.accept(tick, (T) items[i]);
+                } else {
+                    ticks[kept] = ticks[i];
+                    items[kept] = items[i];
+                    ++kept;
+                }
+            }
+            int removed = size - kept;
+            Arrays.fill(items, kept, size, null);
+            size = kept;
+            return removed;
+        }
+
+        void clear() {
+            Arrays.fill(items, 0, size, null);
+            size = 0;
+        }
+    }
+}
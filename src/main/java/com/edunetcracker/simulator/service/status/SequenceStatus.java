@@ -21,7 +21,9 @@ public enum SequenceStatus {
     ROUTING_TABLE_NO_ROUTER("RoutingTable {} did not have a router.", HttpStatus.NO_CONTENT),
     ROUTER_PORT_NO_IP_ADDRESS("IP address was not yet assigned to RouterPort {}.", HttpStatus.NO_CONTENT),
     ROUTER_PORT_NO_OWNER("RouterPort {} is not assigned to router.", HttpStatus.NO_CONTENT),
-    SWITCH_PORT_NO_OWNER("SwitchPort {} is not assigned to switch.", HttpStatus.NO_CONTENT);
+    SWITCH_PORT_NO_OWNER("SwitchPort {} is not assigned to switch.", HttpStatus.NO_CONTENT),
+    PHASE_BUDGET_EXCEEDED("{} of element {} took {} us of {} us budget ({} overruns so far).", HttpStatus.OK),
+    ELEMENT_TICK_FAILED("Tick of element {} failed: {}. The element keeps running.", HttpStatus.INTERNAL_SERVER_ERROR);
 
 /*~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~*/
 /*~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~*/
@@ -0,0 +1,67 @@
+package com.edunetcracker.simulator.service.simulation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimingWheelTest {
+
+    @Test
+    public void itemsComeOutInTheOrderOfTheirTicks() {
+        TimingWheel<String> wheel = new TimingWheel<>();
+        wheel.add(70000, "c");
+        wheel.add(5, "a");
+        wheel.add(300, "b");
+        wheel.add(70000, "d");
+
+        List<String> taken = new ArrayList<>();
+        assertEquals(5, wheel.poll((tick, item) -> taken.add(item)));
+        assertEquals(300, wheel.poll((tick, item) -> taken.add(item)));
+        assertEquals(70000, wheel.poll((tick, item) -> taken.add(item)));
+        assertEquals(Long.MAX_VALUE, wheel.poll((tick, item) -> taken.add(item)));
+        assertEquals("[a, b, c, d]", taken.toString());
+    }
+
+    @Test
+    public void itemAddedAfterACascadeKeepsItsTick() {
+        TimingWheel<String> wheel = new TimingWheel<>();
+        wheel.add(200, "first");
+        wheel.add(600, "later");
+        assertEquals(200, wheel.poll((tick, item) -> { }));
+        //Looking up the next tick cascades the wheel up to 512
+        assertEquals(600, wheel.nextTick());
+
+        wheel.add(300, "woken");
+        List<Long> ticks = new ArrayList<>();
+        List<String> items = new ArrayList<>();
+        TimingWheel.EntryConsumer<String> consumer = (tick, item) -> {
+            ticks.add(tick);
+            items.add(item);
+        };
+        assertEquals(300, wheel.nextTick());
+        assertEquals(300, wheel.poll(consumer));
+        assertEquals(600, wheel.poll(consumer));
+        assertEquals("[300, 600]", ticks.toString());
+        assertEquals("[woken, later]", items.toString());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void drainGivesOverdueItemsWithTheirTicks() {
+        TimingWheel<String> wheel = new TimingWheel<>();
+        wheel.add(200, "first");
+        wheel.add(600, "later");
+        wheel.poll((tick, item) -> { });
+        wheel.nextTick();
+        wheel.add(300, "woken");
+
+        List<String> drained = new ArrayList<>();
+        wheel.drain((tick, item) -> drained.add(tick + ":" + item));
+        drained.sort(null);
+        assertEquals("[300:woken, 600:later]", drained.toString());
+        assertEquals(0, wheel.size());
+    }
+}